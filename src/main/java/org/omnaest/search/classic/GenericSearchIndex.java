@@ -18,35 +18,259 @@
 */
 package org.omnaest.search.classic;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.omnaest.search.classic.analyzer.AnalysisType;
+import org.omnaest.search.classic.analyzer.AnalysisTypeBasic;
 import org.omnaest.search.classic.analyzer.Analyzer;
 import org.omnaest.search.classic.analyzer.AnalyzerChain;
+import org.omnaest.search.classic.analyzer.AnalyzerExact;
 import org.omnaest.search.classic.analyzer.Token;
 import org.omnaest.search.classic.domain.Word;
+import org.omnaest.search.classic.internal.AsyncQueryExecutor;
+import org.omnaest.search.classic.internal.BooleanQuery;
+import org.omnaest.search.classic.internal.CancellationToken;
 import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollectorMap;
 import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollectorModifiable;
+import org.omnaest.search.classic.internal.KeyAutomaton;
+import org.omnaest.search.classic.internal.KeyPattern;
+import org.omnaest.search.classic.internal.MatchOptions;
+import org.omnaest.search.classic.internal.MinHashSimilarityJoin;
+import org.omnaest.search.classic.internal.MinHashSimilarityJoin.SimilarityMatch;
 import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchingTokenAndStatistics;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchPage;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchResult;
 import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchingTokenStreamModifier;
 import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.Metrics;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.PrimitiveScoringFunction;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.ReferenceMatch;
 import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.ScoringFunction;
+import org.omnaest.search.classic.internal.QueryCache.CacheKey;
+import org.omnaest.search.classic.internal.QueryCache.QueryCacheStatistics;
+import org.omnaest.search.classic.internal.ScoringFunctionUtils;
+import org.omnaest.search.classic.internal.SequenceIndexJoin;
 
 public class GenericSearchIndex<W extends Word<C>, C, R>
 {
+	private static final int DEFAULT_ASYNC_QUEUE_DEPTH = 1024;
+
 	private CodeSequenceStatisticsCollectorModifiable<C, R> collector = new CodeSequenceStatisticsCollectorMap<>();
 
+	private volatile AsyncQueryExecutor asyncQueryExecutor = null;
+
 	public static interface Matcher<W extends Word<C>, C, R>
 	{
 		public Matcher<W, C, R> withScoringFunction(ScoringFunction<C, R> scoringFunction);
 
+		/**
+		 * Similar to {@link #withScoringFunction(ScoringFunction)} but uses a {@link PrimitiveScoringFunction} which does not allocate any object per scored
+		 * posting
+		 *
+		 * @see ScoringFunctionUtils#bm25()
+		 * @see ScoringFunctionUtils#tfIdf()
+		 * @param scoringFunction
+		 * @return
+		 */
+		public Matcher<W, C, R> withPrimitiveScoringFunction(PrimitiveScoringFunction scoringFunction);
+
 		public Matcher<W, C, R> withAnalysisType(AnalysisType analysisType);
 
+		/**
+		 * Probes and scores the indexes of the different {@link Analyzer}s concurrently using the given bounded {@link Executor} and merges the partial
+		 * results. By default all indexes are matched sequentially within the calling thread.
+		 *
+		 * @see MatchOptions#setExecutor(Executor)
+		 * @param executor
+		 * @return
+		 */
+		public Matcher<W, C, R> withExecutor(Executor executor);
+
+		/**
+		 * Bounds the duration of every query of this {@link Matcher}. If the timeout elapses, the query returns the best matches of the postings traversed
+		 * so far.
+		 *
+		 * @see #matchBounded(Word)
+		 * @param timeout
+		 * @param timeUnit
+		 * @return
+		 */
+		public Matcher<W, C, R> withTimeout(long timeout, TimeUnit timeUnit);
+
+		/**
+		 * Bounds the number of postings every query of this {@link Matcher} traverses
+		 *
+		 * @see #matchBounded(Word)
+		 * @param postingBudget
+		 * @return
+		 */
+		public Matcher<W, C, R> withPostingBudget(long postingBudget);
+
+		/**
+		 * Allows to stop the queries of this {@link Matcher} from another thread using {@link CancellationToken#cancel()}
+		 *
+		 * @see #matchBounded(Word)
+		 * @param cancellationToken
+		 * @return
+		 */
+		public Matcher<W, C, R> withCancellationToken(CancellationToken cancellationToken);
+
 		public Stream<MatchingTokenAndStatistics<C, R>> match(W word);
 
 		public Stream<MatchingTokenAndStatistics<C, R>> match(List<C> codeSequence);
 
+		/**
+		 * Similar to {@link #match(Word)} but aggregates the scores of all matching postings per reference and returns the references with the highest
+		 * accumulated score in descending order
+		 *
+		 * @see ReferenceMatch#getScoreByAnalysisType()
+		 * @param word
+		 * @param limit
+		 *            maximum number of returned references
+		 * @return
+		 */
+		public List<ReferenceMatch<R>> matchReferences(W word, int limit);
+
+		public List<ReferenceMatch<R>> matchReferences(List<C> codeSequence, int limit);
+
+		/**
+		 * Matches all keys of the {@link AnalysisTypeBasic#EXACT} index, or the index of the {@link AnalysisType} given by
+		 * {@link #withAnalysisType(AnalysisType)}, which are within the given maximum Levenshtein distance to the given {@link Word}
+		 *
+		 * @param word
+		 * @param maxDistance
+		 * @return
+		 */
+		public Stream<MatchingTokenAndStatistics<C, R>> matchFuzzy(W word, int maxDistance);
+
+		public Stream<MatchingTokenAndStatistics<C, R>> matchFuzzy(List<C> codeSequence, int maxDistance);
+
+		/**
+		 * Similar to {@link #match(Word)} but returns the best matches together with the information if the query has been truncated by the timeout,
+		 * posting budget or {@link CancellationToken}
+		 *
+		 * @param word
+		 * @return
+		 */
+		public MatchResult<C, R> matchBounded(W word);
+
+		public MatchResult<C, R> matchBounded(List<C> codeSequence);
+
+		/**
+		 * Matches all keys of the {@link AnalysisTypeBasic#EXACT} index, or the index of the {@link AnalysisType} given by
+		 * {@link #withAnalysisType(AnalysisType)}, which are accepted by the given {@link KeyAutomaton}. Only the keys the {@link KeyAutomaton} can still
+		 * accept are visited, so no full scan of the index is needed.
+		 *
+		 * @see KeyPattern#regex(String)
+		 * @see KeyPattern#wildcard(String)
+		 * @param keyAutomaton
+		 * @return
+		 */
+		public Stream<MatchingTokenAndStatistics<C, R>> matchPattern(KeyAutomaton<C, ?> keyAutomaton);
+
+		/**
+		 * Returns the number of distinct references matching the given {@link Word}, without scoring or visiting individual postings
+		 *
+		 * @param word
+		 * @return
+		 */
+		public int count(W word);
+
+		public int count(List<C> codeSequence);
+
+		/**
+		 * Returns true if any reference matches the given {@link Word}, without scoring or visiting individual postings
+		 *
+		 * @param word
+		 * @return
+		 */
+		public boolean exists(W word);
+
+		public boolean exists(List<C> codeSequence);
+
+		/**
+		 * Returns the references matching the given {@link BooleanQuery} ordered by descending score. The clauses are intersected on sorted reference id
+		 * arrays, so the cost is proportional to the smallest matched posting list.
+		 *
+		 * @see #withPrimitiveScoringFunction(PrimitiveScoringFunction)
+		 * @param booleanQuery
+		 * @param limit
+		 *            maximum number of returned references
+		 * @return
+		 */
+		public List<ReferenceMatch<R>> matchBoolean(BooleanQuery<C> booleanQuery, int limit);
+
+		/**
+		 * Returns the references containing the given {@link Word}s consecutively in the given order, ordered by the number of phrase occurrences
+		 *
+		 * @see GenericSearchIndex#analyze(Stream, Object)
+		 * @param words
+		 * @param limit
+		 *            maximum number of returned references
+		 * @return
+		 */
+		public List<ReferenceMatch<R>> matchPhrase(List<W> words, int limit);
+
+		/**
+		 * Returns the references containing all given {@link Word}s, in any order, within a window of the given maximum distance between the first and the
+		 * last word position. Closer words rank higher. A {@link Word} which is given multiple times has to occur at as many distinct positions within the
+		 * window.<br>
+		 * <br>
+		 * The word positions are looked up within the index of the {@link AnalysisTypeBasic#EXACT} analysis type, unless another analysis type is selected
+		 * by {@link #withAnalysisType(AnalysisType)}, so without an {@link AnalyzerExact} nothing matches. With other analysis types a {@link Word} matches
+		 * the positions of all its matching index keys, so different {@link Word}s can share positions.
+		 *
+		 * @see GenericSearchIndex#analyze(Stream, Object)
+		 * @param words
+		 * @param maxDistance
+		 * @param limit
+		 *            maximum number of returned references
+		 * @return
+		 */
+		public List<ReferenceMatch<R>> matchWithin(List<W> words, int maxDistance, int limit);
+
+		/**
+		 * Asynchronous variant of {@link #matchBounded(Word)} which returns a single page of the best matches. The query runs on the {@link Executor}
+		 * configured by {@link GenericSearchIndex#withAsyncExecutor(Executor, int, int)}. Equal queries which are submitted while an equal query is still
+		 * queued or running share its execution.<br>
+		 * <br>
+		 * The returned {@link CompletableFuture} fails with a {@link RejectedExecutionException} if too many queries are waiting for execution.
+		 *
+		 * @param word
+		 * @param limit
+		 *            maximum number of returned matches
+		 * @return
+		 */
+		public CompletableFuture<MatchResult<C, R>> matchAsync(W word, int limit);
+
+		public CompletableFuture<MatchResult<C, R>> matchAsync(List<C> codeSequence, int limit);
+
+		/**
+		 * Returns the page of matches following the given cursor. The first page is requested with a null cursor and every page returns the cursor of the
+		 * next page via {@link MatchPage#getNextCursor()}. Each page is selected within a single traversal of the matching postings, so deep pages cost
+		 * about the same as the first page.
+		 *
+		 * @param word
+		 * @param cursor
+		 *            opaque cursor of the previous page or null
+		 * @param pageSize
+		 * @return
+		 * @throws IllegalArgumentException
+		 *             if the cursor is invalid
+		 */
+		public MatchPage<C, R> matchPage(W word, String cursor, int pageSize);
+
+		public MatchPage<C, R> matchPage(List<C> codeSequence, String cursor, int pageSize);
+
 	}
 
 	public GenericSearchIndex<W, C, R> addAnalyzer(Analyzer<C> analyzer)
@@ -61,17 +285,87 @@ public class GenericSearchIndex<W extends Word<C>, C, R>
 		return this.addAnalyzer(new AnalyzerChain<>(analyzers));
 	}
 
+	/**
+	 * Analyzes the given {@link Word}s of the given reference. The {@link Word}s get ascending positions, which continue over multiple calls for the same
+	 * reference and are used by {@link Matcher#matchPhrase(List, int)} and {@link Matcher#matchWithin(List, int, int)}.
+	 *
+	 * @param words
+	 * @param reference
+	 */
 	public void analyze(Stream<W> words, R reference)
 	{
 		this.collector.analyze(words.map(word -> word.getCodeSequence()), reference);
 	}
 
+	/**
+	 * Enables a bounded least recently used cache for the results of the {@link Matcher#match(List)} operations. Cached results are invalidated when a
+	 * subsequent {@link #analyze(Stream, Object)} touches the index keys they depend on.<br>
+	 * <br>
+	 * Results are cached per code sequence, {@link AnalysisType} and {@link ScoringFunction} instance, so the same {@link ScoringFunction} instance should be
+	 * reused for recurring queries.
+	 *
+	 * @param maximumSize
+	 *            maximum number of cached queries, zero disables the cache
+	 * @return
+	 */
+	public GenericSearchIndex<W, C, R> withQueryCache(int maximumSize)
+	{
+		this.collector.setQueryCacheSize(maximumSize);
+		return this;
+	}
+
+	/**
+	 * Returns the hit and miss counters of the query cache, if enabled
+	 *
+	 * @see #withQueryCache(int)
+	 * @return
+	 */
+	public Optional<QueryCacheStatistics> getQueryCacheStatistics()
+	{
+		return this.collector.getQueryCacheStatistics();
+	}
+
+	/**
+	 * Configures the execution of {@link Matcher#matchAsync(Word, int)}. By default asynchronous queries run on the {@link ForkJoinPool#commonPool()} with
+	 * a concurrency of the number of available processors and a queue depth of {@value #DEFAULT_ASYNC_QUEUE_DEPTH}.
+	 *
+	 * @param executor
+	 * @param maxConcurrency
+	 *            maximum number of concurrently running queries
+	 * @param maxQueueDepth
+	 *            maximum number of queries waiting for execution, further queries are rejected
+	 * @return
+	 */
+	public GenericSearchIndex<W, C, R> withAsyncExecutor(Executor executor, int maxConcurrency, int maxQueueDepth)
+	{
+		this.asyncQueryExecutor = new AsyncQueryExecutor(executor, maxConcurrency, maxQueueDepth);
+		return this;
+	}
+
+	private AsyncQueryExecutor getAsyncQueryExecutor()
+	{
+		AsyncQueryExecutor retval = this.asyncQueryExecutor;
+		if (retval == null)
+		{
+			synchronized (this)
+			{
+				retval = this.asyncQueryExecutor;
+				if (retval == null)
+				{
+					this.asyncQueryExecutor = retval = new AsyncQueryExecutor(	ForkJoinPool.commonPool(), Runtime	.getRuntime()
+																													.availableProcessors(),
+																				DEFAULT_ASYNC_QUEUE_DEPTH);
+				}
+			}
+		}
+		return retval;
+	}
+
 	public Matcher<W, C, R> matcher()
 	{
 		return new Matcher<W, C, R>()
 		{
-			private ScoringFunction<C, R>	scoringFunction	= (stats) -> 1.0;
-			private AnalysisType			analysisType	= null;
+			private MatchOptions<C, R> options = MatchOptions.NONE();
 
 			@Override
 			public Stream<MatchingTokenAndStatistics<C, R>> match(W word)
@@ -83,20 +377,187 @@ public class GenericSearchIndex<W extends Word<C>, C, R>
 			public Stream<MatchingTokenAndStatistics<C, R>> match(List<C> codeSequence)
 			{
 				return GenericSearchIndex.this.collector.matcher()
-														.match(codeSequence, this.scoringFunction, this.analysisType);
+														.match(codeSequence, new MatchOptions<>(this.options));
+			}
+
+			@Override
+			public List<ReferenceMatch<R>> matchReferences(W word, int limit)
+			{
+				return this.matchReferences(word.getCodeSequence(), limit);
+			}
+
+			@Override
+			public List<ReferenceMatch<R>> matchReferences(List<C> codeSequence, int limit)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.matchReferences(codeSequence, new MatchOptions<>(this.options).setLimit(limit));
+			}
+
+			@Override
+			public Stream<MatchingTokenAndStatistics<C, R>> matchFuzzy(W word, int maxDistance)
+			{
+				return this.matchFuzzy(word.getCodeSequence(), maxDistance);
+			}
+
+			@Override
+			public Stream<MatchingTokenAndStatistics<C, R>> matchFuzzy(List<C> codeSequence, int maxDistance)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.matchFuzzy(codeSequence, maxDistance, new MatchOptions<>(this.options));
 			}
 
 			@Override
 			public Matcher<W, C, R> withScoringFunction(ScoringFunction<C, R> scoringFunction)
 			{
-				this.scoringFunction = scoringFunction;
+				this.options.setScoringFunction(scoringFunction);
+				return this;
+			}
+
+			@Override
+			public Matcher<W, C, R> withPrimitiveScoringFunction(PrimitiveScoringFunction scoringFunction)
+			{
+				this.options.setPrimitiveScoringFunction(scoringFunction);
+				return this;
+			}
+
+			@Override
+			public MatchResult<C, R> matchBounded(W word)
+			{
+				return this.matchBounded(word.getCodeSequence());
+			}
+
+			@Override
+			public MatchResult<C, R> matchBounded(List<C> codeSequence)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.matchBounded(codeSequence, new MatchOptions<>(this.options));
+			}
+
+			@Override
+			public Stream<MatchingTokenAndStatistics<C, R>> matchPattern(KeyAutomaton<C, ?> keyAutomaton)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.matchPattern(keyAutomaton, new MatchOptions<>(this.options));
+			}
+
+			@Override
+			public int count(W word)
+			{
+				return this.count(word.getCodeSequence());
+			}
+
+			@Override
+			public int count(List<C> codeSequence)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.count(codeSequence, new MatchOptions<>(this.options));
+			}
+
+			@Override
+			public boolean exists(W word)
+			{
+				return this.exists(word.getCodeSequence());
+			}
+
+			@Override
+			public boolean exists(List<C> codeSequence)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.exists(codeSequence, new MatchOptions<>(this.options));
+			}
+
+			@Override
+			public List<ReferenceMatch<R>> matchBoolean(BooleanQuery<C> booleanQuery, int limit)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.matchBoolean(booleanQuery, new MatchOptions<>(this.options).setLimit(limit));
+			}
+
+			@Override
+			public List<ReferenceMatch<R>> matchPhrase(List<W> words, int limit)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.matchPhrase(this.toCodeSequences(words), new MatchOptions<>(this.options).setLimit(limit));
+			}
+
+			@Override
+			public List<ReferenceMatch<R>> matchWithin(List<W> words, int maxDistance, int limit)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.matchWithin(this.toCodeSequences(words), maxDistance, new MatchOptions<>(this.options).setLimit(limit));
+			}
+
+			private List<List<C>> toCodeSequences(List<W> words)
+			{
+				return words.stream()
+							.map(word -> word.getCodeSequence())
+							.collect(Collectors.toList());
+			}
+
+			@Override
+			public CompletableFuture<MatchResult<C, R>> matchAsync(W word, int limit)
+			{
+				return this.matchAsync(word.getCodeSequence(), limit);
+			}
+
+			@Override
+			public CompletableFuture<MatchResult<C, R>> matchAsync(List<C> codeSequence, int limit)
+			{
+				MatchOptions<C, R> options = new MatchOptions<>(this.options).setLimit(limit);
+
+				//bounded queries depend on their own deadline and cancellation token and are never coalesced
+				Object key = options.isBounded() ? null
+						: Arrays.asList(new CacheKey(new ArrayList<>(codeSequence), options.getAnalysisType(), options.getEffectiveScoringFunction()), limit);
+				return GenericSearchIndex.this	.getAsyncQueryExecutor()
+												.submit(key, () -> GenericSearchIndex.this.collector.matcher()
+																									.matchBounded(codeSequence, options));
+			}
+
+			@Override
+			public MatchPage<C, R> matchPage(W word, String cursor, int pageSize)
+			{
+				return this.matchPage(word.getCodeSequence(), cursor, pageSize);
+			}
+
+			@Override
+			public MatchPage<C, R> matchPage(List<C> codeSequence, String cursor, int pageSize)
+			{
+				return GenericSearchIndex.this.collector.matcher()
+														.matchPage(codeSequence, cursor, pageSize, new MatchOptions<>(this.options));
+			}
+
+			@Override
+			public Matcher<W, C, R> withTimeout(long timeout, TimeUnit timeUnit)
+			{
+				this.options.setTimeout(timeout, timeUnit);
+				return this;
+			}
+
+			@Override
+			public Matcher<W, C, R> withPostingBudget(long postingBudget)
+			{
+				this.options.setPostingBudget(postingBudget);
+				return this;
+			}
+
+			@Override
+			public Matcher<W, C, R> withCancellationToken(CancellationToken cancellationToken)
+			{
+				this.options.setCancellationToken(cancellationToken);
+				return this;
+			}
+
+			@Override
+			public Matcher<W, C, R> withExecutor(Executor executor)
+			{
+				this.options.setExecutor(executor);
 				return this;
 			}
 
 			@Override
 			public Matcher<W, C, R> withAnalysisType(AnalysisType analysisType)
 			{
-				this.analysisType = analysisType;
+				this.options.setAnalysisType(analysisType);
 				return this;
 			}
 		};
@@ -152,43 +613,112 @@ public class GenericSearchIndex<W extends Word<C>, C, R>
 
 	}
 
+	/**
+	 * Joins this {@link GenericSearchIndex} as left side with the given {@link GenericSearchIndex} as right side. Every pair of postings which share an
+	 * indexed key of the given {@link AnalysisType} is streamed as {@link JoinMatch}. The join probes the key hash map of the larger index with the keys of
+	 * the smaller index and does neither materialize nor sort any side.
+	 *
+	 * @see SequenceIndexJoin
+	 * @param searchIndex
+	 * @param analysisType
+	 * @return
+	 */
 	public Stream<JoinMatch<C, R>> join(GenericSearchIndex<W, C, R> searchIndex, AnalysisType analysisType)
 	{
-		Stream<JoinMatch<C, R>> retstream = Stream.empty();
-
-		Metrics<C, R> rightMetrics = searchIndex.extractMetrics(analysisType);
-		Metrics<C, R> leftMetrics = this.extractMetrics(analysisType);
-
-		int rightSize = rightMetrics.size();
-		int leftSize = leftMetrics.size();
+		return new SequenceIndexJoin<>(this.collector.getIndexes(analysisType), searchIndex.collector.getIndexes(analysisType)).join(JoinMatch::new);
+	}
 
-		Matcher<W, C, R> leftMatcher = this.matcher();
-		Matcher<W, C, R> rightMatcher = searchIndex.matcher();
+	/**
+	 * Approximate similarity join of the references of this {@link GenericSearchIndex} as left side and of the given {@link GenericSearchIndex} as right
+	 * side, which streams every pair of references whose sets of indexed keys of the given {@link AnalysisType} have a Jaccard similarity of at least the
+	 * given minimum similarity. Using e.g. n-gram keys this finds near duplicate references.<br>
+	 * <br>
+	 * Candidate pairs are found by MinHash signatures and locality sensitive hashing with {@value MinHashSimilarityJoin#DEFAULT_BANDS} bands of
+	 * {@value MinHashSimilarityJoin#DEFAULT_ROWS} rows, and verified by their exact Jaccard similarity.
+	 *
+	 * @see #joinSimilar(GenericSearchIndex, AnalysisType, double, int, int)
+	 * @param searchIndex
+	 * @param analysisType
+	 * @param minSimilarity
+	 * @return
+	 */
+	public Stream<SimilarityMatch<R>> joinSimilar(GenericSearchIndex<W, C, R> searchIndex, AnalysisType analysisType, double minSimilarity)
+	{
+		return this.joinSimilar(searchIndex, analysisType, minSimilarity, MinHashSimilarityJoin.DEFAULT_BANDS, MinHashSimilarityJoin.DEFAULT_ROWS);
+	}
 
-		if (rightSize < leftSize)
-		{
-			retstream = this.generateJoinMatch(analysisType, rightMetrics, leftMatcher);
-		}
-		else
-		{
-			retstream = this.generateJoinMatch(analysisType, leftMetrics, rightMatcher);
-		}
+	/**
+	 * Similar to {@link #joinSimilar(GenericSearchIndex, AnalysisType, double)} with the given number of locality sensitive hashing bands and rows per
+	 * band. A pair with a similarity of s becomes a candidate with a probability of 1-(1-s^rows)^bands.
+	 *
+	 * @see MinHashSimilarityJoin
+	 * @param searchIndex
+	 * @param analysisType
+	 * @param minSimilarity
+	 * @param bands
+	 * @param rows
+	 * @return
+	 */
+	public Stream<SimilarityMatch<R>> joinSimilar(GenericSearchIndex<W, C, R> searchIndex, AnalysisType analysisType, double minSimilarity, int bands,
+													int rows)
+	{
+		return new MinHashSimilarityJoin<C, R>(bands, rows, MinHashSimilarityJoin.DEFAULT_SEED).join(	this.collector.getIndexes(analysisType),
+																										searchIndex.collector.getIndexes(analysisType),
+																										minSimilarity);
+	}
 
-		return retstream;
+	/**
+	 * Similar to {@link #join(GenericSearchIndex, AnalysisType)} but joins the given number of partitions of the probed keys in parallel on the
+	 * {@link ForkJoinPool#commonPool()}. The {@link JoinMatch}es are streamed as soon as they are joined.
+	 *
+	 * @see #join(GenericSearchIndex, AnalysisType, int, ForkJoinPool)
+	 * @param searchIndex
+	 * @param analysisType
+	 * @param partitions
+	 * @return
+	 */
+	public Stream<JoinMatch<C, R>> join(GenericSearchIndex<W, C, R> searchIndex, AnalysisType analysisType, int partitions)
+	{
+		return this.join(searchIndex, analysisType, partitions, ForkJoinPool.commonPool());
 	}
 
-	private Stream<JoinMatch<C, R>> generateJoinMatch(AnalysisType analysisType, Metrics<C, R> rightMetrics, Matcher<W, C, R> matcher)
+	/**
+	 * Similar to {@link #join(GenericSearchIndex, AnalysisType)} but joins the given number of partitions of the probed keys in parallel on the given
+	 * {@link ForkJoinPool}. The {@link JoinMatch}es are streamed as soon as they are joined, so their order is not deterministic. A short-circuited
+	 * {@link Stream} has to be closed to stop the partitions.
+	 *
+	 * @param searchIndex
+	 * @param analysisType
+	 * @param partitions
+	 * @param pool
+	 * @return
+	 */
+	public Stream<JoinMatch<C, R>> join(GenericSearchIndex<W, C, R> searchIndex, AnalysisType analysisType, int partitions, ForkJoinPool pool)
 	{
-		return rightMetrics	.getTokenAndStatistics()
-							.flatMap(leftMatchingTokenAndStatistics ->
-							{
-								return matcher	.withAnalysisType(analysisType)
-												.match(leftMatchingTokenAndStatistics	.getToken()
-																						.getCodeSequence())
-												.map(rightMatchingTokenAndStatistics -> new JoinMatch<>(leftMatchingTokenAndStatistics,
-																										rightMatchingTokenAndStatistics));
+		return this.join(searchIndex, analysisType, partitions, pool, Integer.MAX_VALUE);
+	}
 
-							});
+	/**
+	 * Similar to {@link #join(GenericSearchIndex, AnalysisType, int, ForkJoinPool)} but at most the given number of batches of {@link JoinMatch}es are
+	 * buffered between the partitions and the returned {@link Stream}, and the partitions wait while the buffer is full. So the heap used by the join
+	 * does not grow with the number of {@link JoinMatch}es.<br>
+	 * <br>
+	 * This join does not spill to temporary files. Both sides are in memory indexes already, so only the buffer between the partitions and the returned
+	 * {@link Stream} is bounded.
+	 *
+	 * @param searchIndex
+	 * @param analysisType
+	 * @param partitions
+	 * @param pool
+	 * @param maxBufferedBatches
+	 * @return
+	 */
+	public Stream<JoinMatch<C, R>> join(GenericSearchIndex<W, C, R> searchIndex, AnalysisType analysisType, int partitions, ForkJoinPool pool,
+										int maxBufferedBatches)
+	{
+		return new SequenceIndexJoin<>(this.collector.getIndexes(analysisType), searchIndex.collector.getIndexes(analysisType)).join(	JoinMatch::new,
+																																		partitions, pool,
+																																		maxBufferedBatches);
 	}
 
 }
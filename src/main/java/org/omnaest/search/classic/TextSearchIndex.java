@@ -18,6 +18,8 @@
 */
 package org.omnaest.search.classic;
 
+import java.util.concurrent.Executor;
+
 import org.omnaest.search.classic.analyzer.Analyzer;
 import org.omnaest.search.classic.domain.StringWord;
 
@@ -39,4 +41,18 @@ public class TextSearchIndex<R> extends GenericSearchIndex<StringWord, Character
 		return this;
 	}
 
+	@Override
+	public TextSearchIndex<R> withQueryCache(int maximumSize)
+	{
+		super.withQueryCache(maximumSize);
+		return this;
+	}
+
+	@Override
+	public TextSearchIndex<R> withAsyncExecutor(Executor executor, int maxConcurrency, int maxQueueDepth)
+	{
+		super.withAsyncExecutor(executor, maxConcurrency, maxQueueDepth);
+		return this;
+	}
+
 }
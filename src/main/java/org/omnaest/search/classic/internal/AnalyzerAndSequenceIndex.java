@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.omnaest.search.classic.analyzer.AnalysisType;
@@ -31,10 +32,11 @@ public class AnalyzerAndSequenceIndex<C, R>
 {
 	private Map<Analyzer<C>, SequenceIndex<C, R>>	analyzerToSequenceIndexMap	= new ConcurrentHashMap<>();
 	private List<Analyzer<C>>						analyzers					= new ArrayList<>();
+	private AtomicLong								postingSequence				= new AtomicLong();
 
 	public SequenceIndex<C, R> getIndex(Analyzer<C> analyzer)
 	{
-		return this.analyzerToSequenceIndexMap.computeIfAbsent(analyzer, key -> new SequenceIndex<>(analyzer));
+		return this.analyzerToSequenceIndexMap.computeIfAbsent(analyzer, key -> new SequenceIndex<>(analyzer, this.postingSequence));
 	}
 
 	public List<SequenceIndex<C, R>> getAllIndexes()
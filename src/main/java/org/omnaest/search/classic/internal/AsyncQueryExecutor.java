@@ -0,0 +1,244 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs queries asynchronously on an {@link Executor} with a bounded number of concurrently running queries and a bounded queue of waiting queries.<br>
+ * <br>
+ * If the queue is full, further queries are rejected with a {@link RejectedExecutionException} to signal back pressure to the caller. Queries with an
+ * equal key which are submitted while an equal query is queued or running are coalesced and share a single execution.
+ *
+ * @author Omnaest
+ */
+public class AsyncQueryExecutor
+{
+	private Executor	executor;
+	private int			maxConcurrency;
+	private int			maxQueueDepth;
+
+	private int												runningQueries		= 0;
+	private Queue<QueryTask<?>>								queuedQueries		= new ArrayDeque<>();
+	private Map<Object, CompletableFuture<?>>				inFlightQueries		= new HashMap<>();
+	private long											coalescedQueries	= 0;
+	private ThreadLocal<Queue<QueryTask<?>>>				dispatchedQueries	= new ThreadLocal<>();
+
+	/**
+	 * @param executor
+	 * @param maxConcurrency
+	 *            maximum number of queries running concurrently on the {@link Executor}
+	 * @param maxQueueDepth
+	 *            maximum number of queries waiting for execution
+	 */
+	public AsyncQueryExecutor(Executor executor, int maxConcurrency, int maxQueueDepth)
+	{
+		super();
+		if (maxConcurrency <= 0)
+		{
+			throw new IllegalArgumentException("Maximum concurrency must be positive: " + maxConcurrency);
+		}
+		if (maxQueueDepth < 0)
+		{
+			throw new IllegalArgumentException("Maximum queue depth must not be negative: " + maxQueueDepth);
+		}
+		this.executor = executor;
+		this.maxConcurrency = maxConcurrency;
+		this.maxQueueDepth = maxQueueDepth;
+	}
+
+	/**
+	 * Submits the given query. If a query with an equal key is already queued or running, its result is shared instead.
+	 *
+	 * @param key
+	 *            key identifying equal queries, null disables the coalescing
+	 * @param query
+	 * @return a {@link CompletableFuture} which is failed with a {@link RejectedExecutionException} if the queue is full
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> submit(Object key, Supplier<T> query)
+	{
+		CompletableFuture<T> future;
+		QueryTask<T> taskToExecute = null;
+		synchronized (this)
+		{
+			CompletableFuture<T> inFlightQuery = key != null ? (CompletableFuture<T>) this.inFlightQueries.get(key) : null;
+			if (inFlightQuery != null)
+			{
+				this.coalescedQueries++;
+				return inFlightQuery.thenApply(Function.identity());
+			}
+
+			future = new CompletableFuture<>();
+			QueryTask<T> task = new QueryTask<>(key, query, future);
+			if (this.runningQueries < this.maxConcurrency)
+			{
+				this.runningQueries++;
+				taskToExecute = task;
+			}
+			else if (this.queuedQueries.size() < this.maxQueueDepth)
+			{
+				this.queuedQueries.add(task);
+			}
+			else
+			{
+				future.completeExceptionally(new RejectedExecutionException("Query queue is full: " + this.maxQueueDepth));
+				return future;
+			}
+
+			if (key != null)
+			{
+				this.inFlightQueries.put(key, future);
+			}
+		}
+
+		if (taskToExecute != null)
+		{
+			this.execute(taskToExecute);
+		}
+
+		//callers get their own dependent future, so completing or cancelling it does not affect coalesced callers
+		return future.thenApply(Function.identity());
+	}
+
+	private class QueryTask<T> implements Runnable
+	{
+		private Object					key;
+		private Supplier<T>				query;
+		private CompletableFuture<T>	future;
+
+		public QueryTask(Object key, Supplier<T> query, CompletableFuture<T> future)
+		{
+			super();
+			this.key = key;
+			this.query = query;
+			this.future = future;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				this.future.complete(this.query.get());
+			}
+			catch (Throwable e)
+			{
+				this.future.completeExceptionally(e);
+			}
+			finally
+			{
+				AsyncQueryExecutor.this.onCompletion(this.key, this.future);
+			}
+		}
+
+		public void fail(Throwable e)
+		{
+			this.future.completeExceptionally(e);
+			AsyncQueryExecutor.this.onCompletion(this.key, this.future);
+		}
+	}
+
+	private void onCompletion(Object key, CompletableFuture<?> future)
+	{
+		QueryTask<?> nextTask;
+		synchronized (this)
+		{
+			if (key != null)
+			{
+				this.inFlightQueries.remove(key, future);
+			}
+			nextTask = this.queuedQueries.poll();
+			if (nextTask == null)
+			{
+				this.runningQueries--;
+			}
+		}
+		if (nextTask != null)
+		{
+			this.execute(nextTask);
+		}
+	}
+
+	/**
+	 * Hands the given {@link QueryTask} to the {@link Executor}. If called again on the same thread while handing over, which happens for executors running
+	 * the task directly or rejecting it, the {@link QueryTask} is only queued and handed over by the outer call in a loop, so draining the waiting queries
+	 * does not recurse.
+	 *
+	 * @param task
+	 */
+	private void execute(QueryTask<?> task)
+	{
+		Queue<QueryTask<?>> dispatchedQueries = this.dispatchedQueries.get();
+		if (dispatchedQueries != null)
+		{
+			dispatchedQueries.add(task);
+			return;
+		}
+
+		dispatchedQueries = new ArrayDeque<>();
+		this.dispatchedQueries.set(dispatchedQueries);
+		try
+		{
+			for (QueryTask<?> nextTask = task; nextTask != null; nextTask = dispatchedQueries.poll())
+			{
+				try
+				{
+					this.executor.execute(nextTask);
+				}
+				catch (RejectedExecutionException e)
+				{
+					nextTask.fail(e);
+				}
+			}
+		}
+		finally
+		{
+			this.dispatchedQueries.remove();
+		}
+	}
+
+	public synchronized int getRunningQueries()
+	{
+		return this.runningQueries;
+	}
+
+	public synchronized int getQueuedQueries()
+	{
+		return this.queuedQueries.size();
+	}
+
+	/**
+	 * Returns the number of queries which have been answered by an equal query which was queued or running
+	 *
+	 * @return
+	 */
+	public synchronized long getCoalescedQueries()
+	{
+		return this.coalescedQueries;
+	}
+}
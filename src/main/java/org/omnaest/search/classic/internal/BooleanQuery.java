@@ -0,0 +1,134 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.omnaest.search.classic.analyzer.AnalysisType;
+
+/**
+ * Query consisting of multiple code sequence clauses which are combined on reference level.<br>
+ * <br>
+ * A reference matches if it matches all {@link Occur#MUST} clauses and none of the {@link Occur#MUST_NOT} clauses. If there are no {@link Occur#MUST}
+ * clauses, a reference has to match at least one {@link Occur#SHOULD} clause. Matching {@link Occur#SHOULD} clauses increase the score of a reference.
+ *
+ * @author Omnaest
+ * @param <C>
+ */
+public class BooleanQuery<C>
+{
+	private List<Clause<C>> clauses = new ArrayList<>();
+
+	public static enum Occur
+	{
+		MUST, SHOULD, MUST_NOT
+	}
+
+	public static class Clause<C>
+	{
+		private List<C>			codeSequence;
+		private Occur			occur;
+		private AnalysisType	analysisType;
+
+		public Clause(List<C> codeSequence, Occur occur, AnalysisType analysisType)
+		{
+			super();
+			this.codeSequence = new ArrayList<>(codeSequence);
+			this.occur = occur;
+			this.analysisType = analysisType;
+		}
+
+		public List<C> getCodeSequence()
+		{
+			return this.codeSequence;
+		}
+
+		public Occur getOccur()
+		{
+			return this.occur;
+		}
+
+		/**
+		 * Returns the {@link AnalysisType} the clause is restricted to, or null if the clause matches all {@link AnalysisType}s
+		 *
+		 * @return
+		 */
+		public AnalysisType getAnalysisType()
+		{
+			return this.analysisType;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "[" + this.occur + " " + this.codeSequence + (this.analysisType != null ? " " + this.analysisType : "") + "]";
+		}
+
+	}
+
+	public BooleanQuery<C> add(List<C> codeSequence, Occur occur, AnalysisType analysisType)
+	{
+		this.clauses.add(new Clause<>(codeSequence, occur, analysisType));
+		return this;
+	}
+
+	public BooleanQuery<C> must(List<C> codeSequence)
+	{
+		return this.add(codeSequence, Occur.MUST, null);
+	}
+
+	public BooleanQuery<C> must(List<C> codeSequence, AnalysisType analysisType)
+	{
+		return this.add(codeSequence, Occur.MUST, analysisType);
+	}
+
+	public BooleanQuery<C> should(List<C> codeSequence)
+	{
+		return this.add(codeSequence, Occur.SHOULD, null);
+	}
+
+	public BooleanQuery<C> should(List<C> codeSequence, AnalysisType analysisType)
+	{
+		return this.add(codeSequence, Occur.SHOULD, analysisType);
+	}
+
+	public BooleanQuery<C> mustNot(List<C> codeSequence)
+	{
+		return this.add(codeSequence, Occur.MUST_NOT, null);
+	}
+
+	public BooleanQuery<C> mustNot(List<C> codeSequence, AnalysisType analysisType)
+	{
+		return this.add(codeSequence, Occur.MUST_NOT, analysisType);
+	}
+
+	public List<Clause<C>> getClauses()
+	{
+		return Collections.unmodifiableList(this.clauses);
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.clauses.toString();
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+/**
+ * Token which allows to cancel running queries from another thread. The token is checked cooperatively while postings are traversed, so a cancelled
+ * query stops after a small number of further postings and returns the results found so far.
+ *
+ * @see MatchOptions#setCancellationToken(CancellationToken)
+ * @author Omnaest
+ */
+public class CancellationToken
+{
+	private volatile boolean cancelled = false;
+
+	public CancellationToken cancel()
+	{
+		this.cancelled = true;
+		return this;
+	}
+
+	public boolean isCancelled()
+	{
+		return this.cancelled;
+	}
+}
@@ -19,10 +19,13 @@
 package org.omnaest.search.classic.internal;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import org.omnaest.search.classic.analyzer.AnalysisType;
+import org.omnaest.search.classic.analyzer.AnalysisTypeBasic;
 import org.omnaest.search.classic.analyzer.Token;
+import org.omnaest.search.classic.internal.BooleanQuery.Occur;
 import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollectorUtils.CodeSequenceStatisticsCollectorBuilder;
 import org.omnaest.search.classic.utils.StreamModifier.UnaryStreamModifier;
 
@@ -107,6 +110,157 @@ public interface CodeSequenceStatisticsCollector<C, R>
 
 	}
 
+	/**
+	 * Aggregated match of a single reference over all matched postings
+	 *
+	 * @author Omnaest
+	 * @param <R>
+	 */
+	public static class ReferenceMatch<R>
+	{
+		private R							reference;
+		private double						score;
+		private Map<AnalysisType, Double>	analysisTypeToScore;
+
+		public ReferenceMatch(R reference, double score, Map<AnalysisType, Double> analysisTypeToScore)
+		{
+			super();
+			this.reference = reference;
+			this.score = score;
+			this.analysisTypeToScore = analysisTypeToScore;
+		}
+
+		public R getReference()
+		{
+			return this.reference;
+		}
+
+		/**
+		 * Returns the sum of the scores of all matched postings of the reference
+		 *
+		 * @return
+		 */
+		public double getScore()
+		{
+			return this.score;
+		}
+
+		/**
+		 * Returns the score contribution of every {@link AnalysisType} the reference has been matched by
+		 *
+		 * @return
+		 */
+		public Map<AnalysisType, Double> getScoreByAnalysisType()
+		{
+			return this.analysisTypeToScore;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "[reference=" + this.reference + ", score=" + this.score + "]";
+		}
+
+	}
+
+	/**
+	 * Result of a query which might have been stopped before all matching postings were traversed
+	 *
+	 * @see MatchOptions#setTimeout(long, java.util.concurrent.TimeUnit)
+	 * @see MatchOptions#setPostingBudget(long)
+	 * @see MatchOptions#setCancellationToken(CancellationToken)
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
+	public static class MatchResult<C, R>
+	{
+		private List<MatchingTokenAndStatistics<C, R>>	matches;
+		private boolean									truncated;
+
+		public MatchResult(List<MatchingTokenAndStatistics<C, R>> matches, boolean truncated)
+		{
+			super();
+			this.matches = matches;
+			this.truncated = truncated;
+		}
+
+		/**
+		 * Returns the best matches ordered by descending score. If the result is truncated these are the best matches of the traversed postings only.
+		 *
+		 * @return
+		 */
+		public List<MatchingTokenAndStatistics<C, R>> getMatches()
+		{
+			return this.matches;
+		}
+
+		/**
+		 * Returns true if the query has been stopped by a timeout, posting budget or {@link CancellationToken} before all matching postings were traversed
+		 *
+		 * @return
+		 */
+		public boolean isTruncated()
+		{
+			return this.truncated;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "[matches=" + this.matches + ", truncated=" + this.truncated + "]";
+		}
+
+	}
+
+	/**
+	 * Single page of ranked matches together with the opaque cursor of the next page
+	 *
+	 * @see MatchCursor
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
+	public static class MatchPage<C, R>
+	{
+		private List<MatchingTokenAndStatistics<C, R>>	matches;
+		private String									nextCursor;
+
+		public MatchPage(List<MatchingTokenAndStatistics<C, R>> matches, String nextCursor)
+		{
+			super();
+			this.matches = matches;
+			this.nextCursor = nextCursor;
+		}
+
+		public List<MatchingTokenAndStatistics<C, R>> getMatches()
+		{
+			return this.matches;
+		}
+
+		/**
+		 * Returns the opaque cursor which resumes after the last match of this page, or null if there are no further matches
+		 *
+		 * @return
+		 */
+		public String getNextCursor()
+		{
+			return this.nextCursor;
+		}
+
+		public boolean hasNextPage()
+		{
+			return this.nextCursor != null;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "[matches=" + this.matches + ", nextCursor=" + this.nextCursor + "]";
+		}
+
+	}
+
 	public static interface MatchingTokenStreamModifier<C, R> extends UnaryStreamModifier<MatchingTokenAndStatistics<C, R>>
 	{
 	}
@@ -160,6 +314,35 @@ public interface CodeSequenceStatisticsCollector<C, R>
 		public double score(MatchTokenAndIndexStatistics<C> matchAndIndexStatistics);
 	}
 
+	/**
+	 * Scoring function which gets the statistics of a single posting as primitive arguments, so scoring does not allocate any object per posting.<br>
+	 * <br>
+	 * All statistics are maintained at ingestion time and refer to the index of a single {@link AnalysisType}.
+	 *
+	 * @see ScoringFunctionUtils#bm25()
+	 * @see ScoringFunctionUtils#tfIdf()
+	 * @author Omnaest
+	 */
+	public static interface PrimitiveScoringFunction
+	{
+		/**
+		 * @param termFrequency
+		 *            number of postings of the matched key for the matched reference
+		 * @param documentFrequency
+		 *            number of distinct references having postings for the matched key
+		 * @param documentCount
+		 *            number of distinct references within the index
+		 * @param documentLength
+		 *            number of postings of the matched reference within the index
+		 * @param averageDocumentLength
+		 *            average number of postings per reference within the index
+		 * @param keyLength
+		 *            number of codes of the matched key
+		 * @return
+		 */
+		public double score(int termFrequency, int documentFrequency, int documentCount, int documentLength, double averageDocumentLength, int keyLength);
+	}
+
 	public static interface Matcher<C, R>
 	{
 		public int matchingDepth(List<C> codeSequence);
@@ -169,6 +352,137 @@ public interface CodeSequenceStatisticsCollector<C, R>
 		public Stream<MatchingTokenAndStatistics<C, R>> matchAll(ScoringFunction<C, R> scoringFunction);
 
 		Stream<MatchingTokenAndStatistics<C, R>> match(List<C> codeSequence, ScoringFunction<C, R> scoringFunction, AnalysisType analysisType);
+
+		Stream<MatchingTokenAndStatistics<C, R>> match(List<C> codeSequence, PrimitiveScoringFunction scoringFunction, AnalysisType analysisType);
+
+		public Stream<MatchingTokenAndStatistics<C, R>> match(List<C> codeSequence, MatchOptions<C, R> options);
+
+		/**
+		 * Returns the references with the highest aggregated scores over all postings matching the given code sequence, ordered by descending score. The
+		 * number of returned references is bounded by {@link MatchOptions#getLimit()}.
+		 *
+		 * @param codeSequence
+		 * @param options
+		 * @return
+		 */
+		public List<ReferenceMatch<R>> matchReferences(List<C> codeSequence, MatchOptions<C, R> options);
+
+		/**
+		 * Matches all keys within the given maximum Levenshtein distance to the given code sequence by intersecting a {@link LevenshteinAutomaton} with the
+		 * {@link KeyTrie} of the matched indexes. This does not require any index time expansion like {@link AnalysisTypeBasic#DELETION} or
+		 * {@link AnalysisTypeBasic#INSERTION}.<br>
+		 * <br>
+		 * If {@link MatchOptions#getAnalysisType()} is null the {@link AnalysisTypeBasic#EXACT} index is used. The score of every posting is divided by (1 +
+		 * distance), so closer keys rank higher.
+		 *
+		 * @param codeSequence
+		 * @param maxDistance
+		 * @param options
+		 * @return
+		 */
+		public Stream<MatchingTokenAndStatistics<C, R>> matchFuzzy(List<C> codeSequence, int maxDistance, MatchOptions<C, R> options);
+
+		/**
+		 * Similar to {@link #match(List, MatchOptions)} but respects the timeout, posting budget and {@link CancellationToken} of the given
+		 * {@link MatchOptions}. The postings are checked cooperatively while they are traversed, and if any bound is hit the best matches found so far are
+		 * returned within a truncated {@link MatchResult}. Bounded queries bypass the query cache.
+		 *
+		 * @param codeSequence
+		 * @param options
+		 * @return
+		 */
+		public MatchResult<C, R> matchBounded(List<C> codeSequence, MatchOptions<C, R> options);
+
+		/**
+		 * Matches all keys accepted by the given {@link KeyAutomaton}, e.g. a {@link KeyPattern}, by intersecting it with the {@link KeyTrie} of the
+		 * matched indexes. Only the branches of the {@link KeyTrie} the {@link KeyAutomaton} can still accept are visited.<br>
+		 * <br>
+		 * If {@link MatchOptions#getAnalysisType()} is null the {@link AnalysisTypeBasic#EXACT} index is used.
+		 *
+		 * @param keyAutomaton
+		 * @param options
+		 * @return
+		 */
+		public <S> Stream<MatchingTokenAndStatistics<C, R>> matchPattern(KeyAutomaton<C, S> keyAutomaton, MatchOptions<C, R> options);
+
+		/**
+		 * Returns the number of distinct references matching the given code sequence. The count is answered from the statistics of the matched index
+		 * entries without visiting any posting or scoring anything.
+		 *
+		 * @param codeSequence
+		 * @param options
+		 *            only {@link MatchOptions#getAnalysisType()} is considered
+		 * @return
+		 */
+		public int count(List<C> codeSequence, MatchOptions<C, R> options);
+
+		/**
+		 * Returns true if any reference matches the given code sequence. This stops at the first matched non empty index entry.
+		 *
+		 * @param codeSequence
+		 * @param options
+		 *            only {@link MatchOptions#getAnalysisType()} is considered
+		 * @return
+		 */
+		public boolean exists(List<C> codeSequence, MatchOptions<C, R> options);
+
+		/**
+		 * Matches the references fulfilling the given {@link BooleanQuery}. The clauses are evaluated on sorted reference id arrays of the matched index
+		 * entries, starting with the smallest {@link Occur#MUST} clause, so the cost is proportional to the smallest posting list.<br>
+		 * <br>
+		 * If {@link MatchOptions#getPrimitiveScoringFunction()} is set, a reference is scored by the sum of all its matched postings of the
+		 * {@link Occur#MUST} and {@link Occur#SHOULD} clauses, otherwise every matched clause contributes 1.0. Clauses without an {@link AnalysisType} use
+		 * {@link MatchOptions#getAnalysisType()}. The number of returned references is bounded by {@link MatchOptions#getLimit()}.
+		 *
+		 * @param booleanQuery
+		 * @param options
+		 * @return
+		 */
+		public List<ReferenceMatch<R>> matchBoolean(BooleanQuery<C> booleanQuery, MatchOptions<C, R> options);
+
+		/**
+		 * Matches the references which contain the given code sequences as consecutive words in the given order. The word positions are counted over all
+		 * code sequences analyzed for a reference, and the phrase is resolved by merging the positional postings of the matched index entries.<br>
+		 * <br>
+		 * If {@link MatchOptions#getAnalysisType()} is null the {@link AnalysisTypeBasic#EXACT} index is used. A reference is scored by the number of
+		 * phrase occurrences.
+		 *
+		 * @param codeSequences
+		 * @param options
+		 * @return
+		 */
+		public List<ReferenceMatch<R>> matchPhrase(List<List<C>> codeSequences, MatchOptions<C, R> options);
+
+		/**
+		 * Matches the references which contain all given code sequences as words within a window of the given maximum distance, which is the difference
+		 * between the last and the first word position, regardless of their order.<br>
+		 * <br>
+		 * If {@link MatchOptions#getAnalysisType()} is null the {@link AnalysisTypeBasic#EXACT} index is used. A reference is scored with 1.0 if the words
+		 * are adjacent, and lower the wider the smallest window containing all words is.
+		 *
+		 * @see #matchPhrase(List, MatchOptions)
+		 * @param codeSequences
+		 * @param maxDistance
+		 * @param options
+		 * @return
+		 */
+		public List<ReferenceMatch<R>> matchWithin(List<List<C>> codeSequences, int maxDistance, MatchOptions<C, R> options);
+
+		/**
+		 * Returns a single page of the matches of the given code sequence. The matches are totally ordered by descending score, ascending reference and
+		 * ascending posting order, so the page after the given cursor is selected with a bounded heap of the page size within a single traversal of the
+		 * postings, without sorting all matches. Deeper pages therefore cost about the same as the first page.
+		 *
+		 * @param codeSequence
+		 * @param cursor
+		 *            {@link MatchPage#getNextCursor()} of the previous page, or null for the first page
+		 * @param pageSize
+		 * @param options
+		 * @return
+		 * @throws IllegalArgumentException
+		 *             if the cursor is invalid
+		 */
+		public MatchPage<C, R> matchPage(List<C> codeSequence, String cursor, int pageSize, MatchOptions<C, R> options);
 	}
 
 	public void analyze(List<C> codeSequence, R reference);
@@ -18,14 +18,28 @@
 */
 package org.omnaest.search.classic.internal;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -33,6 +47,10 @@ import org.omnaest.search.classic.analyzer.AnalysisType;
 import org.omnaest.search.classic.analyzer.AnalysisTypeBasic;
 import org.omnaest.search.classic.analyzer.Analyzer;
 import org.omnaest.search.classic.analyzer.Token;
+import org.omnaest.search.classic.internal.BooleanQuery.Clause;
+import org.omnaest.search.classic.internal.BooleanQuery.Occur;
+import org.omnaest.search.classic.internal.QueryCache.CacheKey;
+import org.omnaest.search.classic.internal.QueryCache.QueryCacheStatistics;
 import org.omnaest.search.classic.internal.SequenceIndex.IndexEntry;
 import org.omnaest.search.classic.internal.SequenceIndex.TokenAndReference;
 import org.omnaest.search.classic.utils.StreamModifier;
@@ -56,11 +74,262 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 @JsonAutoDetect(fieldVisibility = Visibility.ANY)
 public class CodeSequenceStatisticsCollectorMap<C, R> extends AbstractCodeSequenceStatisticsCollector<C, R>
 {
-	protected AnalyzerAndSequenceIndex<C, R> analyzerAndSequenceIndex = new AnalyzerAndSequenceIndex<>();
+	protected AnalyzerAndSequenceIndex<C, R>	analyzerAndSequenceIndex	= new AnalyzerAndSequenceIndex<>();
+	protected ReferenceDictionary<R>			referenceDictionary			= new ReferenceDictionary<>();
+	protected ReferenceFrequencies				referenceWordCounts			= new ReferenceFrequencies();
 
 	protected Predicate<List<C>>						codeSequenceMatcher		= StreamUtils.matchAllPredicate();
 	protected UnaryStreamModifier<CodeAndPosition<C>>	codeSequenceModifier	= StreamModifier.UNMODIFYING();
 
+	protected volatile QueryCache<C, R> queryCache = null;
+
+	private static final Comparator<MatchingTokenAndStatistics<?, ?>> SCORE_DESCENDING = (m1, m2) -> -1 * Double.compare(m1.getScore(), m2.getScore());
+
+	/**
+	 * Scores a single posting of an {@link IndexEntry} within a {@link SequenceIndex}
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
+	protected static interface PostingScorer<C, R>
+	{
+		public double score(SequenceIndex<C, R> index, IndexEntry<C, R> indexEntry, TokenAndReference<C, R> tokenAndReference);
+	}
+
+	/**
+	 * Merges the given lists, each ordered by descending score, into a single list ordered by descending score. Matches with equal scores keep the order of
+	 * the given lists.
+	 *
+	 * @param partialMatches
+	 * @param limit
+	 * @return
+	 */
+	protected static <C, R> List<MatchingTokenAndStatistics<C, R>> mergeByScore(List<List<MatchingTokenAndStatistics<C, R>>> partialMatches, int limit)
+	{
+		int[] positions = new int[partialMatches.size()];
+		PriorityQueue<Integer> listIndexes = new PriorityQueue<>((i1, i2) ->
+		{
+			int result = SCORE_DESCENDING.compare(partialMatches	.get(i1)
+																	.get(positions[i1]),
+													partialMatches	.get(i2)
+																	.get(positions[i2]));
+			return result != 0 ? result : Integer.compare(i1, i2);
+		});
+		for (int ii = 0; ii < partialMatches.size(); ii++)
+		{
+			if (!partialMatches	.get(ii)
+								.isEmpty())
+			{
+				listIndexes.add(ii);
+			}
+		}
+
+		List<MatchingTokenAndStatistics<C, R>> retlist = new ArrayList<>();
+		while (!listIndexes.isEmpty() && retlist.size() < limit)
+		{
+			int listIndex = listIndexes.poll();
+			List<MatchingTokenAndStatistics<C, R>> matches = partialMatches.get(listIndex);
+			retlist.add(matches.get(positions[listIndex]++));
+			if (positions[listIndex] < matches.size())
+			{
+				listIndexes.add(listIndex);
+			}
+		}
+		return retlist;
+	}
+
+	/**
+	 * Scored posting which is ranked by the total order of {@link MatchCursor}
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
+	protected static class RankedPosting<C, R>
+	{
+		private double					score;
+		private TokenAndReference<C, R>	tokenAndReference;
+		private AnalysisType			analysisType;
+
+		public RankedPosting(double score, TokenAndReference<C, R> tokenAndReference, AnalysisType analysisType)
+		{
+			super();
+			this.score = score;
+			this.tokenAndReference = tokenAndReference;
+			this.analysisType = analysisType;
+		}
+
+		public int compareRank(RankedPosting<C, R> other)
+		{
+			return MatchCursor.compareRank(	this.score, this.tokenAndReference.getReferenceId(), this.tokenAndReference.getSequence(), other.score,
+											other.tokenAndReference.getReferenceId(), other.tokenAndReference.getSequence());
+		}
+
+		public MatchCursor toCursor()
+		{
+			return new MatchCursor(this.score, this.tokenAndReference.getReferenceId(), this.tokenAndReference.getSequence());
+		}
+
+		public MatchingTokenAndStatistics<C, R> toMatch()
+		{
+			return new MatchingTokenAndStatistics<>(this.tokenAndReference.getToken(), this.tokenAndReference.getReference(), this.score, this.analysisType);
+		}
+	}
+
+	/**
+	 * Returns the smallest difference between the largest and the smallest position of any combination of as many distinct positions of every given
+	 * sorted position array as given by the multiplicity of the array, or {@link Integer#MAX_VALUE} if any array has fewer positions than its
+	 * multiplicity
+	 *
+	 * @param positions
+	 *            sorted distinct positions
+	 * @param multiplicities
+	 *            number of required positions per position array
+	 * @return
+	 */
+	protected static int smallestWindow(List<int[]> positions, int[] multiplicities)
+	{
+		int numberOfPositions = 0;
+		for (int ii = 0; ii < positions.size(); ii++)
+		{
+			if (positions.get(ii).length < multiplicities[ii])
+			{
+				return Integer.MAX_VALUE;
+			}
+			numberOfPositions += positions.get(ii).length;
+		}
+
+		//merge all positions, tagged with the index of their array, and slide a window over them
+		long[] taggedPositions = new long[numberOfPositions];
+		int size = 0;
+		for (int ii = 0; ii < positions.size(); ii++)
+		{
+			for (int position : positions.get(ii))
+			{
+				taggedPositions[size++] = ((long) position << 32) | ii;
+			}
+		}
+		Arrays.sort(taggedPositions);
+
+		int[] counts = new int[positions.size()];
+		int unsatisfied = positions.size();
+		int retval = Integer.MAX_VALUE;
+		int left = 0;
+		for (int right = 0; right < taggedPositions.length; right++)
+		{
+			int list = (int) taggedPositions[right];
+			if (++counts[list] == multiplicities[list])
+			{
+				unsatisfied--;
+			}
+			while (unsatisfied == 0)
+			{
+				retval = Math.min(retval, (int) (taggedPositions[right] >> 32) - (int) (taggedPositions[left] >> 32));
+				int leftList = (int) taggedPositions[left++];
+				if (counts[leftList]-- == multiplicities[leftList])
+				{
+					unsatisfied++;
+				}
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Accumulates the scores of the references of a single {@link IndexEntry}
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
+	protected static interface ReferenceScorer<C, R>
+	{
+		/**
+		 * Adds the scores of the references of the given {@link IndexEntry} to the given scores, indexed by reference id, and returns the scores, which
+		 * are enlarged if necessary
+		 *
+		 * @param index
+		 * @param indexEntry
+		 * @param scores
+		 * @param matchedReferenceIds
+		 *            receives the ids of all scored references
+		 * @return
+		 */
+		public double[] accumulate(SequenceIndex<C, R> index, IndexEntry<C, R> indexEntry, double[] scores, BitSet matchedReferenceIds);
+	}
+
+	/**
+	 * Returns a {@link ReferenceScorer}, which scores a {@link PrimitiveScoringFunction} once per reference of an {@link IndexEntry}, since it already
+	 * receives the term frequency of the reference, and a {@link ScoringFunction} once per posting
+	 *
+	 * @param options
+	 * @return
+	 */
+	protected static <C, R> ReferenceScorer<C, R> toReferenceScorer(MatchOptions<C, R> options)
+	{
+		if (options.hasPrimitiveScoringFunction())
+		{
+			PrimitiveScoringFunction scoringFunction = options.getPrimitiveScoringFunction();
+			return (index, indexEntry, scores, matchedReferenceIds) ->
+			{
+				for (int referenceId : indexEntry.getReferenceIds())
+				{
+					scores = ensureCapacity(scores, referenceId);
+					scores[referenceId] += scoringFunction.score(	indexEntry.getTermFrequency(referenceId), indexEntry.getDocumentFrequency(),
+																	index.getDocumentCount(), index.getDocumentLength(referenceId), index.getAverageDocumentLength(),
+																	indexEntry.getKeyLength());
+					matchedReferenceIds.set(referenceId);
+				}
+				return scores;
+			};
+		}
+
+		PostingScorer<C, R> postingScorer = toPostingScorer(options.getScoringFunction());
+		return (index, indexEntry, scores, matchedReferenceIds) ->
+		{
+			List<TokenAndReference<C, R>> tokenAndReferences = indexEntry.getTokenAndReferences();
+			synchronized (tokenAndReferences)
+			{
+				for (TokenAndReference<C, R> tokenAndReference : tokenAndReferences)
+				{
+					int referenceId = tokenAndReference.getReferenceId();
+					scores = ensureCapacity(scores, referenceId);
+					scores[referenceId] += postingScorer.score(index, indexEntry, tokenAndReference);
+					matchedReferenceIds.set(referenceId);
+				}
+			}
+			return scores;
+		};
+	}
+
+	private static double[] ensureCapacity(double[] scores, int referenceId)
+	{
+		//references added concurrently to a query
+		return referenceId < scores.length ? scores : Arrays.copyOf(scores, Math.max(referenceId + 1, scores.length * 2));
+	}
+
+	protected static <C, R> PostingScorer<C, R> toPostingScorer(MatchOptions<C, R> options)
+	{
+		return options.hasPrimitiveScoringFunction() ? toPostingScorer(options.getPrimitiveScoringFunction()) : toPostingScorer(options.getScoringFunction());
+	}
+
+	protected static <C, R> PostingScorer<C, R> toPostingScorer(ScoringFunction<C, R> scoringFunction)
+	{
+		return (index, indexEntry, tokenAndReference) -> scoringFunction.score(new MatchTokenAndIndexStatistics<>(	tokenAndReference.getToken(), indexEntry.getCount(),
+																													index.getCount(), index.getAnalysisType()));
+	}
+
+	protected static <C, R> PostingScorer<C, R> toPostingScorer(PrimitiveScoringFunction scoringFunction)
+	{
+		return (index, indexEntry, tokenAndReference) ->
+		{
+			int referenceId = tokenAndReference.getReferenceId();
+			return scoringFunction.score(	indexEntry.getTermFrequency(referenceId), indexEntry.getDocumentFrequency(), index.getDocumentCount(),
+											index.getDocumentLength(referenceId), index.getAverageDocumentLength(), indexEntry.getKeyLength());
+		};
+	}
+
 	public CodeSequenceStatisticsCollectorMap<C, R> setCodeSequenceMatcher(Predicate<List<C>> codeSequenceMatcher)
 	{
 		this.codeSequenceMatcher = codeSequenceMatcher;
@@ -104,17 +373,23 @@ public class CodeSequenceStatisticsCollectorMap<C, R> extends AbstractCodeSequen
 	protected void analyzeFiltered(Stream<C> codeSequenceStream, int codeSequenceSize, R reference)
 	{
 		List<C> codeSequenceList = codeSequenceStream.collect(Collectors.toList());
+		int referenceId = this.referenceDictionary.getOrCreateId(reference);
+		int wordPosition = this.referenceWordCounts.increment(referenceId) - 1;
 		for (Analyzer<C> analyzer : this.analyzerAndSequenceIndex.getAnalyzers())
 		{
 			Stream<CodeAndPosition<C>> codeAndPositionStream = this.generateCodeAndPositionStream(codeSequenceList.stream(), codeSequenceSize);
+			SequenceIndex<C, R> index = this.analyzerAndSequenceIndex.getIndex(analyzer);
 			analyzer.analyze(codeAndPositionStream)
 					.forEach(token ->
 					{
+						SequenceKey<C> sequenceKey = token.getCodeSequenceKey();
+						boolean created = index.addTokenAndReference(sequenceKey, token, reference, referenceId, wordPosition);
 
-						this.analyzerAndSequenceIndex	.getIndex(analyzer)
-														.getOrCreateEntry(token.getCodeSequenceKey())
-														.addTokenAndReference(token, reference);
-
+						QueryCache<C, R> queryCache = this.queryCache;
+						if (queryCache != null)
+						{
+							queryCache.invalidate(index, sequenceKey, created);
+						}
 					});
 		}
 	}
@@ -193,9 +468,757 @@ public class CodeSequenceStatisticsCollectorMap<C, R> extends AbstractCodeSequen
 
 			@Override
 			public Stream<MatchingTokenAndStatistics<C, R>> match(List<C> codeSequence, ScoringFunction<C, R> scoringFunction, AnalysisType analysisType)
+			{
+				return this.match(codeSequence, new MatchOptions<C, R>()	.setScoringFunction(scoringFunction)
+																		.setAnalysisType(analysisType));
+			}
+
+			@Override
+			public Stream<MatchingTokenAndStatistics<C, R>> match(List<C> codeSequence, PrimitiveScoringFunction scoringFunction, AnalysisType analysisType)
+			{
+				return this.match(codeSequence, new MatchOptions<C, R>()	.setPrimitiveScoringFunction(scoringFunction)
+																		.setAnalysisType(analysisType));
+			}
+
+			@Override
+			public Stream<MatchingTokenAndStatistics<C, R>> match(List<C> codeSequence, MatchOptions<C, R> options)
+			{
+				if (options.isBounded())
+				{
+					return this	.matchBounded(codeSequence, options)
+								.getMatches()
+								.stream();
+				}
+
+				Stream<MatchingTokenAndStatistics<C, R>> matches = this.matchUnlimited(codeSequence, options);
+				return options.getLimit() < Integer.MAX_VALUE ? matches.limit(options.getLimit()) : matches;
+			}
+
+			private Stream<MatchingTokenAndStatistics<C, R>> matchUnlimited(List<C> codeSequence, MatchOptions<C, R> options)
+			{
+				SequenceKey<C> sequenceKey = new SequenceKey<>(codeSequence);
+				AnalysisType analysisType = options.getAnalysisType();
+				PostingScorer<C, R> postingScorer = toPostingScorer(options);
+
+				QueryCache<C, R> queryCache = CodeSequenceStatisticsCollectorMap.this.queryCache;
+				if (queryCache != null)
+				{
+					Supplier<Map<SequenceIndex<C, R>, Set<SequenceKey<C>>>> dependenciesSupplier = () ->
+					{
+						Map<SequenceIndex<C, R>, Set<SequenceKey<C>>> dependencies = new IdentityHashMap<>();
+						for (SequenceIndex<C, R> index : CodeSequenceStatisticsCollectorMap.this.analyzerAndSequenceIndex.getIndexesFor(analysisType))
+						{
+							dependencies.put(index, index	.getQueryKeys(sequenceKey)
+															.collect(Collectors.toSet()));
+						}
+						return dependencies;
+					};
+
+					CacheKey cacheKey = new CacheKey(sequenceKey.asList(), analysisType, options.getEffectiveScoringFunction());
+					int limit = Integer.MAX_VALUE;
+					//primitive scoring functions depend on the document count and lengths, which change with every posting
+					boolean dependentOnIndexStatistics = options.hasPrimitiveScoringFunction();
+					return queryCache	.get(cacheKey, analysisType, dependenciesSupplier, dependentOnIndexStatistics,
+											() -> this	.match(index -> index.getEntries(sequenceKey), postingScorer, analysisType, options.getExecutor(), limit)
+														.collect(Collectors.toList()))
+										.stream();
+				}
+
+				return this.match(index -> index.getEntries(sequenceKey), postingScorer, analysisType, options.getExecutor(), options.getLimit());
+			}
+
+			@Override
+			public List<ReferenceMatch<R>> matchReferences(List<C> codeSequence, MatchOptions<C, R> options)
+			{
+				SequenceKey<C> sequenceKey = new SequenceKey<>(codeSequence);
+				ReferenceScorer<C, R> referenceScorer = toReferenceScorer(options);
+				List<SequenceIndex<C, R>> indexes = CodeSequenceStatisticsCollectorMap.this.analyzerAndSequenceIndex.getIndexesFor(options.getAnalysisType());
+
+				int capacity = CodeSequenceStatisticsCollectorMap.this.referenceDictionary.size();
+				double[][] indexScores = new double[indexes.size()][];
+				BitSet[] matchedReferenceIdsOfIndex = new BitSet[indexes.size()];
+				for (int ii = 0; ii < indexes.size(); ii++)
+				{
+					matchedReferenceIdsOfIndex[ii] = new BitSet(capacity);
+				}
+				Executor executor = options.getExecutor();
+				if (executor == null || indexes.size() <= 1)
+				{
+					for (int ii = 0; ii < indexes.size(); ii++)
+					{
+						indexScores[ii] = this.accumulateReferenceScores(indexes.get(ii), sequenceKey, referenceScorer, capacity, matchedReferenceIdsOfIndex[ii]);
+					}
+				}
+				else
+				{
+					List<CompletableFuture<double[]>> futures = new ArrayList<>();
+					for (int ii = 0; ii < indexes.size(); ii++)
+					{
+						SequenceIndex<C, R> index = indexes.get(ii);
+						BitSet matchedReferenceIds = matchedReferenceIdsOfIndex[ii];
+						futures.add(CompletableFuture.supplyAsync(	() -> this.accumulateReferenceScores(index, sequenceKey, referenceScorer, capacity, matchedReferenceIds),
+																	executor));
+					}
+					for (int ii = 0; ii < indexes.size(); ii++)
+					{
+						indexScores[ii] = futures	.get(ii)
+													.join();
+					}
+				}
+
+				int length = Arrays	.stream(indexScores)
+									.mapToInt(scores -> scores.length)
+									.max()
+									.orElse(0);
+				double[] scores = new double[length];
+				BitSet matchedReferenceIds = new BitSet(length);
+				for (int ii = 0; ii < indexes.size(); ii++)
+				{
+					BitSet matchedReferenceIdsOfCurrentIndex = matchedReferenceIdsOfIndex[ii];
+					for (int referenceId = matchedReferenceIdsOfCurrentIndex.nextSetBit(0); referenceId >= 0; referenceId = matchedReferenceIdsOfCurrentIndex.nextSetBit(referenceId + 1))
+					{
+						scores[referenceId] += indexScores[ii][referenceId];
+					}
+					matchedReferenceIds.or(matchedReferenceIdsOfCurrentIndex);
+				}
+
+				List<ReferenceMatch<R>> retlist = new ArrayList<>();
+				for (int referenceId : TopReferenceIds.select(matchedReferenceIds, scores, options.getLimit()))
+				{
+					Map<AnalysisType, Double> analysisTypeToScore = new LinkedHashMap<>();
+					for (int ii = 0; ii < indexes.size(); ii++)
+					{
+						if (matchedReferenceIdsOfIndex[ii].get(referenceId))
+						{
+							analysisTypeToScore.merge(	indexes	.get(ii)
+																.getAnalysisType(),
+														indexScores[ii][referenceId], Double::sum);
+						}
+					}
+					R reference = CodeSequenceStatisticsCollectorMap.this.referenceDictionary.getReference(referenceId);
+					retlist.add(new ReferenceMatch<>(reference, scores[referenceId], analysisTypeToScore));
+				}
+				return retlist;
+			}
+
+			/**
+			 * Returns the accumulated scores of all {@link IndexEntry}s of the given {@link SequenceIndex} matching the given {@link SequenceKey}, indexed by
+			 * reference id
+			 *
+			 * @param index
+			 * @param sequenceKey
+			 * @param referenceScorer
+			 * @param capacity
+			 *            initial size of the returned array
+			 * @param matchedReferenceIds
+			 *            receives the ids of all matched references
+			 * @return
+			 */
+			private double[] accumulateReferenceScores(	SequenceIndex<C, R> index, SequenceKey<C> sequenceKey, ReferenceScorer<C, R> referenceScorer, int capacity,
+														BitSet matchedReferenceIds)
+			{
+				double[] scores = new double[capacity];
+				Iterator<IndexEntry<C, R>> indexEntries = index	.getEntries(sequenceKey)
+																.iterator();
+				while (indexEntries.hasNext())
+				{
+					IndexEntry<C, R> indexEntry = indexEntries.next();
+					if (indexEntry != null)
+					{
+						scores = referenceScorer.accumulate(index, indexEntry, scores, matchedReferenceIds);
+					}
+				}
+				return scores;
+			}
+
+			@Override
+			public MatchResult<C, R> matchBounded(List<C> codeSequence, MatchOptions<C, R> options)
+			{
+				SequenceKey<C> sequenceKey = new SequenceKey<>(codeSequence);
+				PostingScorer<C, R> postingScorer = toPostingScorer(options);
+				QueryBudget queryBudget = QueryBudget.of(options);
+				int limit = options.getLimit();
+				List<SequenceIndex<C, R>> indexes = CodeSequenceStatisticsCollectorMap.this.analyzerAndSequenceIndex.getIndexesFor(options.getAnalysisType());
+
+				List<List<MatchingTokenAndStatistics<C, R>>> partialMatches = new ArrayList<>();
+				Executor executor = options.getExecutor();
+				if (executor == null || indexes.size() <= 1)
+				{
+					TopMatches<C, R> topMatches = new TopMatches<>(limit);
+					for (SequenceIndex<C, R> index : indexes)
+					{
+						this.collectMatches(index, sequenceKey, postingScorer, queryBudget, topMatches);
+					}
+					partialMatches.add(topMatches.toList());
+				}
+				else
+				{
+					List<CompletableFuture<List<MatchingTokenAndStatistics<C, R>>>> futures = indexes	.stream()
+																									.map(index -> CompletableFuture.supplyAsync(() -> this	.collectMatches(index,
+																																											sequenceKey,
+																																											postingScorer,
+																																											queryBudget,
+																																											new TopMatches<>(limit))
+																																							.toList(),
+																																				executor))
+																									.collect(Collectors.toList());
+					for (CompletableFuture<List<MatchingTokenAndStatistics<C, R>>> future : futures)
+					{
+						partialMatches.add(future.join());
+					}
+				}
+
+				return new MatchResult<>(mergeByScore(partialMatches, limit), queryBudget.isExhausted());
+			}
+
+			/**
+			 * Adds the postings of the given {@link SequenceIndex} matching the given {@link SequenceKey} to the given {@link TopMatches} as long as the
+			 * given {@link QueryBudget} is not exhausted
+			 *
+			 * @param index
+			 * @param sequenceKey
+			 * @param postingScorer
+			 * @param queryBudget
+			 * @param topMatches
+			 * @return
+			 */
+			private TopMatches<C, R> collectMatches(SequenceIndex<C, R> index, SequenceKey<C> sequenceKey, PostingScorer<C, R> postingScorer,
+													QueryBudget queryBudget, TopMatches<C, R> topMatches)
+			{
+				AnalysisType analysisType = index.getAnalysisType();
+				Iterator<IndexEntry<C, R>> indexEntries = index	.getEntries(sequenceKey)
+																.iterator();
+				while (indexEntries.hasNext() && !queryBudget.isExhausted())
+				{
+					IndexEntry<C, R> indexEntry = indexEntries.next();
+					if (indexEntry != null)
+					{
+						List<TokenAndReference<C, R>> tokenAndReferences = indexEntry.getTokenAndReferences();
+						synchronized (tokenAndReferences)
+						{
+							for (TokenAndReference<C, R> tokenAndReference : tokenAndReferences)
+							{
+								if (!queryBudget.tryConsume())
+								{
+									return topMatches;
+								}
+
+								double score = postingScorer.score(index, indexEntry, tokenAndReference);
+								if (topMatches.isCompetitive(score))
+								{
+									topMatches.add(new MatchingTokenAndStatistics<>(tokenAndReference.getToken(), tokenAndReference.getReference(), score,
+																					analysisType));
+								}
+							}
+						}
+					}
+				}
+				return topMatches;
+			}
+
+			@Override
+			public Stream<MatchingTokenAndStatistics<C, R>> matchFuzzy(List<C> codeSequence, int maxDistance, MatchOptions<C, R> options)
 			{
 				SequenceKey<C> sequenceKey = new SequenceKey<>(codeSequence);
-				return this.match(index -> index.getEntries(sequenceKey), scoringFunction, analysisType);
+				AnalysisType analysisType = options.getAnalysisType() != null ? options.getAnalysisType() : AnalysisTypeBasic.EXACT;
+				PostingScorer<C, R> postingScorer = toPostingScorer(options);
+
+				Map<IndexEntry<C, R>, Integer> indexEntryToDistance = Collections.synchronizedMap(new IdentityHashMap<>());
+				Function<SequenceIndex<C, R>, Stream<IndexEntry<C, R>>> matchingFunction = index ->
+				{
+					KeyTrie<C> keyTrie = index.getKeyTrie();
+					Map<IndexEntry<C, R>, Integer> indexEntryToDistanceOfIndex = new IdentityHashMap<>();
+					index	.getQueryKeys(sequenceKey)
+							.forEach(queryKey ->
+							{
+								LevenshteinAutomaton<C> automaton = new LevenshteinAutomaton<>(queryKey.asList(), maxDistance);
+								keyTrie.intersect(automaton, (matchedKey, state) ->
+								{
+									IndexEntry<C, R> indexEntry = index.getEntry(matchedKey);
+									if (indexEntry != null)
+									{
+										indexEntryToDistanceOfIndex.merge(indexEntry, automaton.getDistance(state), Math::min);
+									}
+								});
+							});
+					indexEntryToDistance.putAll(indexEntryToDistanceOfIndex);
+					return indexEntryToDistanceOfIndex	.keySet()
+														.stream();
+				};
+				PostingScorer<C, R> distanceScorer = (index, indexEntry, tokenAndReference) -> postingScorer.score(index, indexEntry, tokenAndReference)
+						/ (1.0 + indexEntryToDistance.getOrDefault(indexEntry, 0));
+
+				Stream<MatchingTokenAndStatistics<C, R>> matches = this.match(	matchingFunction, distanceScorer, analysisType, options.getExecutor(),
+																				options.getLimit());
+				return options.getLimit() < Integer.MAX_VALUE ? matches.limit(options.getLimit()) : matches;
+			}
+
+			@Override
+			public <S> Stream<MatchingTokenAndStatistics<C, R>> matchPattern(KeyAutomaton<C, S> keyAutomaton, MatchOptions<C, R> options)
+			{
+				AnalysisType analysisType = options.getAnalysisType() != null ? options.getAnalysisType() : AnalysisTypeBasic.EXACT;
+				Function<SequenceIndex<C, R>, Stream<IndexEntry<C, R>>> matchingFunction = index ->
+				{
+					List<IndexEntry<C, R>> indexEntries = new ArrayList<>();
+					index	.getKeyTrie()
+							.intersect(keyAutomaton, (matchedKey, state) ->
+							{
+								IndexEntry<C, R> indexEntry = index.getEntry(matchedKey);
+								if (indexEntry != null)
+								{
+									indexEntries.add(indexEntry);
+								}
+							});
+					return indexEntries.stream();
+				};
+
+				Stream<MatchingTokenAndStatistics<C, R>> matches = this.match(	matchingFunction, toPostingScorer(options), analysisType, options.getExecutor(),
+																				options.getLimit());
+				return options.getLimit() < Integer.MAX_VALUE ? matches.limit(options.getLimit()) : matches;
+			}
+
+			@Override
+			public int count(List<C> codeSequence, MatchOptions<C, R> options)
+			{
+				List<IndexEntry<C, R>> indexEntries = this.getMatchingIndexEntries(codeSequence, options);
+				if (indexEntries.isEmpty())
+				{
+					return 0;
+				}
+				else if (indexEntries.size() == 1)
+				{
+					return indexEntries	.get(0)
+										.getDocumentFrequency();
+				}
+				else
+				{
+					BitSet referenceIds = new BitSet(CodeSequenceStatisticsCollectorMap.this.referenceDictionary.size());
+					for (IndexEntry<C, R> indexEntry : indexEntries)
+					{
+						indexEntry.addReferenceIdsTo(referenceIds);
+					}
+					return referenceIds.cardinality();
+				}
+			}
+
+			@Override
+			public boolean exists(List<C> codeSequence, MatchOptions<C, R> options)
+			{
+				SequenceKey<C> sequenceKey = new SequenceKey<>(codeSequence);
+				return CodeSequenceStatisticsCollectorMap.this.analyzerAndSequenceIndex	.getIndexesFor(options.getAnalysisType())
+																						.stream()
+																						.flatMap(index -> index.getEntries(sequenceKey))
+																						.anyMatch(indexEntry -> indexEntry != null && indexEntry.getCount() > 0);
+			}
+
+			/**
+			 * Returns the distinct non empty {@link IndexEntry}s of all indexes of the {@link AnalysisType} of the given {@link MatchOptions} which match the
+			 * given code sequence
+			 *
+			 * @param codeSequence
+			 * @param options
+			 * @return
+			 */
+			private List<IndexEntry<C, R>> getMatchingIndexEntries(List<C> codeSequence, MatchOptions<C, R> options)
+			{
+				return this	.getMatchingIndexEntries(codeSequence, options.getAnalysisType())
+							.keySet()
+							.stream()
+							.collect(Collectors.toList());
+			}
+
+			/**
+			 * Returns the distinct non empty {@link IndexEntry}s of all indexes of the given {@link AnalysisType} which match the given code sequence,
+			 * together with their {@link SequenceIndex}
+			 *
+			 * @param codeSequence
+			 * @param analysisType
+			 * @return
+			 */
+			private Map<IndexEntry<C, R>, SequenceIndex<C, R>> getMatchingIndexEntries(List<C> codeSequence, AnalysisType analysisType)
+			{
+				SequenceKey<C> sequenceKey = new SequenceKey<>(codeSequence);
+				Map<IndexEntry<C, R>, SequenceIndex<C, R>> indexEntryToIndex = new IdentityHashMap<>();
+				for (SequenceIndex<C, R> index : CodeSequenceStatisticsCollectorMap.this.analyzerAndSequenceIndex.getIndexesFor(analysisType))
+				{
+					index	.getEntries(sequenceKey)
+							.filter(indexEntry -> indexEntry != null && indexEntry.getCount() > 0)
+							.forEach(indexEntry -> indexEntryToIndex.put(indexEntry, index));
+				}
+				return indexEntryToIndex;
+			}
+
+			@Override
+			public List<ReferenceMatch<R>> matchBoolean(BooleanQuery<C> booleanQuery, MatchOptions<C, R> options)
+			{
+				List<ClauseEntries> mustClauses = new ArrayList<>();
+				List<ClauseEntries> shouldClauses = new ArrayList<>();
+				List<ClauseEntries> mustNotClauses = new ArrayList<>();
+				for (Clause<C> clause : booleanQuery.getClauses())
+				{
+					AnalysisType analysisType = clause.getAnalysisType() != null ? clause.getAnalysisType() : options.getAnalysisType();
+					ClauseEntries clauseEntries = new ClauseEntries(clause, this.getMatchingIndexEntries(clause.getCodeSequence(), analysisType));
+					if (clause.getOccur() == Occur.MUST)
+					{
+						mustClauses.add(clauseEntries);
+					}
+					else if (clause.getOccur() == Occur.SHOULD)
+					{
+						shouldClauses.add(clauseEntries);
+					}
+					else
+					{
+						mustNotClauses.add(clauseEntries);
+					}
+				}
+
+				int[] candidates;
+				if (!mustClauses.isEmpty())
+				{
+					//only the most selective clause is materialized, all other clauses are probed per candidate
+					mustClauses.sort((c1, c2) -> Integer.compare(c1.getEstimatedDocumentFrequency(), c2.getEstimatedDocumentFrequency()));
+					candidates = mustClauses.get(0)
+											.getReferenceIds();
+					for (int ii = 1; ii < mustClauses.size() && candidates.length > 0; ii++)
+					{
+						candidates = mustClauses.get(ii)
+												.retainContained(candidates, true);
+					}
+				}
+				else
+				{
+					candidates = ReferenceIdUtils.union(shouldClauses	.stream()
+																		.map(clauseEntries -> clauseEntries.getReferenceIds())
+																		.toArray(int[][]::new));
+				}
+				for (ClauseEntries clauseEntries : mustNotClauses)
+				{
+					if (candidates.length > 0)
+					{
+						candidates = clauseEntries.retainContained(candidates, false);
+					}
+				}
+
+				List<ClauseEntries> scoringClauses = new ArrayList<>(mustClauses);
+				scoringClauses.addAll(shouldClauses);
+				PrimitiveScoringFunction scoringFunction = options.getPrimitiveScoringFunction();
+
+				int capacity = candidates.length > 0 ? candidates[candidates.length - 1] + 1 : 0;
+				double[] scores = new double[capacity];
+				BitSet matchedReferenceIds = new BitSet(capacity);
+				for (int referenceId : candidates)
+				{
+					double score = 0.0;
+					for (ClauseEntries clauseEntries : scoringClauses)
+					{
+						if (scoringFunction != null)
+						{
+							score += clauseEntries.score(referenceId, scoringFunction);
+						}
+						else if (clauseEntries.contains(referenceId))
+						{
+							score += 1.0;
+						}
+					}
+					scores[referenceId] = score;
+					matchedReferenceIds.set(referenceId);
+				}
+
+				List<ReferenceMatch<R>> retlist = new ArrayList<>();
+				for (int referenceId : TopReferenceIds.select(matchedReferenceIds, scores, options.getLimit()))
+				{
+					R reference = CodeSequenceStatisticsCollectorMap.this.referenceDictionary.getReference(referenceId);
+					retlist.add(new ReferenceMatch<>(reference, scores[referenceId], Collections.emptyMap()));
+				}
+				return retlist;
+			}
+
+			@Override
+			public List<ReferenceMatch<R>> matchPhrase(List<List<C>> codeSequences, MatchOptions<C, R> options)
+			{
+				return this.matchPositional(codeSequences, options, positions ->
+				{
+					int[] phraseStartPositions = positions.get(0);
+					for (int ii = 1; ii < positions.size() && phraseStartPositions.length > 0; ii++)
+					{
+						int offset = ii;
+						int[] startPositions = Arrays	.stream(positions.get(ii))
+														.map(position -> position - offset)
+														.toArray();
+						phraseStartPositions = ReferenceIdUtils.intersect(phraseStartPositions, startPositions);
+					}
+					return phraseStartPositions.length;
+				});
+			}
+
+			@Override
+			public List<ReferenceMatch<R>> matchWithin(List<List<C>> codeSequences, int maxDistance, MatchOptions<C, R> options)
+			{
+				//repeated code sequences are matched once but require as many distinct positions as they are repeated
+				Map<List<C>, Integer> codeSequenceToMultiplicity = new LinkedHashMap<>();
+				for (List<C> codeSequence : codeSequences)
+				{
+					codeSequenceToMultiplicity.merge(codeSequence, 1, Integer::sum);
+				}
+				int[] multiplicities = codeSequenceToMultiplicity	.values()
+																	.stream()
+																	.mapToInt(Integer::intValue)
+																	.toArray();
+				return this.matchPositional(new ArrayList<>(codeSequenceToMultiplicity.keySet()), options, positions ->
+				{
+					int window = smallestWindow(positions, multiplicities);
+					int gaps = Math.max(0, window - (codeSequences.size() - 1));
+					return window <= maxDistance ? 1.0 / (1 + gaps) : 0.0;
+				});
+			}
+
+			/**
+			 * Matches the references which have positions for all given code sequences and scores them with the given function of the sorted word
+			 * positions per code sequence. References with a score of 0.0 or less are not matched.
+			 *
+			 * @param codeSequences
+			 * @param options
+			 * @param positionalScorer
+			 * @return
+			 */
+			private List<ReferenceMatch<R>> matchPositional(List<List<C>> codeSequences, MatchOptions<C, R> options,
+															ToDoubleFunction<List<int[]>> positionalScorer)
+			{
+				AnalysisType analysisType = options.getAnalysisType() != null ? options.getAnalysisType() : AnalysisTypeBasic.EXACT;
+				List<List<IndexEntry<C, R>>> indexEntriesOfCodeSequences = new ArrayList<>();
+				int[] candidates = null;
+				for (List<C> codeSequence : codeSequences)
+				{
+					List<IndexEntry<C, R>> indexEntries = new ArrayList<>(this	.getMatchingIndexEntries(codeSequence, analysisType)
+																				.keySet());
+					int[] referenceIds = ReferenceIdUtils.union(indexEntries.stream()
+																			.map(indexEntry -> indexEntry.getReferenceIds())
+																			.toArray(int[][]::new));
+					candidates = candidates == null ? referenceIds : ReferenceIdUtils.intersect(candidates, referenceIds);
+					indexEntriesOfCodeSequences.add(indexEntries);
+				}
+				if (candidates == null)
+				{
+					candidates = new int[0];
+				}
+
+				int capacity = candidates.length > 0 ? candidates[candidates.length - 1] + 1 : 0;
+				double[] scores = new double[capacity];
+				BitSet matchedReferenceIds = new BitSet(capacity);
+				for (int referenceId : candidates)
+				{
+					List<int[]> positions = new ArrayList<>();
+					for (List<IndexEntry<C, R>> indexEntries : indexEntriesOfCodeSequences)
+					{
+						int[][] positionsOfEntries = new int[indexEntries.size()][];
+						for (int ii = 0; ii < indexEntries.size(); ii++)
+						{
+							positionsOfEntries[ii] = indexEntries	.get(ii)
+																	.getWordPositions(referenceId);
+						}
+						positions.add(ReferenceIdUtils.union(positionsOfEntries));
+					}
+
+					double score = positionalScorer.applyAsDouble(positions);
+					if (score > 0.0)
+					{
+						scores[referenceId] = score;
+						matchedReferenceIds.set(referenceId);
+					}
+				}
+
+				List<ReferenceMatch<R>> retlist = new ArrayList<>();
+				for (int referenceId : TopReferenceIds.select(matchedReferenceIds, scores, options.getLimit()))
+				{
+					R reference = CodeSequenceStatisticsCollectorMap.this.referenceDictionary.getReference(referenceId);
+					retlist.add(new ReferenceMatch<>(reference, scores[referenceId], Collections.singletonMap(analysisType, scores[referenceId])));
+				}
+				return retlist;
+			}
+
+			@Override
+			public MatchPage<C, R> matchPage(List<C> codeSequence, String cursor, int pageSize, MatchOptions<C, R> options)
+			{
+				if (pageSize <= 0)
+				{
+					throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+				}
+				MatchCursor matchCursor = cursor != null ? MatchCursor.decode(cursor) : null;
+				SequenceKey<C> sequenceKey = new SequenceKey<>(codeSequence);
+				PostingScorer<C, R> postingScorer = toPostingScorer(options);
+
+				//one more than the page size is collected to know if there is a next page
+				int capacity = pageSize + 1;
+				PriorityQueue<RankedPosting<C, R>> worstFirst = new PriorityQueue<>((p1, p2) -> -1 * p1.compareRank(p2));
+				for (SequenceIndex<C, R> index : CodeSequenceStatisticsCollectorMap.this.analyzerAndSequenceIndex.getIndexesFor(options.getAnalysisType()))
+				{
+					Iterator<IndexEntry<C, R>> indexEntries = index	.getEntries(sequenceKey)
+																	.iterator();
+					while (indexEntries.hasNext())
+					{
+						IndexEntry<C, R> indexEntry = indexEntries.next();
+						if (indexEntry != null)
+						{
+							List<TokenAndReference<C, R>> tokenAndReferences = indexEntry.getTokenAndReferences();
+							synchronized (tokenAndReferences)
+							{
+								for (TokenAndReference<C, R> tokenAndReference : tokenAndReferences)
+								{
+									double score = postingScorer.score(index, indexEntry, tokenAndReference);
+									int referenceId = tokenAndReference.getReferenceId();
+									long sequence = tokenAndReference.getSequence();
+									if (matchCursor == null || matchCursor.isFollowedBy(score, referenceId, sequence))
+									{
+										RankedPosting<C, R> rankedPosting = new RankedPosting<>(score, tokenAndReference, index.getAnalysisType());
+										if (worstFirst.size() < capacity)
+										{
+											worstFirst.add(rankedPosting);
+										}
+										else if (rankedPosting.compareRank(worstFirst.peek()) < 0)
+										{
+											worstFirst.poll();
+											worstFirst.add(rankedPosting);
+										}
+									}
+								}
+							}
+						}
+					}
+				}
+
+				List<RankedPosting<C, R>> rankedPostings = new ArrayList<>(worstFirst);
+				rankedPostings.sort((p1, p2) -> p1.compareRank(p2));
+
+				boolean hasNextPage = rankedPostings.size() > pageSize;
+				List<MatchingTokenAndStatistics<C, R>> matches = new ArrayList<>();
+				for (RankedPosting<C, R> rankedPosting : rankedPostings.subList(0, Math.min(pageSize, rankedPostings.size())))
+				{
+					matches.add(rankedPosting.toMatch());
+				}
+				String nextCursor = hasNextPage ? rankedPostings	.get(pageSize - 1)
+																	.toCursor()
+																	.encode()
+						: null;
+				return new MatchPage<>(matches, nextCursor);
+			}
+
+			/**
+			 * Matched {@link IndexEntry}s of a single {@link Clause} of a {@link BooleanQuery}
+			 */
+			class ClauseEntries
+			{
+				private Clause<C>									clause;
+				private Map<IndexEntry<C, R>, SequenceIndex<C, R>>	indexEntryToIndex;
+
+				public ClauseEntries(Clause<C> clause, Map<IndexEntry<C, R>, SequenceIndex<C, R>> indexEntryToIndex)
+				{
+					super();
+					this.clause = clause;
+					this.indexEntryToIndex = indexEntryToIndex;
+				}
+
+				/**
+				 * Returns the sum of the document frequencies of all matched {@link IndexEntry}s, which is an upper bound of the number of references matching
+				 * the {@link Clause}
+				 *
+				 * @return
+				 */
+				public int getEstimatedDocumentFrequency()
+				{
+					int documentFrequency = 0;
+					for (IndexEntry<C, R> indexEntry : this.indexEntryToIndex.keySet())
+					{
+						documentFrequency += indexEntry.getDocumentFrequency();
+					}
+					return documentFrequency;
+				}
+
+				/**
+				 * Returns the sorted ids of all references matching the {@link Clause}.<br>
+				 * <br>
+				 * This materializes the union of the postings of all matched {@link IndexEntry}s, so prefer {@link #retainContained(int[], boolean)} if
+				 * candidates are already known.
+				 *
+				 * @return
+				 */
+				public int[] getReferenceIds()
+				{
+					if (this.indexEntryToIndex.size() == 1)
+					{
+						return this.indexEntryToIndex	.keySet()
+														.iterator()
+														.next()
+														.getReferenceIds();
+					}
+					return ReferenceIdUtils.union(this.indexEntryToIndex.keySet()
+																		.stream()
+																		.map(indexEntry -> indexEntry.getReferenceIds())
+																		.toArray(int[][]::new));
+				}
+
+				/**
+				 * Returns true if any matched {@link IndexEntry} has postings for the given reference id
+				 *
+				 * @param referenceId
+				 * @return
+				 */
+				public boolean contains(int referenceId)
+				{
+					for (IndexEntry<C, R> indexEntry : this.indexEntryToIndex.keySet())
+					{
+						if (indexEntry.getTermFrequency(referenceId) > 0)
+						{
+							return true;
+						}
+					}
+					return false;
+				}
+
+				/**
+				 * Returns the sorted candidate reference ids which are contained, or not contained, in the {@link Clause}. Each candidate is probed by a
+				 * binary search within the sorted postings of the matched {@link IndexEntry}s, so the cost is proportional to the number of candidates and
+				 * not to the size of the postings.
+				 *
+				 * @param candidates
+				 * @param contained
+				 * @return
+				 */
+				public int[] retainContained(int[] candidates, boolean contained)
+				{
+					int[] retval = new int[candidates.length];
+					int size = 0;
+					for (int referenceId : candidates)
+					{
+						if (this.contains(referenceId) == contained)
+						{
+							retval[size++] = referenceId;
+						}
+					}
+					return size == retval.length ? retval : Arrays.copyOf(retval, size);
+				}
+
+				public double score(int referenceId, PrimitiveScoringFunction scoringFunction)
+				{
+					double score = 0.0;
+					for (Map.Entry<IndexEntry<C, R>, SequenceIndex<C, R>> entry : this.indexEntryToIndex.entrySet())
+					{
+						IndexEntry<C, R> indexEntry = entry.getKey();
+						SequenceIndex<C, R> index = entry.getValue();
+						int termFrequency = indexEntry.getTermFrequency(referenceId);
+						if (termFrequency > 0)
+						{
+							score += scoringFunction.score(termFrequency, indexEntry.getDocumentFrequency(), index.getDocumentCount(),
+															index.getDocumentLength(referenceId), index.getAverageDocumentLength(), indexEntry.getKeyLength());
+						}
+					}
+					return score;
+				}
+
+				@Override
+				public String toString()
+				{
+					return this.clause.toString();
+				}
 			}
 
 			@Override
@@ -210,54 +1233,91 @@ public class CodeSequenceStatisticsCollectorMap<C, R> extends AbstractCodeSequen
 									.stream();
 					}
 				};
-				return this.match(matchingFunction, scoringFunction);
+				return this.match(matchingFunction, toPostingScorer(scoringFunction));
 			}
 
 			protected Stream<MatchingTokenAndStatistics<C, R>> match(	Function<SequenceIndex<C, R>, Stream<IndexEntry<C, R>>> matchingFunction,
-																		ScoringFunction<C, R> scoringFunction)
+																		PostingScorer<C, R> postingScorer)
 			{
 				AnalysisType analysisTypeFilter = null;
-				return this.match(matchingFunction, scoringFunction, analysisTypeFilter);
+				return this.match(matchingFunction, postingScorer, analysisTypeFilter);
 			}
 
 			protected Stream<MatchingTokenAndStatistics<C, R>> match(	Function<SequenceIndex<C, R>, Stream<IndexEntry<C, R>>> matchingFunction,
-																		ScoringFunction<C, R> scoringFunction, AnalysisType analysisTypeFilter)
+																		PostingScorer<C, R> postingScorer, AnalysisType analysisTypeFilter)
 			{
-				return CodeSequenceStatisticsCollectorMap.this.analyzerAndSequenceIndex	.getIndexesFor(analysisTypeFilter)
-																						.stream()
-																						.flatMap(index ->
-																						{
-																							int indexSize = index.getCount();
-																							AnalysisType analysisType = index.getAnalysisType();
-
-																							Stream<IndexEntry<C, R>> indexEntries = matchingFunction.apply(index);
-
-																							return indexEntries	.filter(entry -> entry != null)
-																												.flatMap(indexEntry ->
-																												{
-																													int matchCount = indexEntry.getCount();
-																													List<TokenAndReference<C, R>> tokenAndReferences = indexEntry.getTokenAndReferences();
-
-																													return tokenAndReferences	.stream()
-																																				.map(tokenAndReference ->
-																																				{
-																																					Token<C> token = tokenAndReference.getToken();
-
-																																					R reference = tokenAndReference.getReference();
-																																					double score = scoringFunction.score(new MatchTokenAndIndexStatistics<>(token,
-																																																							matchCount,
-																																																							indexSize,
-																																																							analysisType));
-																																					MatchingTokenAndStatistics<C, R> matchingTokenAndStatistics = new MatchingTokenAndStatistics<>(	token,
-																																																													reference,
-																																																													score,
-																																																													analysisType);
-																																					return matchingTokenAndStatistics;
-																																				});
-																												});
-
-																						})
-																						.sorted((m1, m2) -> -1 * Double.compare(m1.getScore(), m2.getScore()));
+				Executor executor = null;
+				int limit = Integer.MAX_VALUE;
+				return this.match(matchingFunction, postingScorer, analysisTypeFilter, executor, limit);
+			}
+
+			/**
+			 * Matches all {@link SequenceIndex}es of the given {@link AnalysisType}. If an {@link Executor} is given and more than one {@link SequenceIndex}
+			 * is matched, every {@link SequenceIndex} is probed and scored concurrently into a partial top list of the given limit and the partial lists are
+			 * merged afterwards.
+			 *
+			 * @param matchingFunction
+			 * @param postingScorer
+			 * @param analysisTypeFilter
+			 * @param executor
+			 *            optional
+			 * @param limit
+			 *            maximum number of matches the caller consumes
+			 * @return
+			 */
+			protected Stream<MatchingTokenAndStatistics<C, R>> match(	Function<SequenceIndex<C, R>, Stream<IndexEntry<C, R>>> matchingFunction,
+																		PostingScorer<C, R> postingScorer, AnalysisType analysisTypeFilter, Executor executor,
+																		int limit)
+			{
+				List<SequenceIndex<C, R>> indexes = CodeSequenceStatisticsCollectorMap.this.analyzerAndSequenceIndex.getIndexesFor(analysisTypeFilter);
+				if (executor == null || indexes.size() <= 1)
+				{
+					return indexes	.stream()
+									.flatMap(index -> this.match(index, matchingFunction, postingScorer))
+									.sorted(SCORE_DESCENDING);
+				}
+
+				List<CompletableFuture<List<MatchingTokenAndStatistics<C, R>>>> futures = indexes	.stream()
+																								.map(index -> CompletableFuture.supplyAsync(() -> this	.match(	index,
+																																								matchingFunction,
+																																								postingScorer)
+																																						.sorted(SCORE_DESCENDING)
+																																						.limit(limit)
+																																						.collect(Collectors.toList()),
+																																			executor))
+																								.collect(Collectors.toList());
+				List<List<MatchingTokenAndStatistics<C, R>>> partialMatches = futures	.stream()
+																					.map(future -> future.join())
+																					.collect(Collectors.toList());
+				return mergeByScore(partialMatches, limit).stream();
+			}
+
+			private Stream<MatchingTokenAndStatistics<C, R>> match(	SequenceIndex<C, R> index, Function<SequenceIndex<C, R>, Stream<IndexEntry<C, R>>> matchingFunction,
+																	PostingScorer<C, R> postingScorer)
+			{
+				AnalysisType analysisType = index.getAnalysisType();
+
+				Stream<IndexEntry<C, R>> indexEntries = matchingFunction.apply(index);
+
+				return indexEntries	.filter(entry -> entry != null)
+									.flatMap(indexEntry ->
+									{
+										List<TokenAndReference<C, R>> tokenAndReferences = indexEntry.getTokenAndReferences();
+
+										return tokenAndReferences	.stream()
+																	.map(tokenAndReference ->
+																	{
+																		Token<C> token = tokenAndReference.getToken();
+
+																		R reference = tokenAndReference.getReference();
+																		double score = postingScorer.score(index, indexEntry, tokenAndReference);
+																		MatchingTokenAndStatistics<C, R> matchingTokenAndStatistics = new MatchingTokenAndStatistics<>(	token,
+																																										reference,
+																																										score,
+																																										analysisType);
+																		return matchingTokenAndStatistics;
+																	});
+									});
 			}
 
 		};
@@ -276,4 +1336,24 @@ public class CodeSequenceStatisticsCollectorMap<C, R> extends AbstractCodeSequen
 		return this.analyzerAndSequenceIndex.hasAnalysisType(analysisType);
 	}
 
+	@Override
+	public CodeSequenceStatisticsCollectorModifiable<C, R> setQueryCacheSize(int maximumSize)
+	{
+		this.queryCache = maximumSize > 0 ? new QueryCache<>(maximumSize) : null;
+		return this;
+	}
+
+	@Override
+	public Optional<QueryCacheStatistics> getQueryCacheStatistics()
+	{
+		QueryCache<C, R> queryCache = this.queryCache;
+		return queryCache != null ? Optional.of(queryCache.getStatistics()) : Optional.empty();
+	}
+
+	@Override
+	public List<SequenceIndex<C, R>> getIndexes(AnalysisType analysisType)
+	{
+		return this.analyzerAndSequenceIndex.getIndexesFor(analysisType);
+	}
+
 }
@@ -18,7 +18,12 @@
 */
 package org.omnaest.search.classic.internal;
 
+import java.util.List;
+import java.util.Optional;
+
+import org.omnaest.search.classic.analyzer.AnalysisType;
 import org.omnaest.search.classic.analyzer.Analyzer;
+import org.omnaest.search.classic.internal.QueryCache.QueryCacheStatistics;
 import org.omnaest.search.classic.utils.StreamModifier.UnaryStreamModifier;
 
 /**
@@ -32,4 +37,28 @@ public interface CodeSequenceStatisticsCollectorModifiable<C, R> extends CodeSeq
 	CodeSequenceStatisticsCollectorModifiable<C, R> setCodeSequenceModifier(UnaryStreamModifier<CodeAndPosition<C>> codeSequenceModifier);
 
 	public CodeSequenceStatisticsCollectorModifiable<C, R> addAnalyzer(Analyzer<C> analyzer);
+
+	/**
+	 * Enables a {@link QueryCache} for the {@link Matcher} with the given maximum number of cached queries. A maximum size of zero or less disables the cache.
+	 *
+	 * @param maximumSize
+	 * @return
+	 */
+	public CodeSequenceStatisticsCollectorModifiable<C, R> setQueryCacheSize(int maximumSize);
+
+	/**
+	 * Returns the {@link QueryCacheStatistics} if a {@link QueryCache} is enabled
+	 *
+	 * @see #setQueryCacheSize(int)
+	 * @return
+	 */
+	public Optional<QueryCacheStatistics> getQueryCacheStatistics();
+
+	/**
+	 * Returns the {@link SequenceIndex}es of the given {@link AnalysisType}, or all {@link SequenceIndex}es if the {@link AnalysisType} is null
+	 *
+	 * @param analysisType
+	 * @return
+	 */
+	public List<SequenceIndex<C, R>> getIndexes(AnalysisType analysisType);
 }
@@ -0,0 +1,45 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+/**
+ * Automaton over codes which can be intersected with a {@link KeyTrie}. A state of null represents the dead state which can not reach any accepting state
+ * anymore.
+ *
+ * @see KeyTrie#intersect(KeyAutomaton, java.util.function.BiConsumer)
+ * @author Omnaest
+ * @param <C>
+ * @param <S>
+ *            type of the state
+ */
+public interface KeyAutomaton<C, S>
+{
+	public S getStartState();
+
+	/**
+	 * Returns the state reached from the given state by consuming the given code, or null if no accepting state can be reached anymore
+	 *
+	 * @param state
+	 * @param code
+	 * @return
+	 */
+	public S step(S state, C code);
+
+	public boolean isAccepting(S state);
+}
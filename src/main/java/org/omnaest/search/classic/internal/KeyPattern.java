@@ -0,0 +1,437 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * {@link KeyAutomaton} based on a nondeterministic finite automaton, which is used for wildcard and regular expression queries. The state is the set of
+ * active automaton states, so a {@link KeyTrie} traversal only visits the branches which can still lead to a match.<br>
+ * <br>
+ * Supported regular expression syntax:
+ * <ul>
+ * <li>. any single code</li>
+ * <li>[abc], [a-z], [^abc] character classes</li>
+ * <li>*, +, ? quantifiers</li>
+ * <li>| alternation and ( ) groups</li>
+ * <li>\ escapes the following character</li>
+ * </ul>
+ * Supported wildcard syntax is ? for any single code and * for any code sequence.
+ *
+ * @see #regex(String)
+ * @see #wildcard(String)
+ * @author Omnaest
+ * @param <C>
+ */
+public class KeyPattern<C> implements KeyAutomaton<C, BitSet>
+{
+	private List<List<Transition<C>>>	transitions			= new ArrayList<>();
+	private List<List<Integer>>			epsilonTransitions	= new ArrayList<>();
+	private int							startState;
+	private int							acceptingState;
+
+	private static class Transition<C>
+	{
+		private Predicate<C>	predicate;
+		private int				target;
+
+		public Transition(Predicate<C> predicate, int target)
+		{
+			super();
+			this.predicate = predicate;
+			this.target = target;
+		}
+	}
+
+	/**
+	 * Part of the automaton with a single start and a single end state
+	 */
+	private static class Fragment
+	{
+		private int	start;
+		private int	end;
+
+		public Fragment(int start, int end)
+		{
+			super();
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private KeyPattern()
+	{
+		super();
+	}
+
+	/**
+	 * Compiles the given regular expression to a {@link KeyPattern} which has to match a whole key
+	 *
+	 * @param regex
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the regular expression is malformed
+	 */
+	public static KeyPattern<Character> regex(String regex)
+	{
+		KeyPattern<Character> keyPattern = new KeyPattern<>();
+		Fragment fragment = new RegexParser(keyPattern, regex).parse();
+		keyPattern.startState = fragment.start;
+		keyPattern.acceptingState = fragment.end;
+		return keyPattern;
+	}
+
+	/**
+	 * Compiles the given wildcard expression, where ? matches any single code and * matches any code sequence, to a {@link KeyPattern} which has to
+	 * match a whole key
+	 *
+	 * @param wildcard
+	 * @return
+	 */
+	public static KeyPattern<Character> wildcard(String wildcard)
+	{
+		KeyPattern<Character> keyPattern = new KeyPattern<>();
+		Fragment fragment = keyPattern.emptyFragment();
+		for (char character : wildcard.toCharArray())
+		{
+			Fragment next;
+			if (character == '?')
+			{
+				next = keyPattern.codeFragment(code -> true);
+			}
+			else if (character == '*')
+			{
+				next = keyPattern.zeroOrMore(keyPattern.codeFragment(code -> true));
+			}
+			else
+			{
+				next = keyPattern.codeFragment(code -> code != null && code.charValue() == character);
+			}
+			fragment = keyPattern.concat(fragment, next);
+		}
+		keyPattern.startState = fragment.start;
+		keyPattern.acceptingState = fragment.end;
+		return keyPattern;
+	}
+
+	@Override
+	public BitSet getStartState()
+	{
+		BitSet states = new BitSet();
+		states.set(this.startState);
+		return this.closure(states);
+	}
+
+	@Override
+	public BitSet step(BitSet state, C code)
+	{
+		BitSet states = new BitSet();
+		for (int source = state.nextSetBit(0); source >= 0; source = state.nextSetBit(source + 1))
+		{
+			for (Transition<C> transition : this.transitions.get(source))
+			{
+				if (transition.predicate.test(code))
+				{
+					states.set(transition.target);
+				}
+			}
+		}
+		return states.isEmpty() ? null : this.closure(states);
+	}
+
+	@Override
+	public boolean isAccepting(BitSet state)
+	{
+		return state.get(this.acceptingState);
+	}
+
+	private BitSet closure(BitSet states)
+	{
+		List<Integer> stack = new ArrayList<>();
+		for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1))
+		{
+			stack.add(state);
+		}
+		while (!stack.isEmpty())
+		{
+			int state = stack.remove(stack.size() - 1);
+			for (int target : this.epsilonTransitions.get(state))
+			{
+				if (!states.get(target))
+				{
+					states.set(target);
+					stack.add(target);
+				}
+			}
+		}
+		return states;
+	}
+
+	private int newState()
+	{
+		this.transitions.add(new ArrayList<>());
+		this.epsilonTransitions.add(new ArrayList<>());
+		return this.transitions.size() - 1;
+	}
+
+	private Fragment emptyFragment()
+	{
+		int state = this.newState();
+		return new Fragment(state, state);
+	}
+
+	private Fragment codeFragment(Predicate<C> predicate)
+	{
+		int start = this.newState();
+		int end = this.newState();
+		this.transitions	.get(start)
+							.add(new Transition<>(predicate, end));
+		return new Fragment(start, end);
+	}
+
+	private Fragment concat(Fragment first, Fragment second)
+	{
+		this.epsilonTransitions	.get(first.end)
+								.add(second.start);
+		return new Fragment(first.start, second.end);
+	}
+
+	private Fragment alternate(Fragment first, Fragment second)
+	{
+		int start = this.newState();
+		int end = this.newState();
+		this.epsilonTransitions	.get(start)
+								.add(first.start);
+		this.epsilonTransitions	.get(start)
+								.add(second.start);
+		this.epsilonTransitions	.get(first.end)
+								.add(end);
+		this.epsilonTransitions	.get(second.end)
+								.add(end);
+		return new Fragment(start, end);
+	}
+
+	private Fragment zeroOrMore(Fragment fragment)
+	{
+		int state = this.newState();
+		this.epsilonTransitions	.get(state)
+								.add(fragment.start);
+		this.epsilonTransitions	.get(fragment.end)
+								.add(state);
+		return new Fragment(state, state);
+	}
+
+	private Fragment oneOrMore(Fragment fragment)
+	{
+		int end = this.newState();
+		this.epsilonTransitions	.get(fragment.end)
+								.add(fragment.start);
+		this.epsilonTransitions	.get(fragment.end)
+								.add(end);
+		return new Fragment(fragment.start, end);
+	}
+
+	private Fragment optional(Fragment fragment)
+	{
+		int start = this.newState();
+		this.epsilonTransitions	.get(start)
+								.add(fragment.start);
+		this.epsilonTransitions	.get(start)
+								.add(fragment.end);
+		return new Fragment(start, fragment.end);
+	}
+
+	/**
+	 * Recursive descent parser building the automaton of a regular expression
+	 *
+	 * @author Omnaest
+	 */
+	private static class RegexParser
+	{
+		private KeyPattern<Character>	keyPattern;
+		private String					regex;
+		private int						position	= 0;
+
+		public RegexParser(KeyPattern<Character> keyPattern, String regex)
+		{
+			super();
+			this.keyPattern = keyPattern;
+			this.regex = regex;
+		}
+
+		public Fragment parse()
+		{
+			Fragment fragment = this.parseAlternation();
+			if (this.hasNext())
+			{
+				throw this.newError("Unexpected character '" + this.peek() + "'");
+			}
+			return fragment;
+		}
+
+		private Fragment parseAlternation()
+		{
+			Fragment fragment = this.parseConcatenation();
+			while (this.hasNext() && this.peek() == '|')
+			{
+				this.position++;
+				fragment = this.keyPattern.alternate(fragment, this.parseConcatenation());
+			}
+			return fragment;
+		}
+
+		private Fragment parseConcatenation()
+		{
+			Fragment fragment = this.keyPattern.emptyFragment();
+			while (this.hasNext() && this.peek() != '|' && this.peek() != ')')
+			{
+				fragment = this.keyPattern.concat(fragment, this.parseRepetition());
+			}
+			return fragment;
+		}
+
+		private Fragment parseRepetition()
+		{
+			Fragment fragment = this.parseAtom();
+			while (this.hasNext() && (this.peek() == '*' || this.peek() == '+' || this.peek() == '?'))
+			{
+				char quantifier = this.regex.charAt(this.position++);
+				if (quantifier == '*')
+				{
+					fragment = this.keyPattern.zeroOrMore(fragment);
+				}
+				else if (quantifier == '+')
+				{
+					fragment = this.keyPattern.oneOrMore(fragment);
+				}
+				else
+				{
+					fragment = this.keyPattern.optional(fragment);
+				}
+			}
+			return fragment;
+		}
+
+		private Fragment parseAtom()
+		{
+			char character = this.regex.charAt(this.position++);
+			if (character == '(')
+			{
+				Fragment fragment = this.parseAlternation();
+				this.expect(')');
+				return fragment;
+			}
+			else if (character == '[')
+			{
+				return this.keyPattern.codeFragment(this.parseCharacterClass());
+			}
+			else if (character == '.')
+			{
+				return this.keyPattern.codeFragment(code -> true);
+			}
+			else if (character == '*' || character == '+' || character == '?')
+			{
+				throw this.newError("Dangling quantifier '" + character + "'");
+			}
+			else
+			{
+				char literal = character == '\\' ? this.nextEscaped() : character;
+				return this.keyPattern.codeFragment(code -> code != null && code.charValue() == literal);
+			}
+		}
+
+		private Predicate<Character> parseCharacterClass()
+		{
+			boolean negated = this.hasNext() && this.peek() == '^';
+			if (negated)
+			{
+				this.position++;
+			}
+
+			List<char[]> ranges = new ArrayList<>();
+			while (this.hasNext() && this.peek() != ']')
+			{
+				char from = this.nextClassCharacter();
+				char to = from;
+				if (this.position + 1 < this.regex.length() && this.peek() == '-' && this.regex.charAt(this.position + 1) != ']')
+				{
+					this.position++;
+					to = this.nextClassCharacter();
+				}
+				ranges.add(new char[] { from, to });
+			}
+			this.expect(']');
+
+			return code ->
+			{
+				boolean matches = false;
+				if (code != null)
+				{
+					for (char[] range : ranges)
+					{
+						matches |= code.charValue() >= range[0] && code.charValue() <= range[1];
+					}
+				}
+				return code != null && matches != negated;
+			};
+		}
+
+		private char nextClassCharacter()
+		{
+			char character = this.regex.charAt(this.position++);
+			return character == '\\' ? this.nextEscaped() : character;
+		}
+
+		private char nextEscaped()
+		{
+			if (!this.hasNext())
+			{
+				throw this.newError("Incomplete escape sequence");
+			}
+			return this.regex.charAt(this.position++);
+		}
+
+		private void expect(char character)
+		{
+			if (!this.hasNext() || this.peek() != character)
+			{
+				throw this.newError("Missing '" + character + "'");
+			}
+			this.position++;
+		}
+
+		private boolean hasNext()
+		{
+			return this.position < this.regex.length();
+		}
+
+		private char peek()
+		{
+			return this.regex.charAt(this.position);
+		}
+
+		private IllegalArgumentException newError(String message)
+		{
+			return new IllegalArgumentException(message + " at position " + this.position + " of regular expression: " + this.regex);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Trie of {@link SequenceKey}s which allows to intersect the key dictionary of a {@link SequenceIndex} with a {@link KeyAutomaton} without visiting
+ * branches the automaton can not accept.<br>
+ * <br>
+ * Adding keys is thread safe and readers can traverse the trie concurrently.
+ *
+ * @author Omnaest
+ * @param <C>
+ */
+public class KeyTrie<C>
+{
+	private static final Object NULL_CODE = new Object();
+
+	private Node<C> root = new Node<>();
+
+	private static class Node<C>
+	{
+		private Map<Object, Node<C>>	children	= new ConcurrentHashMap<>();
+		private volatile SequenceKey<C>	sequenceKey	= null;
+	}
+
+	public KeyTrie<C> add(SequenceKey<C> sequenceKey)
+	{
+		Node<C> node = this.root;
+		for (C code : sequenceKey.asList())
+		{
+			node = node.children.computeIfAbsent(this.wrap(code), key -> new Node<>());
+		}
+		node.sequenceKey = sequenceKey;
+		return this;
+	}
+
+	/**
+	 * Traverses all {@link SequenceKey}s accepted by the given {@link KeyAutomaton} and passes them together with the final accepting state to the given
+	 * consumer
+	 *
+	 * @param automaton
+	 * @param consumer
+	 */
+	public <S> void intersect(KeyAutomaton<C, S> automaton, BiConsumer<SequenceKey<C>, S> consumer)
+	{
+		S startState = automaton.getStartState();
+		if (startState != null)
+		{
+			this.intersect(this.root, startState, automaton, consumer);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <S> void intersect(Node<C> node, S state, KeyAutomaton<C, S> automaton, BiConsumer<SequenceKey<C>, S> consumer)
+	{
+		SequenceKey<C> sequenceKey = node.sequenceKey;
+		if (sequenceKey != null && automaton.isAccepting(state))
+		{
+			consumer.accept(sequenceKey, state);
+		}
+
+		for (Map.Entry<Object, Node<C>> entry : node.children.entrySet())
+		{
+			Object code = entry.getKey();
+			S nextState = automaton.step(state, code == NULL_CODE ? null : (C) code);
+			if (nextState != null)
+			{
+				this.intersect(entry.getValue(), nextState, automaton, consumer);
+			}
+		}
+	}
+
+	private Object wrap(C code)
+	{
+		return code != null ? code : NULL_CODE;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@link KeyAutomaton} accepting all code sequences within a maximum Levenshtein distance to a given code sequence.<br>
+ * <br>
+ * The state is the current row of the edit distance matrix, so stepping costs O(n) for a query of length n. States whose row minimum exceeds the maximum
+ * distance are dead, which prunes the traversal of a {@link KeyTrie} early.
+ *
+ * @author Omnaest
+ * @param <C>
+ */
+public class LevenshteinAutomaton<C> implements KeyAutomaton<C, int[]>
+{
+	private List<C>	codeSequence;
+	private int		maxDistance;
+
+	public LevenshteinAutomaton(List<C> codeSequence, int maxDistance)
+	{
+		super();
+		if (maxDistance < 0)
+		{
+			throw new IllegalArgumentException("Maximum distance must not be negative: " + maxDistance);
+		}
+		this.codeSequence = new ArrayList<>(codeSequence);
+		this.maxDistance = maxDistance;
+	}
+
+	@Override
+	public int[] getStartState()
+	{
+		int[] row = new int[this.codeSequence.size() + 1];
+		for (int ii = 0; ii < row.length; ii++)
+		{
+			row[ii] = ii;
+		}
+		return row;
+	}
+
+	@Override
+	public int[] step(int[] state, C code)
+	{
+		int[] row = new int[state.length];
+		row[0] = state[0] + 1;
+		int minimum = row[0];
+		for (int ii = 1; ii < row.length; ii++)
+		{
+			int substitution = state[ii - 1] + (Objects.equals(this.codeSequence.get(ii - 1), code) ? 0 : 1);
+			row[ii] = Math.min(substitution, Math.min(row[ii - 1], state[ii]) + 1);
+			minimum = Math.min(minimum, row[ii]);
+		}
+		return minimum <= this.maxDistance ? row : null;
+	}
+
+	@Override
+	public boolean isAccepting(int[] state)
+	{
+		return this.getDistance(state) <= this.maxDistance;
+	}
+
+	/**
+	 * Returns the Levenshtein distance between the query code sequence and the code sequence which led to the given state
+	 *
+	 * @param state
+	 * @return
+	 */
+	public int getDistance(int[] state)
+	{
+		return state[state.length - 1];
+	}
+
+	public int getMaxDistance()
+	{
+		return this.maxDistance;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Position within the ranked postings of a query. Postings are totally ordered by descending score, ascending reference id and ascending posting
+ * sequence, so a {@link MatchCursor} identifies exactly where the next page of results starts.<br>
+ * <br>
+ * {@link MatchCursor}s are exchanged with clients as opaque {@link String}s.
+ *
+ * @see #encode()
+ * @see #decode(String)
+ * @author Omnaest
+ */
+public class MatchCursor
+{
+	private static final int ENCODED_LENGTH = Double.BYTES + Integer.BYTES + Long.BYTES;
+
+	private double	score;
+	private int		referenceId;
+	private long	sequence;
+
+	public MatchCursor(double score, int referenceId, long sequence)
+	{
+		super();
+		this.score = score;
+		this.referenceId = referenceId;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Compares two postings by their rank
+	 *
+	 * @return a negative value if the first posting ranks before the second posting, a positive value if it ranks after the second posting
+	 */
+	public static int compareRank(double score1, int referenceId1, long sequence1, double score2, int referenceId2, long sequence2)
+	{
+		int result = -1 * Double.compare(score1, score2);
+		if (result == 0)
+		{
+			result = Integer.compare(referenceId1, referenceId2);
+		}
+		if (result == 0)
+		{
+			result = Long.compare(sequence1, sequence2);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if the posting with the given score, reference id and sequence ranks after this {@link MatchCursor}
+	 *
+	 * @param score
+	 * @param referenceId
+	 * @param sequence
+	 * @return
+	 */
+	public boolean isFollowedBy(double score, int referenceId, long sequence)
+	{
+		return compareRank(this.score, this.referenceId, this.sequence, score, referenceId, sequence) < 0;
+	}
+
+	/**
+	 * Returns the opaque {@link String} representation of this {@link MatchCursor}
+	 *
+	 * @return
+	 */
+	public String encode()
+	{
+		ByteBuffer byteBuffer = ByteBuffer.allocate(ENCODED_LENGTH);
+		byteBuffer.putDouble(this.score);
+		byteBuffer.putInt(this.referenceId);
+		byteBuffer.putLong(this.sequence);
+		return Base64	.getUrlEncoder()
+						.withoutPadding()
+						.encodeToString(byteBuffer.array());
+	}
+
+	/**
+	 * Parses a {@link MatchCursor} from the given {@link String} returned by {@link #encode()}
+	 *
+	 * @param cursor
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the given {@link String} is no valid cursor
+	 */
+	public static MatchCursor decode(String cursor)
+	{
+		byte[] bytes = Base64	.getUrlDecoder()
+								.decode(cursor);
+		if (bytes.length != ENCODED_LENGTH)
+		{
+			throw new IllegalArgumentException("Invalid cursor: " + cursor);
+		}
+		ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+		return new MatchCursor(byteBuffer.getDouble(), byteBuffer.getInt(), byteBuffer.getLong());
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.encode();
+	}
+
+}
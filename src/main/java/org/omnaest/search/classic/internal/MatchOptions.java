@@ -0,0 +1,242 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.omnaest.search.classic.analyzer.AnalysisType;
+import org.omnaest.search.classic.analyzer.Analyzer;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchResult;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.PrimitiveScoringFunction;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.ScoringFunction;
+
+/**
+ * Options of a query against a {@link CodeSequenceStatisticsCollector.Matcher}
+ *
+ * @see #NONE()
+ * @author Omnaest
+ * @param <C>
+ * @param <R>
+ */
+public class MatchOptions<C, R>
+{
+	@SuppressWarnings("rawtypes")
+	private static final ScoringFunction UNIFORM_SCORING_FUNCTION = (stats) -> 1.0;
+
+	private ScoringFunction<C, R>		scoringFunction;
+	private PrimitiveScoringFunction	primitiveScoringFunction;
+	private AnalysisType				analysisType;
+	private int							limit					= Integer.MAX_VALUE;
+	private Executor					executor;
+	private long						timeoutNanos			= Long.MAX_VALUE;
+	private long						postingBudget			= Long.MAX_VALUE;
+	private CancellationToken			cancellationToken;
+
+	@SuppressWarnings("unchecked")
+	public MatchOptions()
+	{
+		super();
+		this.scoringFunction = UNIFORM_SCORING_FUNCTION;
+	}
+
+	public MatchOptions(MatchOptions<C, R> options)
+	{
+		super();
+		this.scoringFunction = options.scoringFunction;
+		this.primitiveScoringFunction = options.primitiveScoringFunction;
+		this.analysisType = options.analysisType;
+		this.limit = options.limit;
+		this.executor = options.executor;
+		this.timeoutNanos = options.timeoutNanos;
+		this.postingBudget = options.postingBudget;
+		this.cancellationToken = options.cancellationToken;
+	}
+
+	public ScoringFunction<C, R> getScoringFunction()
+	{
+		return this.scoringFunction;
+	}
+
+	/**
+	 * Sets the {@link ScoringFunction} and removes any {@link PrimitiveScoringFunction}
+	 *
+	 * @param scoringFunction
+	 * @return
+	 */
+	public MatchOptions<C, R> setScoringFunction(ScoringFunction<C, R> scoringFunction)
+	{
+		this.scoringFunction = scoringFunction;
+		this.primitiveScoringFunction = null;
+		return this;
+	}
+
+	public PrimitiveScoringFunction getPrimitiveScoringFunction()
+	{
+		return this.primitiveScoringFunction;
+	}
+
+	public boolean hasPrimitiveScoringFunction()
+	{
+		return this.primitiveScoringFunction != null;
+	}
+
+	/**
+	 * Sets a {@link PrimitiveScoringFunction} which takes precedence over the {@link ScoringFunction}
+	 *
+	 * @param primitiveScoringFunction
+	 * @return
+	 */
+	public MatchOptions<C, R> setPrimitiveScoringFunction(PrimitiveScoringFunction primitiveScoringFunction)
+	{
+		this.primitiveScoringFunction = primitiveScoringFunction;
+		return this;
+	}
+
+	/**
+	 * Returns the effective scoring function instance, which is the {@link PrimitiveScoringFunction} if present, otherwise the {@link ScoringFunction}
+	 *
+	 * @return
+	 */
+	public Object getEffectiveScoringFunction()
+	{
+		return this.hasPrimitiveScoringFunction() ? this.primitiveScoringFunction : this.scoringFunction;
+	}
+
+	/**
+	 * Returns the {@link AnalysisType} filter, null means all {@link AnalysisType}s are matched
+	 *
+	 * @return
+	 */
+	public AnalysisType getAnalysisType()
+	{
+		return this.analysisType;
+	}
+
+	public MatchOptions<C, R> setAnalysisType(AnalysisType analysisType)
+	{
+		this.analysisType = analysisType;
+		return this;
+	}
+
+	public int getLimit()
+	{
+		return this.limit;
+	}
+
+	/**
+	 * Sets the maximum number of returned results
+	 *
+	 * @param limit
+	 * @return
+	 */
+	public MatchOptions<C, R> setLimit(int limit)
+	{
+		this.limit = limit;
+		return this;
+	}
+
+	public Executor getExecutor()
+	{
+		return this.executor;
+	}
+
+	/**
+	 * Sets an {@link Executor} which is used to probe and score the matched indexes of the different {@link Analyzer}s concurrently. The
+	 * {@link Executor} should be bounded, since every query submits one task per matched index. If no {@link Executor} is set, which is the default, the
+	 * indexes are matched sequentially within the calling thread.
+	 *
+	 * @param executor
+	 * @return
+	 */
+	public MatchOptions<C, R> setExecutor(Executor executor)
+	{
+		this.executor = executor;
+		return this;
+	}
+
+	public long getTimeoutNanos()
+	{
+		return this.timeoutNanos;
+	}
+
+	/**
+	 * Sets the maximum duration of a query, which starts when the query is executed. If the timeout elapses the query stops traversing postings and
+	 * returns the best results found so far flagged as truncated.
+	 *
+	 * @see MatchResult#isTruncated()
+	 * @param timeout
+	 * @param timeUnit
+	 * @return
+	 */
+	public MatchOptions<C, R> setTimeout(long timeout, TimeUnit timeUnit)
+	{
+		this.timeoutNanos = timeUnit.toNanos(timeout);
+		return this;
+	}
+
+	public long getPostingBudget()
+	{
+		return this.postingBudget;
+	}
+
+	/**
+	 * Sets the maximum number of postings a query traverses before it returns the best results found so far flagged as truncated
+	 *
+	 * @see MatchResult#isTruncated()
+	 * @param postingBudget
+	 * @return
+	 */
+	public MatchOptions<C, R> setPostingBudget(long postingBudget)
+	{
+		this.postingBudget = postingBudget;
+		return this;
+	}
+
+	public CancellationToken getCancellationToken()
+	{
+		return this.cancellationToken;
+	}
+
+	public MatchOptions<C, R> setCancellationToken(CancellationToken cancellationToken)
+	{
+		this.cancellationToken = cancellationToken;
+		return this;
+	}
+
+	/**
+	 * Returns true if any timeout, posting budget or {@link CancellationToken} bounds the query
+	 *
+	 * @return
+	 */
+	public boolean isBounded()
+	{
+		return this.timeoutNanos < Long.MAX_VALUE || this.postingBudget < Long.MAX_VALUE || this.cancellationToken != null;
+	}
+
+	/**
+	 * Returns the default {@link MatchOptions} which score every match with 1.0 and match all {@link AnalysisType}s
+	 *
+	 * @return
+	 */
+	public static <C, R> MatchOptions<C, R> NONE()
+	{
+		return new MatchOptions<>();
+	}
+}
@@ -0,0 +1,352 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.omnaest.search.classic.internal.SequenceIndex.IndexEntry;
+import org.omnaest.search.classic.internal.SequenceIndex.TokenAndReference;
+
+/**
+ * Approximate similarity join of the references of two sets of {@link SequenceIndex}es.<br>
+ * <br>
+ * Every reference is represented by the set of the {@link SequenceKey}s it has postings for, e.g. its n-grams. For each set a MinHash signature of
+ * bands times rows hash values is computed and the signatures of the left references are bucketed by each band (locality sensitive hashing). A right
+ * reference becomes a candidate of every left reference it shares at least one band bucket with, and every candidate pair is verified by the exact
+ * Jaccard similarity of their key sets. The cost is therefore roughly linear in the number of postings plus the number of candidates, instead of
+ * quadratic in the number of references.<br>
+ * <br>
+ * A pair with a Jaccard similarity of s becomes a candidate with a probability of 1-(1-s^rows)^bands, so more bands find more similar pairs at the cost
+ * of more candidates, while more rows suppress dissimilar candidates.
+ *
+ * @author Omnaest
+ * @param <C>
+ * @param <R>
+ */
+public class MinHashSimilarityJoin<C, R>
+{
+	public static final int		DEFAULT_BANDS	= 20;
+	public static final int		DEFAULT_ROWS	= 5;
+	public static final long	DEFAULT_SEED	= 0x5DEECE66DL;
+
+	private int		bands;
+	private int		rows;
+	private long[]	hashMultipliers;
+	private long[]	hashOffsets;
+
+	/**
+	 * Pair of a left and a right reference with the Jaccard similarity of their key sets
+	 *
+	 * @author Omnaest
+	 * @param <R>
+	 */
+	public static class SimilarityMatch<R>
+	{
+		private R		leftReference;
+		private R		rightReference;
+		private double	similarity;
+
+		public SimilarityMatch(R leftReference, R rightReference, double similarity)
+		{
+			super();
+			this.leftReference = leftReference;
+			this.rightReference = rightReference;
+			this.similarity = similarity;
+		}
+
+		public R getLeftReference()
+		{
+			return this.leftReference;
+		}
+
+		public R getRightReference()
+		{
+			return this.rightReference;
+		}
+
+		/**
+		 * Returns the exact Jaccard similarity of the key sets of both references
+		 *
+		 * @return
+		 */
+		public double getSimilarity()
+		{
+			return this.similarity;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "SimilarityMatch [leftReference=" + this.leftReference + ", rightReference=" + this.rightReference + ", similarity=" + this.similarity
+					+ "]";
+		}
+
+	}
+
+	/**
+	 * Reference together with its sorted distinct key ids and its MinHash signature
+	 *
+	 * @author Omnaest
+	 * @param <R>
+	 */
+	protected static class ReferenceKeys<R>
+	{
+		private R		reference;
+		private int[]	keyIds		= new int[4];
+		private int		size		= 0;
+		private int[]	signature	= null;
+
+		public ReferenceKeys(R reference)
+		{
+			super();
+			this.reference = reference;
+		}
+
+		public void addKeyId(int keyId)
+		{
+			if (this.size >= this.keyIds.length)
+			{
+				this.keyIds = Arrays.copyOf(this.keyIds, this.keyIds.length * 2);
+			}
+			this.keyIds[this.size++] = keyId;
+		}
+
+		/**
+		 * Sorts and deduplicates the added key ids
+		 */
+		public void seal()
+		{
+			Arrays.sort(this.keyIds, 0, this.size);
+			int distinct = 0;
+			for (int ii = 0; ii < this.size; ii++)
+			{
+				if (distinct == 0 || this.keyIds[distinct - 1] != this.keyIds[ii])
+				{
+					this.keyIds[distinct++] = this.keyIds[ii];
+				}
+			}
+			this.keyIds = Arrays.copyOf(this.keyIds, distinct);
+			this.size = distinct;
+		}
+
+		public R getReference()
+		{
+			return this.reference;
+		}
+
+		public int[] getKeyIds()
+		{
+			return this.keyIds;
+		}
+
+		public int[] getSignature()
+		{
+			return this.signature;
+		}
+
+		public void setSignature(int[] signature)
+		{
+			this.signature = signature;
+		}
+	}
+
+	public MinHashSimilarityJoin()
+	{
+		this(DEFAULT_BANDS, DEFAULT_ROWS, DEFAULT_SEED);
+	}
+
+	/**
+	 * @param bands
+	 *            number of locality sensitive hashing bands
+	 * @param rows
+	 *            number of MinHash values per band
+	 * @param seed
+	 *            seed of the MinHash functions
+	 * @throws IllegalArgumentException
+	 *             if bands or rows are less than one
+	 */
+	public MinHashSimilarityJoin(int bands, int rows, long seed)
+	{
+		super();
+		if (bands < 1 || rows < 1)
+		{
+			throw new IllegalArgumentException("Bands and rows must be at least one: bands=" + bands + ", rows=" + rows);
+		}
+		this.bands = bands;
+		this.rows = rows;
+
+		Random random = new Random(seed);
+		int numberOfHashes = bands * rows;
+		this.hashMultipliers = new long[numberOfHashes];
+		this.hashOffsets = new long[numberOfHashes];
+		for (int ii = 0; ii < numberOfHashes; ii++)
+		{
+			this.hashMultipliers[ii] = random.nextLong() | 1L;
+			this.hashOffsets[ii] = random.nextLong();
+		}
+	}
+
+	/**
+	 * Streams all pairs of a left and a right reference whose key sets have a Jaccard similarity of at least the given minimum similarity. Since the
+	 * candidates are found by locality sensitive hashing, pairs with a similarity close to the minimum similarity can be missed.
+	 *
+	 * @param leftIndexes
+	 * @param rightIndexes
+	 * @param minSimilarity
+	 * @return
+	 */
+	public Stream<SimilarityMatch<R>> join(List<SequenceIndex<C, R>> leftIndexes, List<SequenceIndex<C, R>> rightIndexes, double minSimilarity)
+	{
+		Map<SequenceKey<C>, Integer> keyDictionary = new HashMap<>();
+		List<ReferenceKeys<R>> leftReferences = this.collectReferenceKeys(leftIndexes, keyDictionary);
+		List<ReferenceKeys<R>> rightReferences = this.collectReferenceKeys(rightIndexes, keyDictionary);
+
+		List<Map<Long, List<ReferenceKeys<R>>>> bandBuckets = new ArrayList<>(this.bands);
+		for (int band = 0; band < this.bands; band++)
+		{
+			bandBuckets.add(new HashMap<>());
+		}
+		for (ReferenceKeys<R> leftReference : leftReferences)
+		{
+			for (int band = 0; band < this.bands; band++)
+			{
+				bandBuckets	.get(band)
+							.computeIfAbsent(this.determineBandHash(leftReference.getSignature(), band), key -> new ArrayList<>())
+							.add(leftReference);
+			}
+		}
+
+		return rightReferences	.stream()
+								.flatMap(rightReference ->
+								{
+									Set<ReferenceKeys<R>> candidates = new LinkedHashSet<>();
+									for (int band = 0; band < this.bands; band++)
+									{
+										List<ReferenceKeys<R>> bucket = bandBuckets	.get(band)
+																					.get(this.determineBandHash(rightReference.getSignature(), band));
+										if (bucket != null)
+										{
+											candidates.addAll(bucket);
+										}
+									}
+									return candidates	.stream()
+														.map(leftReference -> new SimilarityMatch<>(leftReference.getReference(), rightReference.getReference(),
+																									jaccard(leftReference.getKeyIds(),
+																											rightReference.getKeyIds())))
+														.filter(match -> match.getSimilarity() >= minSimilarity);
+								});
+	}
+
+	/**
+	 * Collects the distinct key ids of every reference with postings within the given {@link SequenceIndex}es and computes their MinHash signatures. Keys
+	 * which are not yet part of the given key dictionary are added to it.
+	 *
+	 * @param indexes
+	 * @param keyDictionary
+	 * @return
+	 */
+	protected List<ReferenceKeys<R>> collectReferenceKeys(List<SequenceIndex<C, R>> indexes, Map<SequenceKey<C>, Integer> keyDictionary)
+	{
+		Map<Integer, ReferenceKeys<R>> referenceIdToKeys = new LinkedHashMap<>();
+		for (SequenceIndex<C, R> index : indexes)
+		{
+			index	.getKeysAndEntries()
+					.forEach(keyAndEntry ->
+					{
+						int keyId = keyDictionary.computeIfAbsent(keyAndEntry.getKey(), key -> keyDictionary.size());
+						IndexEntry<C, R> indexEntry = keyAndEntry.getValue();
+						List<TokenAndReference<C, R>> tokenAndReferences = indexEntry.getTokenAndReferences();
+						synchronized (tokenAndReferences)
+						{
+							for (TokenAndReference<C, R> tokenAndReference : tokenAndReferences)
+							{
+								referenceIdToKeys	.computeIfAbsent(tokenAndReference.getReferenceId(),
+																	referenceId -> new ReferenceKeys<>(tokenAndReference.getReference()))
+													.addKeyId(keyId);
+							}
+						}
+					});
+		}
+
+		List<ReferenceKeys<R>> retlist = new ArrayList<>(referenceIdToKeys.values());
+		for (ReferenceKeys<R> referenceKeys : retlist)
+		{
+			referenceKeys.seal();
+			referenceKeys.setSignature(this.determineSignature(referenceKeys.getKeyIds()));
+		}
+		return retlist;
+	}
+
+	/**
+	 * Returns the MinHash signature of the given key ids, which holds the minimum of every hash function over all key ids
+	 *
+	 * @param keyIds
+	 * @return
+	 */
+	protected int[] determineSignature(int[] keyIds)
+	{
+		int[] retval = new int[this.hashMultipliers.length];
+		Arrays.fill(retval, Integer.MAX_VALUE);
+		for (int keyId : keyIds)
+		{
+			for (int ii = 0; ii < retval.length; ii++)
+			{
+				long hash = keyId * this.hashMultipliers[ii] + this.hashOffsets[ii];
+				hash ^= hash >>> 33;
+				hash *= 0xff51afd7ed558ccdL;
+				hash ^= hash >>> 33;
+				retval[ii] = Math.min(retval[ii], (int) hash & Integer.MAX_VALUE);
+			}
+		}
+		return retval;
+	}
+
+	private long determineBandHash(int[] signature, int band)
+	{
+		long retval = band;
+		for (int row = band * this.rows; row < (band + 1) * this.rows; row++)
+		{
+			retval = retval * 31 + signature[row];
+		}
+		return retval;
+	}
+
+	/**
+	 * Returns the Jaccard similarity of the given sorted distinct key ids
+	 *
+	 * @param keyIds1
+	 * @param keyIds2
+	 * @return
+	 */
+	protected static double jaccard(int[] keyIds1, int[] keyIds2)
+	{
+		int intersection = ReferenceIdUtils.intersect(keyIds1, keyIds2).length;
+		int union = keyIds1.length + keyIds2.length - intersection;
+		return union > 0 ? intersection / (double) union : 0.0;
+	}
+}
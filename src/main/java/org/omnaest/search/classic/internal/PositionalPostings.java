@@ -0,0 +1,126 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.Arrays;
+
+/**
+ * Compact word positions per reference id of a single index entry. The reference ids are kept sorted within a primitive array and every reference id has
+ * its own sorted primitive array of distinct positions.<br>
+ * <br>
+ * Since reference ids and positions are assigned in ascending order, additions usually append at the end.
+ *
+ * @see ReferenceDictionary
+ * @author Omnaest
+ */
+public class PositionalPostings
+{
+	private static final int[] NO_POSITIONS = new int[0];
+
+	private int[]	referenceIds	= new int[1];
+	private int[][]	positions		= new int[1][];
+	private int[]	positionCounts	= new int[1];
+	private int		size			= 0;
+
+	/**
+	 * Adds the given word position for the given reference id, adding the same position twice has no effect
+	 *
+	 * @param referenceId
+	 * @param position
+	 */
+	public synchronized void add(int referenceId, int position)
+	{
+		int index = this.indexOf(referenceId);
+		if (index < 0)
+		{
+			index = -index - 1;
+			this.ensureCapacity(this.size + 1);
+			System.arraycopy(this.referenceIds, index, this.referenceIds, index + 1, this.size - index);
+			System.arraycopy(this.positions, index, this.positions, index + 1, this.size - index);
+			System.arraycopy(this.positionCounts, index, this.positionCounts, index + 1, this.size - index);
+			this.referenceIds[index] = referenceId;
+			this.positions[index] = new int[1];
+			this.positionCounts[index] = 0;
+			this.size++;
+		}
+
+		int[] positionsOfReference = this.positions[index];
+		int count = this.positionCounts[index];
+		if (count > 0 && positionsOfReference[count - 1] >= position)
+		{
+			int positionIndex = Arrays.binarySearch(positionsOfReference, 0, count, position);
+			if (positionIndex >= 0)
+			{
+				return;
+			}
+			positionIndex = -positionIndex - 1;
+			positionsOfReference = this.ensurePositionCapacity(index, count + 1);
+			System.arraycopy(positionsOfReference, positionIndex, positionsOfReference, positionIndex + 1, count - positionIndex);
+			positionsOfReference[positionIndex] = position;
+		}
+		else
+		{
+			positionsOfReference = this.ensurePositionCapacity(index, count + 1);
+			positionsOfReference[count] = position;
+		}
+		this.positionCounts[index]++;
+	}
+
+	/**
+	 * Returns a sorted copy of the positions of the given reference id, which is empty if the reference id has no positions
+	 *
+	 * @param referenceId
+	 * @return
+	 */
+	public synchronized int[] getPositions(int referenceId)
+	{
+		int index = this.indexOf(referenceId);
+		return index >= 0 ? Arrays.copyOf(this.positions[index], this.positionCounts[index]) : NO_POSITIONS;
+	}
+
+	private int indexOf(int referenceId)
+	{
+		if (this.size > 0 && this.referenceIds[this.size - 1] < referenceId)
+		{
+			return -(this.size + 1);
+		}
+		return Arrays.binarySearch(this.referenceIds, 0, this.size, referenceId);
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > this.referenceIds.length)
+		{
+			int newCapacity = Math.max(capacity, this.referenceIds.length * 2);
+			this.referenceIds = Arrays.copyOf(this.referenceIds, newCapacity);
+			this.positions = Arrays.copyOf(this.positions, newCapacity);
+			this.positionCounts = Arrays.copyOf(this.positionCounts, newCapacity);
+		}
+	}
+
+	private int[] ensurePositionCapacity(int index, int capacity)
+	{
+		int[] positionsOfReference = this.positions[index];
+		if (capacity > positionsOfReference.length)
+		{
+			positionsOfReference = this.positions[index] = Arrays.copyOf(positionsOfReference, Math.max(capacity, positionsOfReference.length * 2));
+		}
+		return positionsOfReference;
+	}
+}
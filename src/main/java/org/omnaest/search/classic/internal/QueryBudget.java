@@ -0,0 +1,107 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Budget of a single query which is consumed per traversed posting. The budget is exhausted if the posting budget is used up, the deadline has passed or
+ * the {@link CancellationToken} has been cancelled. The deadline and the {@link CancellationToken} are only checked every {@value #CHECK_INTERVAL}
+ * postings to keep the per posting overhead small.<br>
+ * <br>
+ * A {@link QueryBudget} can be shared by concurrent traversals of the same query.
+ *
+ * @author Omnaest
+ */
+public class QueryBudget
+{
+	private static final int CHECK_INTERVAL = 256;
+
+	private long				postingBudget;
+	private long				deadlineNanos;
+	private CancellationToken	cancellationToken;
+
+	private AtomicLong			consumedPostings	= new AtomicLong();
+	private volatile boolean	exhausted			= false;
+
+	private QueryBudget(long postingBudget, long deadlineNanos, CancellationToken cancellationToken)
+	{
+		super();
+		this.postingBudget = postingBudget;
+		this.deadlineNanos = deadlineNanos;
+		this.cancellationToken = cancellationToken;
+	}
+
+	/**
+	 * Returns a new {@link QueryBudget} for the given {@link MatchOptions}, the timeout starts with the call of this method
+	 *
+	 * @param options
+	 * @return
+	 */
+	public static QueryBudget of(MatchOptions<?, ?> options)
+	{
+		long timeoutNanos = options.getTimeoutNanos();
+		long deadlineNanos = timeoutNanos < Long.MAX_VALUE ? System.nanoTime() + timeoutNanos : Long.MAX_VALUE;
+		return new QueryBudget(options.getPostingBudget(), deadlineNanos, options.getCancellationToken());
+	}
+
+	/**
+	 * Consumes the budget for a single posting
+	 *
+	 * @return false, if the budget is exhausted and the posting must not be processed anymore
+	 */
+	public boolean tryConsume()
+	{
+		if (this.exhausted)
+		{
+			return false;
+		}
+
+		long consumedPostings = this.consumedPostings.incrementAndGet();
+		if (consumedPostings > this.postingBudget)
+		{
+			this.exhausted = true;
+		}
+		else if (consumedPostings % CHECK_INTERVAL == 1)
+		{
+			this.exhausted = this.isDeadlineExceeded() || this.isCancelled();
+		}
+		return !this.exhausted;
+	}
+
+	/**
+	 * Returns true if the traversal has been stopped before all postings could be processed
+	 *
+	 * @return
+	 */
+	public boolean isExhausted()
+	{
+		return this.exhausted;
+	}
+
+	private boolean isDeadlineExceeded()
+	{
+		return this.deadlineNanos < Long.MAX_VALUE && System.nanoTime() - this.deadlineNanos >= 0;
+	}
+
+	private boolean isCancelled()
+	{
+		return this.cancellationToken != null && this.cancellationToken.isCancelled();
+	}
+}
@@ -0,0 +1,520 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.omnaest.search.classic.analyzer.AnalysisType;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchingTokenAndStatistics;
+
+/**
+ * Bounded least recently used cache for the results of {@link CodeSequenceStatisticsCollector.Matcher} queries.<br>
+ * <br>
+ * Every entry remembers the {@link SequenceKey}s it has probed within each {@link SequenceIndex}. An entry is invalidated as soon as a probed key receives a
+ * new posting, or as soon as a new key is created within an index the entry has been filtered for, since that changes the index size a
+ * {@link CodeSequenceStatisticsCollector.ScoringFunction} can depend on. Entries which depend on the corpus statistics of an index, like the document
+ * count and document lengths of a {@link CodeSequenceStatisticsCollector.PrimitiveScoringFunction}, are invalidated by every posting to that index.<br>
+ * <br>
+ * The dependencies of the entries, including the entries which are still computed, are registered in concurrent maps, so an invalidation of a key no
+ * entry depends on does neither lock nor allocate.
+ *
+ * @see #get(CacheKey, AnalysisType, Supplier, Supplier)
+ * @see #invalidate(SequenceIndex, SequenceKey, boolean)
+ * @author Omnaest
+ * @param <C>
+ * @param <R>
+ */
+public class QueryCache<C, R>
+{
+	private int maximumSize;
+
+	private Map<CacheKey, CacheEntry<C, R>>													entries;
+	private Map<SequenceIndex<C, R>, Map<SequenceKey<C>, Set<CacheEntry<C, R>>>>			indexAndKeyToCacheEntries		= new ConcurrentHashMap<>();
+	private Map<AnalysisType, Set<CacheEntry<C, R>>>										analysisTypeToCacheEntries		= new HashMap<>();
+	private volatile int																	numberOfRegisteredCacheEntries	= 0;
+	private Map<AnalysisType, Set<CacheEntry<C, R>>>										analysisTypeToStatisticsDependentCacheEntries	= new HashMap<>();
+	private volatile int																	numberOfStatisticsDependentCacheEntries			= 0;
+
+	private AtomicLong	hits			= new AtomicLong();
+	private AtomicLong	misses			= new AtomicLong();
+	private AtomicLong	evictions		= new AtomicLong();
+	private AtomicLong	invalidations	= new AtomicLong();
+
+	/**
+	 * Key of a cached query consisting of the queried code sequence, the {@link AnalysisType} filter and the identity of the scoring function
+	 *
+	 * @author Omnaest
+	 */
+	public static class CacheKey
+	{
+		private List<?>			codeSequence;
+		private AnalysisType	analysisType;
+		private Object			scoringFunction;
+
+		public CacheKey(List<?> codeSequence, AnalysisType analysisType, Object scoringFunction)
+		{
+			super();
+			this.codeSequence = codeSequence;
+			this.analysisType = analysisType;
+			this.scoringFunction = scoringFunction;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((this.analysisType == null) ? 0 : this.analysisType.hashCode());
+			result = prime * result + ((this.codeSequence == null) ? 0 : this.codeSequence.hashCode());
+			result = prime * result + System.identityHashCode(this.scoringFunction);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (this.getClass() != obj.getClass())
+				return false;
+			CacheKey other = (CacheKey) obj;
+			if (this.analysisType == null)
+			{
+				if (other.analysisType != null)
+					return false;
+			}
+			else if (!this.analysisType.equals(other.analysisType))
+				return false;
+			if (this.codeSequence == null)
+			{
+				if (other.codeSequence != null)
+					return false;
+			}
+			else if (!this.codeSequence.equals(other.codeSequence))
+				return false;
+			return this.scoringFunction == other.scoringFunction;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "[codeSequence=" + this.codeSequence + ", analysisType=" + this.analysisType + "]";
+		}
+
+	}
+
+	/**
+	 * Cached matches of a query together with the {@link SequenceKey}s it has probed. While the matches are still computed, the entry is registered as
+	 * pending, so an invalidation during the computation marks it as stale.
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
+	protected static class CacheEntry<C, R>
+	{
+		private CacheKey										cacheKey;
+		private List<MatchingTokenAndStatistics<C, R>>			matches;
+		private AnalysisType									analysisType;
+		private Map<SequenceIndex<C, R>, Set<SequenceKey<C>>>	dependencies;
+		private boolean											dependentOnIndexStatistics;
+		private volatile boolean								stale	= false;
+
+		public CacheEntry(CacheKey cacheKey, AnalysisType analysisType, Map<SequenceIndex<C, R>, Set<SequenceKey<C>>> dependencies,
+							boolean dependentOnIndexStatistics)
+		{
+			super();
+			this.cacheKey = cacheKey;
+			this.analysisType = analysisType;
+			this.dependencies = dependencies;
+			this.dependentOnIndexStatistics = dependentOnIndexStatistics;
+		}
+
+		public boolean isDependentOnIndexStatistics()
+		{
+			return this.dependentOnIndexStatistics;
+		}
+
+		public CacheKey getCacheKey()
+		{
+			return this.cacheKey;
+		}
+
+		public List<MatchingTokenAndStatistics<C, R>> getMatches()
+		{
+			return this.matches;
+		}
+
+		public CacheEntry<C, R> setMatches(List<MatchingTokenAndStatistics<C, R>> matches)
+		{
+			this.matches = matches;
+			return this;
+		}
+
+		public AnalysisType getAnalysisType()
+		{
+			return this.analysisType;
+		}
+
+		public Map<SequenceIndex<C, R>, Set<SequenceKey<C>>> getDependencies()
+		{
+			return this.dependencies;
+		}
+
+		public boolean isStale()
+		{
+			return this.stale;
+		}
+
+		public void markStale()
+		{
+			this.stale = true;
+		}
+
+	}
+
+	/**
+	 * Hit and miss counters of a {@link QueryCache}
+	 *
+	 * @author Omnaest
+	 */
+	public static interface QueryCacheStatistics
+	{
+		public long getHitCount();
+
+		public long getMissCount();
+
+		public long getEvictionCount();
+
+		public long getInvalidationCount();
+
+		public int getSize();
+	}
+
+	public QueryCache(int maximumSize)
+	{
+		super();
+		this.maximumSize = maximumSize;
+		this.entries = new LinkedHashMap<CacheKey, CacheEntry<C, R>>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = -3209440627542962542L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry<C, R>> eldest)
+			{
+				boolean remove = this.size() > QueryCache.this.maximumSize;
+				if (remove)
+				{
+					QueryCache.this.evictions.incrementAndGet();
+					QueryCache.this.removeDependencies(eldest.getValue());
+				}
+				return remove;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached matches for the given {@link CacheKey} or computes them using the given {@link Supplier}.<br>
+	 * <br>
+	 * Computed matches are only cached if no key they depend on has been invalidated while they were computed. The dependencies are only determined on a
+	 * cache miss, so a hit does not pay for the expansion of the query into the probed keys.
+	 *
+	 * @param cacheKey
+	 * @param analysisType
+	 *            the {@link AnalysisType} filter of the query, can be null
+	 * @param dependenciesSupplier
+	 *            supplies the {@link SequenceKey}s the query probes per {@link SequenceIndex}
+	 * @param matchesSupplier
+	 * @return
+	 */
+	public List<MatchingTokenAndStatistics<C, R>> get(	CacheKey cacheKey, AnalysisType analysisType,
+														Supplier<Map<SequenceIndex<C, R>, Set<SequenceKey<C>>>> dependenciesSupplier,
+														Supplier<List<MatchingTokenAndStatistics<C, R>>> matchesSupplier)
+	{
+		return this.get(cacheKey, analysisType, dependenciesSupplier, false, matchesSupplier);
+	}
+
+	/**
+	 * Similar to {@link #get(CacheKey, AnalysisType, Supplier, Supplier)}
+	 *
+	 * @param cacheKey
+	 * @param analysisType
+	 * @param dependenciesSupplier
+	 * @param dependentOnIndexStatistics
+	 *            true, if the matches depend on the corpus statistics of the indexes, so they are invalidated by every posting to an index of the given
+	 *            {@link AnalysisType}
+	 * @param matchesSupplier
+	 * @return
+	 */
+	public List<MatchingTokenAndStatistics<C, R>> get(	CacheKey cacheKey, AnalysisType analysisType,
+														Supplier<Map<SequenceIndex<C, R>, Set<SequenceKey<C>>>> dependenciesSupplier,
+														boolean dependentOnIndexStatistics, Supplier<List<MatchingTokenAndStatistics<C, R>>> matchesSupplier)
+	{
+		List<MatchingTokenAndStatistics<C, R>> cachedMatches = this.getCachedMatches(cacheKey);
+		if (cachedMatches != null)
+		{
+			return cachedMatches;
+		}
+
+		CacheEntry<C, R> pendingCacheEntry = new CacheEntry<>(cacheKey, analysisType, dependenciesSupplier.get(), dependentOnIndexStatistics);
+		synchronized (this)
+		{
+			cachedMatches = this.getCachedMatches(cacheKey);
+			if (cachedMatches != null)
+			{
+				return cachedMatches;
+			}
+			this.addDependencies(pendingCacheEntry);
+		}
+
+		this.misses.incrementAndGet();
+		List<MatchingTokenAndStatistics<C, R>> matches;
+		try
+		{
+			matches = matchesSupplier.get();
+		}
+		catch (RuntimeException | Error e)
+		{
+			synchronized (this)
+			{
+				this.removeDependencies(pendingCacheEntry);
+			}
+			throw e;
+		}
+
+		synchronized (this)
+		{
+			if (pendingCacheEntry.isStale())
+			{
+				//dependencies have already been removed by the invalidation
+			}
+			else if (this.entries.containsKey(cacheKey))
+			{
+				this.removeDependencies(pendingCacheEntry);
+			}
+			else
+			{
+				this.entries.put(cacheKey, pendingCacheEntry.setMatches(matches));
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Invalidates all cache entries which depend on the given {@link SequenceKey} of the given {@link SequenceIndex}.<br>
+	 * <br>
+	 * If the key has been newly created, all entries which have been filtered for the {@link AnalysisType} of the {@link SequenceIndex} are invalidated as
+	 * well. All entries depending on the statistics of the {@link SequenceIndex} are invalidated in any case.
+	 *
+	 * @param sequenceIndex
+	 * @param sequenceKey
+	 * @param created
+	 */
+	private synchronized List<MatchingTokenAndStatistics<C, R>> getCachedMatches(CacheKey cacheKey)
+	{
+		CacheEntry<C, R> cacheEntry = this.entries.get(cacheKey);
+		if (cacheEntry == null)
+		{
+			return null;
+		}
+		this.hits.incrementAndGet();
+		return cacheEntry.getMatches();
+	}
+
+	public void invalidate(SequenceIndex<C, R> sequenceIndex, SequenceKey<C> sequenceKey, boolean created)
+	{
+		Map<SequenceKey<C>, Set<CacheEntry<C, R>>> keyToCacheEntries = this.indexAndKeyToCacheEntries.get(sequenceIndex);
+		boolean dependent = keyToCacheEntries != null && keyToCacheEntries.containsKey(sequenceKey);
+		if (!dependent && !(created && this.numberOfRegisteredCacheEntries > 0) && this.numberOfStatisticsDependentCacheEntries == 0)
+		{
+			return;
+		}
+
+		synchronized (this)
+		{
+			List<CacheEntry<C, R>> cacheEntries = new ArrayList<>();
+			keyToCacheEntries = this.indexAndKeyToCacheEntries.get(sequenceIndex);
+			if (keyToCacheEntries != null)
+			{
+				cacheEntries.addAll(keyToCacheEntries.getOrDefault(sequenceKey, Collections.emptySet()));
+			}
+			Map<AnalysisType, Set<CacheEntry<C, R>>> analysisTypeToCacheEntries = created ? this.analysisTypeToCacheEntries
+					: this.analysisTypeToStatisticsDependentCacheEntries;
+			cacheEntries.addAll(analysisTypeToCacheEntries.getOrDefault(null, Collections.emptySet()));
+			cacheEntries.addAll(analysisTypeToCacheEntries.getOrDefault(sequenceIndex.getAnalysisType(), Collections.emptySet()));
+			this.invalidate(cacheEntries);
+		}
+	}
+
+	private void invalidate(Collection<CacheEntry<C, R>> cacheEntries)
+	{
+		for (CacheEntry<C, R> cacheEntry : cacheEntries)
+		{
+			if (!cacheEntry.isStale())
+			{
+				cacheEntry.markStale();
+				if (this.entries.remove(cacheEntry.getCacheKey(), cacheEntry))
+				{
+					this.invalidations.incrementAndGet();
+				}
+				this.removeDependencies(cacheEntry);
+			}
+		}
+	}
+
+	public synchronized void clear()
+	{
+		this.invalidate(this	.analysisTypeToCacheEntries	.values()
+														.stream()
+														.flatMap(cacheEntries -> cacheEntries.stream())
+														.collect(Collectors.toList()));
+		this.entries.clear();
+	}
+
+	public QueryCacheStatistics getStatistics()
+	{
+		return new QueryCacheStatistics()
+		{
+			@Override
+			public long getHitCount()
+			{
+				return QueryCache.this.hits.get();
+			}
+
+			@Override
+			public long getMissCount()
+			{
+				return QueryCache.this.misses.get();
+			}
+
+			@Override
+			public long getEvictionCount()
+			{
+				return QueryCache.this.evictions.get();
+			}
+
+			@Override
+			public long getInvalidationCount()
+			{
+				return QueryCache.this.invalidations.get();
+			}
+
+			@Override
+			public int getSize()
+			{
+				synchronized (QueryCache.this)
+				{
+					return QueryCache.this.entries.size();
+				}
+			}
+
+			@Override
+			public String toString()
+			{
+				return "[hits=" + this.getHitCount() + ", misses=" + this.getMissCount() + ", evictions=" + this.getEvictionCount() + ", invalidations="
+						+ this.getInvalidationCount() + ", size=" + this.getSize() + "]";
+			}
+		};
+	}
+
+	private void addDependencies(CacheEntry<C, R> cacheEntry)
+	{
+		this.numberOfRegisteredCacheEntries++;
+		this.analysisTypeToCacheEntries	.computeIfAbsent(cacheEntry.getAnalysisType(), analysisType -> new HashSet<>())
+										.add(cacheEntry);
+		if (cacheEntry.isDependentOnIndexStatistics())
+		{
+			this.numberOfStatisticsDependentCacheEntries++;
+			this.analysisTypeToStatisticsDependentCacheEntries	.computeIfAbsent(cacheEntry.getAnalysisType(), analysisType -> new HashSet<>())
+																.add(cacheEntry);
+		}
+		cacheEntry	.getDependencies()
+					.forEach((sequenceIndex, sequenceKeys) ->
+					{
+						Map<SequenceKey<C>, Set<CacheEntry<C, R>>> keyToCacheEntries = this.indexAndKeyToCacheEntries.computeIfAbsent(	sequenceIndex,
+																																		index -> new ConcurrentHashMap<>());
+						for (SequenceKey<C> sequenceKey : sequenceKeys)
+						{
+							keyToCacheEntries	.computeIfAbsent(sequenceKey, key -> new HashSet<>())
+												.add(cacheEntry);
+						}
+					});
+	}
+
+	private void removeDependencies(CacheEntry<C, R> cacheEntry)
+	{
+		Set<CacheEntry<C, R>> analysisTypeCacheEntries = this.analysisTypeToCacheEntries.get(cacheEntry.getAnalysisType());
+		if (analysisTypeCacheEntries != null && analysisTypeCacheEntries.remove(cacheEntry))
+		{
+			this.numberOfRegisteredCacheEntries--;
+			if (analysisTypeCacheEntries.isEmpty())
+			{
+				this.analysisTypeToCacheEntries.remove(cacheEntry.getAnalysisType());
+			}
+		}
+		Set<CacheEntry<C, R>> statisticsDependentCacheEntries = this.analysisTypeToStatisticsDependentCacheEntries.get(cacheEntry.getAnalysisType());
+		if (statisticsDependentCacheEntries != null && statisticsDependentCacheEntries.remove(cacheEntry))
+		{
+			this.numberOfStatisticsDependentCacheEntries--;
+			if (statisticsDependentCacheEntries.isEmpty())
+			{
+				this.analysisTypeToStatisticsDependentCacheEntries.remove(cacheEntry.getAnalysisType());
+			}
+		}
+		cacheEntry	.getDependencies()
+					.forEach((sequenceIndex, sequenceKeys) ->
+					{
+						Map<SequenceKey<C>, Set<CacheEntry<C, R>>> keyToCacheEntries = this.indexAndKeyToCacheEntries.get(sequenceIndex);
+						if (keyToCacheEntries != null)
+						{
+							for (SequenceKey<C> sequenceKey : sequenceKeys)
+							{
+								Set<CacheEntry<C, R>> cacheEntries = keyToCacheEntries.get(sequenceKey);
+								if (cacheEntries != null)
+								{
+									cacheEntries.remove(cacheEntry);
+									if (cacheEntries.isEmpty())
+									{
+										keyToCacheEntries.remove(sequenceKey);
+									}
+								}
+							}
+							if (keyToCacheEntries.isEmpty())
+							{
+								this.indexAndKeyToCacheEntries.remove(sequenceIndex);
+							}
+						}
+					});
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense int ids to references, starting with 0 in the order the references are seen first.<br>
+ * <br>
+ * A null reference is a valid reference and gets its own id.
+ *
+ * @author Omnaest
+ * @param <R>
+ */
+public class ReferenceDictionary<R>
+{
+	private static final Object NULL_REFERENCE = new Object();
+
+	private Map<Object, Integer>	referenceToId	= new ConcurrentHashMap<>();
+	private List<R>					references		= new ArrayList<>();
+
+	public int getOrCreateId(R reference)
+	{
+		Integer id = this.referenceToId.get(this.wrap(reference));
+		if (id == null)
+		{
+			synchronized (this)
+			{
+				id = this.referenceToId.computeIfAbsent(this.wrap(reference), key ->
+				{
+					this.references.add(reference);
+					return this.references.size() - 1;
+				});
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the id of the given reference or -1 if the reference is unknown
+	 *
+	 * @param reference
+	 * @return
+	 */
+	public int getId(R reference)
+	{
+		return this.referenceToId.getOrDefault(this.wrap(reference), -1);
+	}
+
+	public synchronized R getReference(int id)
+	{
+		return this.references.get(id);
+	}
+
+	public synchronized int size()
+	{
+		return this.references.size();
+	}
+
+	private Object wrap(R reference)
+	{
+		return reference != null ? reference : NULL_REFERENCE;
+	}
+}
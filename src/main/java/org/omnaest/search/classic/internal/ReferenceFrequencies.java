@@ -0,0 +1,125 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compact frequency counter per reference id, backed by two parallel primitive arrays which are kept sorted by reference id.<br>
+ * <br>
+ * Since reference ids are assigned in ascending order, increments usually append at the end.
+ *
+ * @see ReferenceDictionary
+ * @author Omnaest
+ */
+public class ReferenceFrequencies
+{
+	private int[]	referenceIds	= new int[2];
+	private int[]	frequencies		= new int[2];
+	private int		size			= 0;
+
+	/**
+	 * Increments the frequency of the given reference id by one
+	 *
+	 * @param referenceId
+	 * @return the new frequency
+	 */
+	public synchronized int increment(int referenceId)
+	{
+		int index = this.indexOf(referenceId);
+		if (index < 0)
+		{
+			index = -index - 1;
+			this.ensureCapacity(this.size + 1);
+			System.arraycopy(this.referenceIds, index, this.referenceIds, index + 1, this.size - index);
+			System.arraycopy(this.frequencies, index, this.frequencies, index + 1, this.size - index);
+			this.referenceIds[index] = referenceId;
+			this.frequencies[index] = 0;
+			this.size++;
+		}
+		return ++this.frequencies[index];
+	}
+
+	/**
+	 * Returns the frequency of the given reference id or 0 if the reference id has not been counted
+	 *
+	 * @param referenceId
+	 * @return
+	 */
+	public synchronized int getFrequency(int referenceId)
+	{
+		int index = this.indexOf(referenceId);
+		return index >= 0 ? this.frequencies[index] : 0;
+	}
+
+	/**
+	 * Returns the number of distinct reference ids
+	 *
+	 * @return
+	 */
+	public synchronized int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Returns a sorted copy of all counted reference ids
+	 *
+	 * @return
+	 */
+	public synchronized int[] getReferenceIds()
+	{
+		return Arrays.copyOf(this.referenceIds, this.size);
+	}
+
+	/**
+	 * Sets the bits of all counted reference ids within the given {@link BitSet}
+	 *
+	 * @param referenceIds
+	 * @return the given {@link BitSet}
+	 */
+	public synchronized BitSet addReferenceIdsTo(BitSet referenceIds)
+	{
+		for (int ii = 0; ii < this.size; ii++)
+		{
+			referenceIds.set(this.referenceIds[ii]);
+		}
+		return referenceIds;
+	}
+
+	private int indexOf(int referenceId)
+	{
+		if (this.size > 0 && this.referenceIds[this.size - 1] < referenceId)
+		{
+			return -(this.size + 1);
+		}
+		return Arrays.binarySearch(this.referenceIds, 0, this.size, referenceId);
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > this.referenceIds.length)
+		{
+			int newCapacity = Math.max(capacity, this.referenceIds.length * 2);
+			this.referenceIds = Arrays.copyOf(this.referenceIds, newCapacity);
+			this.frequencies = Arrays.copyOf(this.frequencies, newCapacity);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Helper for sorted arrays of distinct reference ids.<br>
+ * <br>
+ * Intersections and differences probe the larger array with a galloping search starting at the last found position, so their cost is proportional to the
+ * size of the smaller array times the logarithm of the gap between matches.
+ *
+ * @see ReferenceDictionary
+ * @author Omnaest
+ */
+public class ReferenceIdUtils
+{
+	private ReferenceIdUtils()
+	{
+		super();
+	}
+
+	/**
+	 * Returns the sorted reference ids contained in both given sorted arrays
+	 *
+	 * @param smaller
+	 * @param larger
+	 * @return
+	 */
+	public static int[] intersect(int[] smaller, int[] larger)
+	{
+		if (smaller.length > larger.length)
+		{
+			return intersect(larger, smaller);
+		}
+
+		int[] retval = new int[smaller.length];
+		int size = 0;
+		int position = 0;
+		for (int referenceId : smaller)
+		{
+			position = gallop(larger, position, referenceId);
+			if (position >= larger.length)
+			{
+				break;
+			}
+			if (larger[position] == referenceId)
+			{
+				retval[size++] = referenceId;
+			}
+		}
+		return Arrays.copyOf(retval, size);
+	}
+
+	/**
+	 * Returns the sorted reference ids of the first array which are not contained in the second array
+	 *
+	 * @param referenceIds
+	 * @param excludedReferenceIds
+	 * @return
+	 */
+	public static int[] subtract(int[] referenceIds, int[] excludedReferenceIds)
+	{
+		int[] retval = new int[referenceIds.length];
+		int size = 0;
+		int position = 0;
+		for (int referenceId : referenceIds)
+		{
+			position = gallop(excludedReferenceIds, position, referenceId);
+			if (position >= excludedReferenceIds.length || excludedReferenceIds[position] != referenceId)
+			{
+				retval[size++] = referenceId;
+			}
+		}
+		return Arrays.copyOf(retval, size);
+	}
+
+	/**
+	 * Returns the sorted union of the given sorted arrays
+	 *
+	 * @param referenceIdArrays
+	 * @return
+	 */
+	public static int[] union(int[]... referenceIdArrays)
+	{
+		if (referenceIdArrays.length == 1)
+		{
+			return referenceIdArrays[0];
+		}
+
+		BitSet referenceIds = new BitSet();
+		for (int[] referenceIdArray : referenceIdArrays)
+		{
+			for (int referenceId : referenceIdArray)
+			{
+				referenceIds.set(referenceId);
+			}
+		}
+		return referenceIds	.stream()
+							.toArray();
+	}
+
+	/**
+	 * Returns true if the given sorted array contains the given reference id
+	 *
+	 * @param referenceIds
+	 * @param referenceId
+	 * @return
+	 */
+	public static boolean contains(int[] referenceIds, int referenceId)
+	{
+		return Arrays.binarySearch(referenceIds, referenceId) >= 0;
+	}
+
+	/**
+	 * Returns the first position at or after the given start position whose reference id is greater or equal to the given reference id, or the length
+	 * of the array if there is none. The search doubles its step size until it overshoots and then binary searches the last step.
+	 *
+	 * @param referenceIds
+	 * @param start
+	 * @param referenceId
+	 * @return
+	 */
+	public static int gallop(int[] referenceIds, int start, int referenceId)
+	{
+		int low = start;
+		int step = 1;
+		int high = start;
+		while (high < referenceIds.length && referenceIds[high] < referenceId)
+		{
+			low = high + 1;
+			high = start + step;
+			step <<= 1;
+		}
+		high = Math.min(high, referenceIds.length);
+
+		int index = Arrays.binarySearch(referenceIds, low, high, referenceId);
+		return index >= 0 ? index : -index - 1;
+	}
+}
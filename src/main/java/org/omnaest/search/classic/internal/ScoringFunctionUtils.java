@@ -0,0 +1,84 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.PrimitiveScoringFunction;
+
+/**
+ * Built-in {@link PrimitiveScoringFunction}s
+ *
+ * @author Omnaest
+ */
+public class ScoringFunctionUtils
+{
+	private static final PrimitiveScoringFunction BM25 = bm25(1.2, 0.75);
+
+	private static final PrimitiveScoringFunction TF_IDF = (termFrequency, documentFrequency, documentCount, documentLength, averageDocumentLength,
+															keyLength) -> termFrequency * idf(documentFrequency, documentCount);
+
+	/**
+	 * Returns a BM25 {@link PrimitiveScoringFunction} with the common parameters k1=1.2 and b=0.75
+	 *
+	 * @see #bm25(double, double)
+	 * @return
+	 */
+	public static PrimitiveScoringFunction bm25()
+	{
+		return BM25;
+	}
+
+	/**
+	 * Returns a BM25 {@link PrimitiveScoringFunction}
+	 *
+	 * @param k1
+	 *            term frequency saturation
+	 * @param b
+	 *            document length normalization between 0.0 and 1.0
+	 * @return
+	 */
+	public static PrimitiveScoringFunction bm25(double k1, double b)
+	{
+		return (termFrequency, documentFrequency, documentCount, documentLength, averageDocumentLength, keyLength) ->
+		{
+			double lengthNormalization = averageDocumentLength > 0.0 ? documentLength / averageDocumentLength : 1.0;
+			double saturation = termFrequency * (k1 + 1.0) / (termFrequency + k1 * (1.0 - b + b * lengthNormalization));
+			return bm25Idf(documentFrequency, documentCount) * saturation;
+		};
+	}
+
+	/**
+	 * Returns a TF-IDF {@link PrimitiveScoringFunction} using the raw term frequency and a smoothed logarithmic inverse document frequency
+	 *
+	 * @return
+	 */
+	public static PrimitiveScoringFunction tfIdf()
+	{
+		return TF_IDF;
+	}
+
+	private static double idf(int documentFrequency, int documentCount)
+	{
+		return Math.log((1.0 + documentCount) / (1.0 + documentFrequency)) + 1.0;
+	}
+
+	private static double bm25Idf(int documentFrequency, int documentCount)
+	{
+		return Math.log(1.0 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+	}
+}
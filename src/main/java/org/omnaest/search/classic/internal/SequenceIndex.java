@@ -19,11 +19,14 @@
 package org.omnaest.search.classic.internal;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 import org.omnaest.search.classic.analyzer.AnalysisType;
@@ -34,24 +37,146 @@ public class SequenceIndex<C, R>
 {
 	private Map<SequenceKey<C>, IndexEntry<C, R>>	sequenceKeyToEntryMap	= new ConcurrentHashMap<>();
 	private Analyzer<C>								analyzer;
+	private AtomicLong								postingSequence;
 
+	private AtomicInteger			keyCount		= new AtomicInteger();
+	private AtomicLong				postingCount	= new AtomicLong();
+	private ReferenceFrequencies	documentLengths	= new ReferenceFrequencies();
+
+	private volatile KeyTrie<C>	keyTrie			= null;
+	private Object				keyTrieLock		= new Object();
+
+	/**
+	 * Entry of a single {@link SequenceKey} holding all postings and the statistics which are maintained while postings are added
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
 	public static class IndexEntry<C, R>
 	{
-		private AtomicInteger					count				= new AtomicInteger();
-		private List<TokenAndReference<C, R>>	tokenAndReferences	= Collections.synchronizedList(new ArrayList<>());
+		private int								keyLength;
+		private AtomicInteger					count					= new AtomicInteger();
+		private List<TokenAndReference<C, R>>	tokenAndReferences		= Collections.synchronizedList(new ArrayList<>());
+		private ReferenceFrequencies			referenceFrequencies	= new ReferenceFrequencies();
+		private PositionalPostings				positionalPostings		= new PositionalPostings();
+
+		public IndexEntry(int keyLength)
+		{
+			super();
+			this.keyLength = keyLength;
+		}
 
-		public IndexEntry<C, R> addTokenAndReference(Token<C> token, R reference)
+		/**
+		 * @param token
+		 * @param reference
+		 * @param referenceId
+		 * @param sequence
+		 *            unique number of the posting
+		 * @return
+		 */
+		public IndexEntry<C, R> addTokenAndReference(Token<C> token, R reference, int referenceId, long sequence)
 		{
 			this.count.incrementAndGet();
-			this.tokenAndReferences.add(new TokenAndReference<>(token, reference));
+			this.referenceFrequencies.increment(referenceId);
+			this.tokenAndReferences.add(new TokenAndReference<>(token, reference, referenceId, sequence));
 			return this;
 		}
 
+		/**
+		 * Similar to {@link #addTokenAndReference(Token, Object, int, long)} but additionally records the position of the word the {@link Token} has been
+		 * derived from
+		 *
+		 * @param token
+		 * @param reference
+		 * @param referenceId
+		 * @param wordPosition
+		 *            position of the word within all words analyzed for the reference
+		 * @param sequence
+		 *            unique number of the posting
+		 * @return
+		 */
+		public IndexEntry<C, R> addTokenAndReference(Token<C> token, R reference, int referenceId, int wordPosition, long sequence)
+		{
+			this.positionalPostings.add(referenceId, wordPosition);
+			return this.addTokenAndReference(token, reference, referenceId, sequence);
+		}
+
+		/**
+		 * Returns the sorted distinct word positions of the given reference id for this entry
+		 *
+		 * @see #addTokenAndReference(Token, Object, int, int, long)
+		 * @param referenceId
+		 * @return
+		 */
+		public int[] getWordPositions(int referenceId)
+		{
+			return this.positionalPostings.getPositions(referenceId);
+		}
+
+		/**
+		 * Returns the total number of postings of this entry
+		 *
+		 * @return
+		 */
 		public int getCount()
 		{
 			return this.count.get();
 		}
 
+		/**
+		 * Returns the number of distinct references which have postings for this entry
+		 *
+		 * @return
+		 */
+		public int getDocumentFrequency()
+		{
+			return this.referenceFrequencies.size();
+		}
+
+		/**
+		 * Returns the number of postings of this entry for the given reference id
+		 *
+		 * @param referenceId
+		 * @return
+		 */
+		public int getTermFrequency(int referenceId)
+		{
+			return this.referenceFrequencies.getFrequency(referenceId);
+		}
+
+		/**
+		 * Returns the sorted ids of all references which have postings for this entry
+		 *
+		 * @see ReferenceDictionary
+		 * @return
+		 */
+		public int[] getReferenceIds()
+		{
+			return this.referenceFrequencies.getReferenceIds();
+		}
+
+		/**
+		 * Sets the bits of the ids of all references which have postings for this entry within the given {@link BitSet}
+		 *
+		 * @param referenceIds
+		 * @return the given {@link BitSet}
+		 */
+		public BitSet addReferenceIdsTo(BitSet referenceIds)
+		{
+			return this.referenceFrequencies.addReferenceIdsTo(referenceIds);
+		}
+
+		/**
+		 * Returns the number of codes of the {@link SequenceKey} of this entry
+		 *
+		 * @return
+		 */
+		public int getKeyLength()
+		{
+			return this.keyLength;
+		}
+
 		public List<TokenAndReference<C, R>> getTokenAndReferences()
 		{
 			return this.tokenAndReferences;
@@ -63,12 +188,16 @@ public class SequenceIndex<C, R>
 	{
 		private Token<C>	token;
 		private R			reference;
+		private int			referenceId;
+		private long		sequence;
 
-		public TokenAndReference(Token<C> token, R reference)
+		public TokenAndReference(Token<C> token, R reference, int referenceId, long sequence)
 		{
 			super();
 			this.token = token;
 			this.reference = reference;
+			this.referenceId = referenceId;
+			this.sequence = sequence;
 		}
 
 		public Token<C> getToken()
@@ -81,22 +210,190 @@ public class SequenceIndex<C, R>
 			return this.reference;
 		}
 
+		/**
+		 * @see ReferenceDictionary
+		 * @return
+		 */
+		public int getReferenceId()
+		{
+			return this.referenceId;
+		}
+
+		/**
+		 * Returns the unique number of this posting, which ascends in the order postings have been added
+		 *
+		 * @return
+		 */
+		public long getSequence()
+		{
+			return this.sequence;
+		}
+
 	}
 
 	public SequenceIndex(Analyzer<C> analyzer)
+	{
+		this(analyzer, new AtomicLong());
+	}
+
+	/**
+	 * @param analyzer
+	 * @param postingSequence
+	 *            sequence which assigns every added posting a unique and ascending number, which can be shared between multiple {@link SequenceIndex}es
+	 */
+	public SequenceIndex(Analyzer<C> analyzer, AtomicLong postingSequence)
 	{
 		super();
 		this.analyzer = analyzer;
+		this.postingSequence = postingSequence;
 	}
 
 	public IndexEntry<C, R> getOrCreateEntry(SequenceKey<C> sequenceKey)
 	{
-		return this.sequenceKeyToEntryMap.computeIfAbsent(sequenceKey, sk -> new IndexEntry<>());
+		AtomicBoolean created = new AtomicBoolean(false);
+		IndexEntry<C, R> indexEntry = this.sequenceKeyToEntryMap.computeIfAbsent(sequenceKey, sk ->
+		{
+			created.set(true);
+			this.keyCount.incrementAndGet();
+			return new IndexEntry<>(sk.size());
+		});
+		if (created.get())
+		{
+			this.addToKeyTrie(sequenceKey);
+		}
+		return indexEntry;
+	}
+
+	/**
+	 * Adds the given {@link Token} and reference to the {@link IndexEntry} of the given {@link SequenceKey}
+	 *
+	 * @param sequenceKey
+	 * @param token
+	 * @param reference
+	 * @param referenceId
+	 *            id of the reference given by the {@link ReferenceDictionary}
+	 * @param wordPosition
+	 *            position of the word within all words analyzed for the reference
+	 * @return true, if the {@link IndexEntry} for the {@link SequenceKey} has been newly created
+	 */
+	public boolean addTokenAndReference(SequenceKey<C> sequenceKey, Token<C> token, R reference, int referenceId, int wordPosition)
+	{
+		AtomicBoolean created = new AtomicBoolean(false);
+		this.sequenceKeyToEntryMap	.computeIfAbsent(sequenceKey, sk ->
+									{
+										created.set(true);
+										this.keyCount.incrementAndGet();
+										return new IndexEntry<>(sk.size());
+									})
+									.addTokenAndReference(token, reference, referenceId, wordPosition, this.postingSequence.getAndIncrement());
+		this.postingCount.incrementAndGet();
+		this.documentLengths.increment(referenceId);
+		if (created.get())
+		{
+			this.addToKeyTrie(sequenceKey);
+		}
+		return created.get();
+	}
+
+	private void addToKeyTrie(SequenceKey<C> sequenceKey)
+	{
+		//the lock guarantees that a key created while the key trie is being built is not lost
+		synchronized (this.keyTrieLock)
+		{
+			if (this.keyTrie != null)
+			{
+				this.keyTrie.add(sequenceKey);
+			}
+		}
+	}
+
+	/**
+	 * Returns the {@link KeyTrie} of all {@link SequenceKey}s of this index. The {@link KeyTrie} is built on first access and afterwards kept up to date
+	 * when new {@link SequenceKey}s are added, so indexes which are never queried by a {@link KeyAutomaton} do not pay for it.
+	 *
+	 * @return
+	 */
+	public KeyTrie<C> getKeyTrie()
+	{
+		KeyTrie<C> retval = this.keyTrie;
+		if (retval == null)
+		{
+			synchronized (this.keyTrieLock)
+			{
+				retval = this.keyTrie;
+				if (retval == null)
+				{
+					KeyTrie<C> keyTrie = new KeyTrie<>();
+					this.sequenceKeyToEntryMap	.keySet()
+												.forEach(keyTrie::add);
+					this.keyTrie = retval = keyTrie;
+				}
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Returns the {@link IndexEntry} of the given {@link SequenceKey} without any query analysis, or null if the key is not present
+	 *
+	 * @param sequenceKey
+	 * @return
+	 */
+	public IndexEntry<C, R> getEntry(SequenceKey<C> sequenceKey)
+	{
+		return this.sequenceKeyToEntryMap.get(sequenceKey);
 	}
 
+	/**
+	 * Returns the number of distinct {@link SequenceKey}s of this index
+	 *
+	 * @return
+	 */
 	public int getCount()
 	{
-		return this.sequenceKeyToEntryMap.size();
+		return this.keyCount.get();
+	}
+
+	/**
+	 * Returns the total number of postings of this index
+	 *
+	 * @return
+	 */
+	public long getPostingCount()
+	{
+		return this.postingCount.get();
+	}
+
+	/**
+	 * Returns the number of distinct references which have postings within this index
+	 *
+	 * @return
+	 */
+	public int getDocumentCount()
+	{
+		return this.documentLengths.size();
+	}
+
+	/**
+	 * Returns the number of postings the given reference id has within this index
+	 *
+	 * @param referenceId
+	 * @return
+	 */
+	public int getDocumentLength(int referenceId)
+	{
+		return this.documentLengths.getFrequency(referenceId);
+	}
+
+	/**
+	 * Returns the average number of postings per reference within this index
+	 *
+	 * @return
+	 */
+	public double getAverageDocumentLength()
+	{
+		int documentCount = this.getDocumentCount();
+		return documentCount > 0 ? this.getPostingCount() / (double) documentCount : 0.0;
 	}
 
 	public List<IndexEntry<C, R>> getEntries()
@@ -104,6 +401,17 @@ public class SequenceIndex<C, R>
 		return new ArrayList<>(this.sequenceKeyToEntryMap.values());
 	}
 
+	/**
+	 * Returns a weakly consistent {@link Stream} of all {@link SequenceKey}s and their {@link IndexEntry}s of this index
+	 *
+	 * @return
+	 */
+	public Stream<Map.Entry<SequenceKey<C>, IndexEntry<C, R>>> getKeysAndEntries()
+	{
+		return this.sequenceKeyToEntryMap	.entrySet()
+											.stream();
+	}
+
 	public boolean contains(SequenceKey<C> sequenceKey)
 	{
 		return this.sequenceKeyToEntryMap.containsKey(sequenceKey);
@@ -111,8 +419,20 @@ public class SequenceIndex<C, R>
 
 	public Stream<IndexEntry<C, R>> getEntries(SequenceKey<C> sequenceKey)
 	{
-		return this.analyzer.analyzeQuery(sequenceKey)
-							.map(sequence -> this.sequenceKeyToEntryMap.get(sequence));
+		return this	.getQueryKeys(sequenceKey)
+					.map(sequence -> this.sequenceKeyToEntryMap.get(sequence));
+	}
+
+	/**
+	 * Returns the {@link SequenceKey}s the {@link Analyzer} of this {@link SequenceIndex} expands the given query {@link SequenceKey} to
+	 *
+	 * @see Analyzer#analyzeQuery(SequenceKey)
+	 * @param sequenceKey
+	 * @return
+	 */
+	public Stream<SequenceKey<C>> getQueryKeys(SequenceKey<C> sequenceKey)
+	{
+		return this.analyzer.analyzeQuery(sequenceKey);
 	}
 
 	public AnalysisType getAnalysisType()
@@ -0,0 +1,468 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+import org.omnaest.search.classic.analyzer.AnalysisType;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchingTokenAndStatistics;
+import org.omnaest.search.classic.internal.SequenceIndex.IndexEntry;
+import org.omnaest.search.classic.internal.SequenceIndex.TokenAndReference;
+import org.omnaest.search.classic.utils.StreamUtils;
+
+/**
+ * Hash join of the {@link SequenceIndex}es of two {@link CodeSequenceStatisticsCollector}s.<br>
+ * <br>
+ * For every pair of {@link SequenceIndex}es with the same {@link AnalysisType} the keys of the {@link SequenceIndex} with fewer keys are probed against
+ * the hash map of the other {@link SequenceIndex}, so the cost is proportional to the smaller number of keys plus the number of joined postings. Since
+ * the keys of both sides are already analyzed, a posting pair is joined once for every key both postings share. The joined postings are streamed
+ * lazily without collecting any side.
+ *
+ * @author Omnaest
+ * @param <C>
+ * @param <R>
+ */
+public class SequenceIndexJoin<C, R>
+{
+	private static final double JOIN_SCORE = 1.0;
+
+	private static final long	POLL_TIMEOUT_IN_MILLISECONDS	= 10;
+	private static final int	MAX_BATCH_SIZE					= 256;
+
+	private List<SequenceIndex<C, R>>	leftIndexes;
+	private List<SequenceIndex<C, R>>	rightIndexes;
+
+	/**
+	 * Pair of {@link SequenceIndex}es which share an {@link AnalysisType}
+	 */
+	protected static class IndexPair<C, R>
+	{
+		private SequenceIndex<C, R>	left;
+		private SequenceIndex<C, R>	right;
+
+		public IndexPair(SequenceIndex<C, R> left, SequenceIndex<C, R> right)
+		{
+			super();
+			this.left = left;
+			this.right = right;
+		}
+
+		public SequenceIndex<C, R> getLeft()
+		{
+			return this.left;
+		}
+
+		public SequenceIndex<C, R> getRight()
+		{
+			return this.right;
+		}
+
+		/**
+		 * Returns true if the keys of the left {@link SequenceIndex} are probed against the right {@link SequenceIndex}
+		 *
+		 * @return
+		 */
+		public boolean isProbingLeft()
+		{
+			return this.left.getCount() <= this.right.getCount();
+		}
+
+		/**
+		 * Returns the {@link SequenceIndex} with fewer keys, whose keys are looked up within the other {@link SequenceIndex}
+		 *
+		 * @return
+		 */
+		public SequenceIndex<C, R> getProbingIndex()
+		{
+			return this.isProbingLeft() ? this.left : this.right;
+		}
+
+		/**
+		 * Returns the {@link SequenceIndex} whose key hash map is probed
+		 *
+		 * @return
+		 */
+		public SequenceIndex<C, R> getBuildIndex()
+		{
+			return this.isProbingLeft() ? this.right : this.left;
+		}
+	}
+
+	/**
+	 * Collects joined results into batches of at most {@value SequenceIndexJoin#MAX_BATCH_SIZE} results and hands every full batch over to a queue. Waits
+	 * while the queue is full and stops accepting results as soon as the join is closed.
+	 */
+	protected static class JoinedBatches<J>
+	{
+		private BlockingQueue<List<J>>	queue;
+		private AtomicBoolean			closed;
+
+		private List<J> batch = new ArrayList<>();
+
+		public JoinedBatches(BlockingQueue<List<J>> queue, AtomicBoolean closed)
+		{
+			super();
+			this.queue = queue;
+			this.closed = closed;
+		}
+
+		/**
+		 * Adds the given result and returns false, if the join is closed and no further results are accepted
+		 *
+		 * @param result
+		 * @return
+		 */
+		public boolean add(J result)
+		{
+			this.batch.add(result);
+			if (this.batch.size() >= MAX_BATCH_SIZE)
+			{
+				this.flush();
+			}
+			return this.isAccepting();
+		}
+
+		public boolean isAccepting()
+		{
+			return !this.closed.get();
+		}
+
+		/**
+		 * Hands the current batch over to the queue, if it is not empty
+		 */
+		public void flush()
+		{
+			if (this.batch.isEmpty())
+			{
+				return;
+			}
+
+			try
+			{
+				while (this.isAccepting() && !this.queue.offer(this.batch, POLL_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS))
+				{
+					//wait for the consumer
+				}
+			} catch (InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+			this.batch = new ArrayList<>();
+		}
+	}
+
+	/**
+	 * @param leftIndexes
+	 * @param rightIndexes
+	 */
+	public SequenceIndexJoin(List<SequenceIndex<C, R>> leftIndexes, List<SequenceIndex<C, R>> rightIndexes)
+	{
+		super();
+		this.leftIndexes = leftIndexes;
+		this.rightIndexes = rightIndexes;
+	}
+
+	/**
+	 * Returns all pairs of left and right {@link SequenceIndex}es with an equal {@link AnalysisType}
+	 *
+	 * @return
+	 */
+	protected List<IndexPair<C, R>> getIndexPairs()
+	{
+		List<IndexPair<C, R>> retlist = new ArrayList<>();
+		for (SequenceIndex<C, R> leftIndex : this.leftIndexes)
+		{
+			for (SequenceIndex<C, R> rightIndex : this.rightIndexes)
+			{
+				if (leftIndex	.getAnalysisType()
+								.equals(rightIndex.getAnalysisType()))
+				{
+					retlist.add(new IndexPair<>(leftIndex, rightIndex));
+				}
+			}
+		}
+		return retlist;
+	}
+
+	/**
+	 * Streams the given join function applied to every pair of a left and a right posting with matching keys
+	 *
+	 * @param joinFunction
+	 * @return
+	 */
+	public <J> Stream<J> join(BiFunction<MatchingTokenAndStatistics<C, R>, MatchingTokenAndStatistics<C, R>, J> joinFunction)
+	{
+		return this	.getIndexPairs()
+					.stream()
+					.flatMap(indexPair -> this.join(indexPair, indexPair	.getProbingIndex()
+																			.getKeysAndEntries(),
+													joinFunction));
+	}
+
+	/**
+	 * Similar to {@link #join(BiFunction, int, ForkJoinPool, int)} with an unlimited number of buffered batches
+	 *
+	 * @param joinFunction
+	 * @param partitions
+	 * @param pool
+	 * @return
+	 */
+	public <J> Stream<J> join(BiFunction<MatchingTokenAndStatistics<C, R>, MatchingTokenAndStatistics<C, R>, J> joinFunction, int partitions,
+								ForkJoinPool pool)
+	{
+		return this.join(joinFunction, partitions, pool, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Similar to {@link #join(BiFunction)} but splits the key hash map of the probing {@link SequenceIndex} of every {@link IndexPair} into the given
+	 * number of partitions, which are joined in parallel on the given {@link ForkJoinPool}. Every partition only visits its own share of the probing keys
+	 * and applies the join function to its joined postings itself. The probed key hash maps are only read and therefore shared by all partitions. The
+	 * results are streamed as soon as they are joined, so their order is not deterministic.<br>
+	 * <br>
+	 * The results are handed over to the returned {@link Stream} in batches of at most {@value #MAX_BATCH_SIZE} results by a queue which holds at most the
+	 * given maximum number of buffered batches. If the queue is full, the partitions wait until the {@link Stream} consumes further batches, so the heap
+	 * used by the join is bounded independently of the size of the join result. A number of partitions less than two joins a single partition within the
+	 * same budget.<br>
+	 * <br>
+	 * A short-circuited {@link Stream} has to be closed to stop the partitions.
+	 *
+	 * @param joinFunction
+	 * @param partitions
+	 * @param pool
+	 * @param maxBufferedBatches
+	 *            maximum number of batches of results kept in memory
+	 * @return
+	 */
+	public <J> Stream<J> join(BiFunction<MatchingTokenAndStatistics<C, R>, MatchingTokenAndStatistics<C, R>, J> joinFunction, int partitions,
+								ForkJoinPool pool, int maxBufferedBatches)
+	{
+		int numberOfPartitions = Math.max(1, partitions);
+		BlockingQueue<List<J>> batches = new LinkedBlockingQueue<>(Math.max(1, maxBufferedBatches));
+		AtomicBoolean closed = new AtomicBoolean(false);
+
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (IndexPair<C, R> indexPair : this.getIndexPairs())
+		{
+			for (Spliterator<Map.Entry<SequenceKey<C>, IndexEntry<C, R>>> keysAndEntries : split(	indexPair	.getProbingIndex()
+																												.getKeysAndEntries()
+																												.spliterator(),
+																									numberOfPartitions))
+			{
+				futures.add(CompletableFuture.runAsync(	() -> this.join(indexPair, keysAndEntries, joinFunction, new JoinedBatches<>(batches, closed)),
+														pool));
+			}
+		}
+		CompletableFuture<Void> completed = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+
+		return StreamUtils	.generateStreamFromIterator(new Iterator<List<J>>()
+							{
+								private List<J> next;
+
+								@Override
+								public boolean hasNext()
+								{
+									while (this.next == null)
+									{
+										boolean done = completed.isDone();
+										this.next = this.poll();
+										if (this.next == null && done)
+										{
+											//rethrows the first failure of any partition
+											completed.join();
+											return false;
+										}
+									}
+									return true;
+								}
+
+								private List<J> poll()
+								{
+									try
+									{
+										return batches.poll(POLL_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+									} catch (InterruptedException e)
+									{
+										throw new RuntimeException(e);
+									}
+								}
+
+								@Override
+								public List<J> next()
+								{
+									if (!this.hasNext())
+									{
+										throw new NoSuchElementException();
+									}
+									List<J> retval = this.next;
+									this.next = null;
+									return retval;
+								}
+							})
+							.flatMap(List::stream)
+							.onClose(() ->
+							{
+								closed.set(true);
+								batches.clear();
+							});
+	}
+
+	/**
+	 * Splits the given {@link Spliterator} breadth first into at most the given number of {@link Spliterator}s of about equal size
+	 *
+	 * @param spliterator
+	 * @param partitions
+	 * @return
+	 */
+	protected static <E> List<Spliterator<E>> split(Spliterator<E> spliterator, int partitions)
+	{
+		List<Spliterator<E>> retlist = new ArrayList<>();
+		Deque<Spliterator<E>> splittable = new ArrayDeque<>();
+		splittable.add(spliterator);
+		while (!splittable.isEmpty() && retlist.size() + splittable.size() < partitions)
+		{
+			Spliterator<E> suffix = splittable.poll();
+			Spliterator<E> prefix = suffix.trySplit();
+			if (prefix != null)
+			{
+				splittable.add(prefix);
+				splittable.add(suffix);
+			}
+			else
+			{
+				retlist.add(suffix);
+			}
+		}
+		retlist.addAll(splittable);
+		return retlist;
+	}
+
+	/**
+	 * Joins the given share of the key and {@link IndexEntry} pairs of the probing {@link SequenceIndex} of the given {@link IndexPair} and adds the results
+	 * to the given {@link JoinedBatches}. Stops as soon as the join is closed.
+	 *
+	 * @param indexPair
+	 * @param probingKeysAndEntries
+	 * @param joinFunction
+	 * @param joinedBatches
+	 */
+	protected <J> void join(IndexPair<C, R> indexPair, Spliterator<Map.Entry<SequenceKey<C>, IndexEntry<C, R>>> probingKeysAndEntries,
+							BiFunction<MatchingTokenAndStatistics<C, R>, MatchingTokenAndStatistics<C, R>, J> joinFunction, JoinedBatches<J> joinedBatches)
+	{
+		while (joinedBatches.isAccepting() && probingKeysAndEntries.tryAdvance(keyAndEntry -> this.join(indexPair, keyAndEntry, joinFunction, joinedBatches)))
+		{
+			//continue with the next key
+		}
+		joinedBatches.flush();
+	}
+
+	private <J> void join(	IndexPair<C, R> indexPair, Map.Entry<SequenceKey<C>, IndexEntry<C, R>> probingKeyAndEntry,
+							BiFunction<MatchingTokenAndStatistics<C, R>, MatchingTokenAndStatistics<C, R>, J> joinFunction, JoinedBatches<J> joinedBatches)
+	{
+		SequenceIndex<C, R> buildIndex = indexPair.getBuildIndex();
+		IndexEntry<C, R> buildEntry = buildIndex.getEntry(probingKeyAndEntry.getKey());
+		if (buildEntry == null)
+		{
+			return;
+		}
+
+		boolean probingLeft = indexPair.isProbingLeft();
+		List<MatchingTokenAndStatistics<C, R>> probingMatches = toMatches(indexPair.getProbingIndex(), probingKeyAndEntry.getValue());
+		List<MatchingTokenAndStatistics<C, R>> buildMatches = toMatches(buildIndex, buildEntry);
+		for (MatchingTokenAndStatistics<C, R> probingMatch : probingMatches)
+		{
+			for (MatchingTokenAndStatistics<C, R> buildMatch : buildMatches)
+			{
+				J result = probingLeft ? joinFunction.apply(probingMatch, buildMatch) : joinFunction.apply(buildMatch, probingMatch);
+				if (!joinedBatches.add(result))
+				{
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Joins the given key and {@link IndexEntry} pairs of the probing side of the given {@link IndexPair} with the other side
+	 *
+	 * @param indexPair
+	 * @param probingKeysAndEntries
+	 * @param joinFunction
+	 * @return
+	 */
+	protected <J> Stream<J> join(	IndexPair<C, R> indexPair, Stream<Map.Entry<SequenceKey<C>, IndexEntry<C, R>>> probingKeysAndEntries,
+									BiFunction<MatchingTokenAndStatistics<C, R>, MatchingTokenAndStatistics<C, R>, J> joinFunction)
+	{
+		boolean probingLeft = indexPair.isProbingLeft();
+		SequenceIndex<C, R> probingIndex = indexPair.getProbingIndex();
+		SequenceIndex<C, R> buildIndex = indexPair.getBuildIndex();
+		return probingKeysAndEntries.flatMap(keyAndEntry ->
+		{
+			IndexEntry<C, R> buildEntry = buildIndex.getEntry(keyAndEntry.getKey());
+			if (buildEntry == null)
+			{
+				return Stream.empty();
+			}
+
+			List<MatchingTokenAndStatistics<C, R>> probingMatches = toMatches(probingIndex, keyAndEntry.getValue());
+			List<MatchingTokenAndStatistics<C, R>> buildMatches = toMatches(buildIndex, buildEntry);
+			return probingMatches	.stream()
+									.flatMap(probingMatch -> buildMatches	.stream()
+																			.map(buildMatch -> probingLeft	? joinFunction.apply(probingMatch, buildMatch)
+																											: joinFunction.apply(buildMatch, probingMatch)));
+		});
+	}
+
+	/**
+	 * Returns a snapshot of the postings of the given {@link IndexEntry} as {@link MatchingTokenAndStatistics}
+	 *
+	 * @param index
+	 * @param indexEntry
+	 * @return
+	 */
+	protected static <C, R> List<MatchingTokenAndStatistics<C, R>> toMatches(SequenceIndex<C, R> index, IndexEntry<C, R> indexEntry)
+	{
+		List<TokenAndReference<C, R>> tokenAndReferences = indexEntry.getTokenAndReferences();
+		List<MatchingTokenAndStatistics<C, R>> retlist;
+		synchronized (tokenAndReferences)
+		{
+			retlist = new ArrayList<>(tokenAndReferences.size());
+			for (TokenAndReference<C, R> tokenAndReference : tokenAndReferences)
+			{
+				retlist.add(new MatchingTokenAndStatistics<>(tokenAndReference.getToken(), tokenAndReference.getReference(), JOIN_SCORE,
+																index.getAnalysisType()));
+			}
+		}
+		return retlist;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchingTokenAndStatistics;
+
+/**
+ * Collects the {@link MatchingTokenAndStatistics} with the highest scores using a bounded min heap. Matches with equal scores are ranked in the order they
+ * have been added.
+ *
+ * @author Omnaest
+ * @param <C>
+ * @param <R>
+ */
+public class TopMatches<C, R>
+{
+	private static class RankedMatch<C, R>
+	{
+		private MatchingTokenAndStatistics<C, R>	match;
+		private long								sequence;
+
+		public RankedMatch(MatchingTokenAndStatistics<C, R> match, long sequence)
+		{
+			super();
+			this.match = match;
+			this.sequence = sequence;
+		}
+	}
+
+	private int									limit;
+	private long								sequence	= 0;
+	private PriorityQueue<RankedMatch<C, R>>	heap		= new PriorityQueue<>(this.worstFirst());
+
+	public TopMatches(int limit)
+	{
+		super();
+		this.limit = limit;
+	}
+
+	private Comparator<RankedMatch<C, R>> worstFirst()
+	{
+		return (m1, m2) ->
+		{
+			int result = Double.compare(m1.match.getScore(), m2.match.getScore());
+			return result != 0 ? result : -1 * Long.compare(m1.sequence, m2.sequence);
+		};
+	}
+
+	/**
+	 * Returns true if a match with the given score would currently be collected. This allows to skip the creation of {@link MatchingTokenAndStatistics}
+	 * instances which would be discarded anyhow.
+	 *
+	 * @param score
+	 * @return
+	 */
+	public boolean isCompetitive(double score)
+	{
+		return this.limit > 0 && (this.heap.size() < this.limit || score > this.heap.peek().match.getScore());
+	}
+
+	public TopMatches<C, R> add(MatchingTokenAndStatistics<C, R> match)
+	{
+		if (this.isCompetitive(match.getScore()))
+		{
+			if (this.heap.size() >= this.limit)
+			{
+				this.heap.poll();
+			}
+			this.heap.add(new RankedMatch<>(match, this.sequence));
+		}
+		this.sequence++;
+		return this;
+	}
+
+	/**
+	 * Returns the collected matches ordered by descending score
+	 *
+	 * @return
+	 */
+	public List<MatchingTokenAndStatistics<C, R>> toList()
+	{
+		List<RankedMatch<C, R>> rankedMatches = new ArrayList<>(this.heap);
+		rankedMatches.sort(this	.worstFirst()
+								.reversed());
+
+		List<MatchingTokenAndStatistics<C, R>> retlist = new ArrayList<>(rankedMatches.size());
+		for (RankedMatch<C, R> rankedMatch : rankedMatches)
+		{
+			retlist.add(rankedMatch.match);
+		}
+		return retlist;
+	}
+}
@@ -0,0 +1,148 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.internal;
+
+import java.util.BitSet;
+
+/**
+ * Selection of the top ranked reference ids out of a primitive score accumulator using a bounded binary min heap.<br>
+ * <br>
+ * Reference ids are ranked by descending score, equal scores are ranked by ascending reference id.
+ *
+ * @see ReferenceDictionary
+ * @author Omnaest
+ */
+public class TopReferenceIds
+{
+	private int[]		heap;
+	private int			size	= 0;
+	private double[]	scores;
+
+	private TopReferenceIds(int capacity, double[] scores)
+	{
+		super();
+		this.heap = new int[capacity];
+		this.scores = scores;
+	}
+
+	/**
+	 * Returns the ids of the given candidates with the highest scores, ordered by rank
+	 *
+	 * @param candidates
+	 *            reference ids to rank
+	 * @param scores
+	 *            accumulated scores indexed by reference id
+	 * @param limit
+	 *            maximum number of returned reference ids
+	 * @return
+	 */
+	public static int[] select(BitSet candidates, double[] scores, int limit)
+	{
+		int capacity = Math.max(0, Math.min(limit, candidates.cardinality()));
+		TopReferenceIds topReferenceIds = new TopReferenceIds(capacity, scores);
+		if (capacity > 0)
+		{
+			for (int referenceId = candidates.nextSetBit(0); referenceId >= 0; referenceId = candidates.nextSetBit(referenceId + 1))
+			{
+				topReferenceIds.offer(referenceId);
+			}
+		}
+		return topReferenceIds.drain();
+	}
+
+	private void offer(int referenceId)
+	{
+		if (this.size < this.heap.length)
+		{
+			this.heap[this.size] = referenceId;
+			this.siftUp(this.size++);
+		}
+		else if (this.isWorse(this.heap[0], referenceId))
+		{
+			this.heap[0] = referenceId;
+			this.siftDown(0);
+		}
+	}
+
+	private int[] drain()
+	{
+		int[] retval = new int[this.size];
+		for (int ii = retval.length - 1; ii >= 0; ii--)
+		{
+			retval[ii] = this.heap[0];
+			this.heap[0] = this.heap[--this.size];
+			this.siftDown(0);
+		}
+		return retval;
+	}
+
+	/**
+	 * Returns true, if the first reference id is ranked below the second one
+	 */
+	private boolean isWorse(int referenceId1, int referenceId2)
+	{
+		int comparison = Double.compare(this.scores[referenceId1], this.scores[referenceId2]);
+		return comparison < 0 || (comparison == 0 && referenceId1 > referenceId2);
+	}
+
+	private void siftUp(int index)
+	{
+		while (index > 0)
+		{
+			int parent = (index - 1) / 2;
+			if (!this.isWorse(this.heap[index], this.heap[parent]))
+			{
+				break;
+			}
+			this.swap(index, parent);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index)
+	{
+		while (true)
+		{
+			int left = 2 * index + 1;
+			int right = left + 1;
+			int smallest = index;
+			if (left < this.size && this.isWorse(this.heap[left], this.heap[smallest]))
+			{
+				smallest = left;
+			}
+			if (right < this.size && this.isWorse(this.heap[right], this.heap[smallest]))
+			{
+				smallest = right;
+			}
+			if (smallest == index)
+			{
+				break;
+			}
+			this.swap(index, smallest);
+			index = smallest;
+		}
+	}
+
+	private void swap(int index1, int index2)
+	{
+		int temp = this.heap[index1];
+		this.heap[index1] = this.heap[index2];
+		this.heap[index2] = temp;
+	}
+}
@@ -0,0 +1,425 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.classic.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Sorts records within a memory budget of a maximum number of buffered records. If the budget is exceeded, the buffered records are sorted and spilled
+ * as run into a temporary file. {@link #stream()} merges all spilled runs and the remaining buffered records back into one sorted {@link Stream}, reading
+ * only one record per run at a time.<br>
+ * <br>
+ * At most a maximum fan-in of runs is opened at the same time. If more runs have been spilled, they are first merged in passes into fewer and larger
+ * runs, so the number of open files and read buffers does not grow with the number of records.<br>
+ * <br>
+ * The temporary files are deleted as soon as the merged {@link Stream} is exhausted or closed, or {@link #close()} is called.
+ *
+ * @author Omnaest
+ * @param <E>
+ */
+public class SpillingSorter<E> implements AutoCloseable
+{
+	private static final String	TEMP_FILE_PREFIX	= "spill";
+	public static final int		DEFAULT_MAX_FAN_IN	= 64;
+
+	private Comparator<? super E>	comparator;
+	private RecordCodec<E>			codec;
+	private int						maxBufferedRecords;
+	private int						maxFanIn;
+
+	private List<E>		buffer	= new ArrayList<>();
+	private List<File>	runs	= new ArrayList<>();
+	private long		size	= 0;
+
+	/**
+	 * Writes and reads single records of a spilled run
+	 *
+	 * @author Omnaest
+	 * @param <E>
+	 */
+	public static interface RecordCodec<E>
+	{
+		void write(DataOutput output, E record) throws IOException;
+
+		E read(DataInput input) throws IOException;
+	}
+
+	/**
+	 * Cursor on the current record of a spilled run or of the buffered records
+	 *
+	 * @author Omnaest
+	 * @param <E>
+	 */
+	protected static abstract class Run<E>
+	{
+		private E current;
+
+		protected abstract E readNext();
+
+		protected void close()
+		{
+		}
+
+		public boolean advance()
+		{
+			this.current = this.readNext();
+			return this.current != null;
+		}
+
+		public E getCurrent()
+		{
+			return this.current;
+		}
+	}
+
+	/**
+	 * Merges the current records of multiple {@link Run}s in sorted order
+	 *
+	 * @author Omnaest
+	 * @param <E>
+	 */
+	protected static class MergedRuns<E> implements Iterator<E>
+	{
+		private PriorityQueue<Run<E>> queue;
+
+		public MergedRuns(List<Run<E>> runs, Comparator<? super E> comparator)
+		{
+			super();
+			this.queue = new PriorityQueue<>(Math.max(1, runs.size()), (run1, run2) -> comparator.compare(run1.getCurrent(), run2.getCurrent()));
+			try
+			{
+				for (Run<E> run : runs)
+				{
+					this.offer(run);
+				}
+			} catch (RuntimeException e)
+			{
+				runs.forEach(Run::close);
+				throw e;
+			}
+		}
+
+		private void offer(Run<E> run)
+		{
+			if (run.advance())
+			{
+				this.queue.add(run);
+			}
+			else
+			{
+				run.close();
+			}
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return !this.queue.isEmpty();
+		}
+
+		@Override
+		public E next()
+		{
+			Run<E> run = this.queue.poll();
+			if (run == null)
+			{
+				throw new NoSuchElementException();
+			}
+
+			E retval = run.getCurrent();
+			this.offer(run);
+			return retval;
+		}
+
+		/**
+		 * Closes all {@link Run}s which are not exhausted yet
+		 */
+		public void close()
+		{
+			this.queue.forEach(Run::close);
+			this.queue.clear();
+		}
+	}
+
+	/**
+	 * Similar to {@link #SpillingSorter(Comparator, RecordCodec, int, int)} with a maximum fan-in of {@value #DEFAULT_MAX_FAN_IN} runs
+	 *
+	 * @param comparator
+	 * @param codec
+	 * @param maxBufferedRecords
+	 *            maximum number of records kept in memory, the minimum is one
+	 */
+	public SpillingSorter(Comparator<? super E> comparator, RecordCodec<E> codec, int maxBufferedRecords)
+	{
+		this(comparator, codec, maxBufferedRecords, DEFAULT_MAX_FAN_IN);
+	}
+
+	/**
+	 * @param comparator
+	 * @param codec
+	 * @param maxBufferedRecords
+	 *            maximum number of records kept in memory, the minimum is one
+	 * @param maxFanIn
+	 *            maximum number of runs merged at the same time, including the buffered records, the minimum is two
+	 */
+	public SpillingSorter(Comparator<? super E> comparator, RecordCodec<E> codec, int maxBufferedRecords, int maxFanIn)
+	{
+		super();
+		this.comparator = comparator;
+		this.codec = codec;
+		this.maxBufferedRecords = Math.max(1, maxBufferedRecords);
+		this.maxFanIn = Math.max(2, maxFanIn);
+	}
+
+	/**
+	 * Adds a record, spilling the buffered records into a new run if the maximum number of buffered records is reached. Records must not be null.
+	 *
+	 * @param record
+	 * @return
+	 * @throws UncheckedIOException
+	 *             if the run can not be written
+	 */
+	public SpillingSorter<E> add(E record)
+	{
+		this.buffer.add(record);
+		this.size++;
+		if (this.buffer.size() >= this.maxBufferedRecords)
+		{
+			this.spill();
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the total number of added records
+	 *
+	 * @return
+	 */
+	public long size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of runs spilled into temporary files
+	 *
+	 * @return
+	 */
+	public int getNumberOfRuns()
+	{
+		return this.runs.size();
+	}
+
+	private void spill()
+	{
+		this.buffer.sort(this.comparator);
+		this.writeRun(this.buffer.iterator());
+		this.buffer = new ArrayList<>();
+	}
+
+	/**
+	 * Writes the given sorted records as new run, which is appended to the runs. Every record is preceded by a marker, so the number of records of a run
+	 * does not have to be known in advance.
+	 *
+	 * @param records
+	 */
+	private void writeRun(Iterator<E> records)
+	{
+		try
+		{
+			File file = File.createTempFile(TEMP_FILE_PREFIX, null);
+			this.runs.add(file);
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+			{
+				while (records.hasNext())
+				{
+					output.writeBoolean(true);
+					this.codec.write(output, records.next());
+				}
+				output.writeBoolean(false);
+			}
+		} catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Merges the oldest runs into new runs until fewer runs than the maximum fan-in are left, which leaves room for the buffered records in the final
+	 * merge. The last pass merges only as many runs as necessary.
+	 */
+	private void reduceRuns()
+	{
+		while (this.runs.size() >= this.maxFanIn)
+		{
+			int numberOfRuns = Math.min(this.maxFanIn, this.runs.size() - this.maxFanIn + 2);
+			List<File> files = new ArrayList<>(this.runs.subList(0, numberOfRuns));
+			MergedRuns<E> mergedRuns = new MergedRuns<>(this.openRuns(files), this.comparator);
+			try
+			{
+				this.writeRun(mergedRuns);
+			}
+			finally
+			{
+				mergedRuns.close();
+			}
+
+			this.runs.removeAll(files);
+			files.forEach(File::delete);
+		}
+	}
+
+	private List<Run<E>> openRuns(List<File> files)
+	{
+		List<Run<E>> retlist = new ArrayList<>();
+		try
+		{
+			for (File file : files)
+			{
+				retlist.add(this.openRun(file));
+			}
+		} catch (RuntimeException e)
+		{
+			retlist.forEach(Run::close);
+			throw e;
+		}
+		return retlist;
+	}
+
+	/**
+	 * Returns all added records in sorted order. Must only be called once, after all records are added.
+	 *
+	 * @return
+	 * @throws UncheckedIOException
+	 *             if a spilled run can not be read
+	 */
+	public Stream<E> stream()
+	{
+		this.buffer.sort(this.comparator);
+		if (this.runs.isEmpty())
+		{
+			return this.buffer.stream();
+		}
+
+		this.reduceRuns();
+		List<Run<E>> runs = this.openRuns(this.runs);
+		Iterator<E> bufferIterator = this.buffer.iterator();
+		runs.add(new Run<E>()
+		{
+			@Override
+			protected E readNext()
+			{
+				return bufferIterator.hasNext() ? bufferIterator.next() : null;
+			}
+		});
+
+		MergedRuns<E> mergedRuns = new MergedRuns<>(runs, this.comparator);
+		return StreamUtils	.generateStreamFromIterator(new Iterator<E>()
+							{
+								@Override
+								public boolean hasNext()
+								{
+									boolean retval = mergedRuns.hasNext();
+									if (!retval)
+									{
+										SpillingSorter.this.close();
+									}
+									return retval;
+								}
+
+								@Override
+								public E next()
+								{
+									return mergedRuns.next();
+								}
+							})
+							.onClose(() ->
+							{
+								mergedRuns.close();
+								this.close();
+							});
+	}
+
+	private Run<E> openRun(File file)
+	{
+		try
+		{
+			DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			return new Run<E>()
+			{
+				@Override
+				protected E readNext()
+				{
+					try
+					{
+						return input.readBoolean() ? SpillingSorter.this.codec.read(input) : null;
+					} catch (IOException e)
+					{
+						throw new UncheckedIOException(e);
+					}
+				}
+
+				@Override
+				protected void close()
+				{
+					try
+					{
+						input.close();
+					} catch (IOException e)
+					{
+						throw new UncheckedIOException(e);
+					}
+				}
+			};
+		} catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Deletes all spilled runs
+	 */
+	@Override
+	public void close()
+	{
+		for (File file : this.runs)
+		{
+			file.delete();
+		}
+		this.runs.clear();
+	}
+}
@@ -18,28 +18,46 @@
 */
 package org.omnaest.search.next;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import org.omnaest.search.classic.utils.SpillingSorter;
+import org.omnaest.search.classic.utils.SpillingSorter.RecordCodec;
+import org.omnaest.search.classic.utils.StreamUtils;
 import org.omnaest.search.next.utils.SingletonContainer;
+import org.omnaest.search.next.utils.WorkQueue;
 
-public class AdaptionIndex<C, R>
+public class AdaptionIndex<C, R> implements RepeatIndex<C, R>
 {
-	private SingletonContainer<Group<C, R>>	groupSingletons	= new SingletonContainer<>();
-	private SingletonContainer<Node<C, R>>	nodeSingletons	= new SingletonContainer<>();
+	private NodeStore<C, R> nodeStore = new NodeStore<>();
+
+	private int			explodeWorkers	= 1;
+	private Executor	explodeExecutor	= ForkJoinPool.commonPool();
+
+	private int		minOccurrences			= 2;
+	private int		maxLength				= Integer.MAX_VALUE;
+	private boolean	maximalRepeatsFilter	= false;
 
 	protected static class CodeAndPosition<C>
 	{
@@ -115,61 +133,79 @@ public class AdaptionIndex<C, R>
 
 	}
 
-	protected static class LinkedCodeAndPosition<C>
+	protected static interface Group<C, R>
 	{
-		private CodeAndPosition<C>			codeAndPosition;
-		private LinkedCodeAndPosition<C>	previous;
-		private LinkedCodeAndPosition<C>	next;
+		Set<Node<C, R>> getNodes();
 
-		public LinkedCodeAndPosition(CodeAndPosition<C> codeAndPosition)
-		{
-			super();
-			this.codeAndPosition = codeAndPosition;
-		}
+		int getNumberOfNodes();
 
-		public CodeAndPosition<C> getCodeAndPosition()
-		{
-			return this.codeAndPosition;
-		}
+	}
 
-		public LinkedCodeAndPosition<C> getPrevious()
+	/**
+	 * Accessor of the code sequence all {@link Node}s of a {@link Group} share
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 */
+	protected static interface CodeSequenceProvider<C>
+	{
+		List<C> getCodeSequence();
+	}
+
+	protected static abstract class AbstractGroup<C, R> implements Group<C, R>
+	{
+		private Set<Node<C, R>> nodes = Collections.synchronizedSet(new HashSet<>());
+
+		public void addNode(Node<C, R> node)
 		{
-			return this.previous;
+			this.nodes.add(node);
 		}
 
-		public LinkedCodeAndPosition<C> getNext()
+		@Override
+		public Set<Node<C, R>> getNodes()
 		{
-			return this.next;
+			return this.nodes;
 		}
 
-		public LinkedCodeAndPosition<C> setPrevious(LinkedCodeAndPosition<C> previous)
+		@Override
+		public int getNumberOfNodes()
 		{
-			this.previous = previous;
-			return this;
+			return this.nodes.size();
 		}
+	}
+
+	protected static class CodeSequenceGroup<C, R> extends AbstractGroup<C, R> implements CodeSequenceProvider<C>
+	{
+		private List<C>	codeSequence;
+		private int		hash;
 
-		public LinkedCodeAndPosition<C> setPreviousAndSetThisForItsNext(LinkedCodeAndPosition<C> previous)
+		public CodeSequenceGroup(List<C> codeSequence)
 		{
-			this.previous = previous;
-			if (previous != null)
-			{
-				previous.setNext(this);
-			}
-			return this;
+			super();
+			this.codeSequence = codeSequence;
+			this.hash = this.determineHashCode();
 		}
 
-		public LinkedCodeAndPosition<C> setNext(LinkedCodeAndPosition<C> next)
+		@Override
+		public List<C> getCodeSequence()
 		{
-			this.next = next;
-			return this;
+			return this.codeSequence;
 		}
 
+		/**
+		 * Returns the hash of the code sequence, which is computed once on creation
+		 */
 		@Override
 		public int hashCode()
+		{
+			return this.hash;
+		}
+
+		private int determineHashCode()
 		{
 			final int prime = 31;
 			int result = 1;
-			result = prime * result + ((this.codeAndPosition == null) ? 0 : this.codeAndPosition.hashCode());
+			result = prime * result + ((this.codeSequence == null) ? 0 : this.codeSequence.hashCode());
 			return result;
 		}
 
@@ -188,94 +224,96 @@ public class AdaptionIndex<C, R>
 			{
 				return false;
 			}
-			LinkedCodeAndPosition<?> other = (LinkedCodeAndPosition<?>) obj;
-			if (this.codeAndPosition == null)
+			CodeSequenceGroup<?, ?> other = (CodeSequenceGroup<?, ?>) obj;
+			if (this.codeSequence == null)
 			{
-				if (other.codeAndPosition != null)
+				if (other.codeSequence != null)
 				{
 					return false;
 				}
 			}
-			else if (!this.codeAndPosition.equals(other.codeAndPosition))
+			else if (!this.codeSequence.equals(other.codeSequence))
 			{
 				return false;
 			}
 			return true;
 		}
 
+		@Override
+		public String toString()
+		{
+			return "CodeSequenceGroup [codeSequence=" + this.codeSequence + "]";
+		}
+
 	}
 
-	protected static class CodeSequenceAndReference<C, R>
+	/**
+	 * View of a group within a {@link NodeStore}, which determines its code sequence and its {@link Node}s only on first access
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
+	protected static class StoredGroup<C, R> implements Group<C, R>, CodeSequenceProvider<C>
 	{
-		private List<C>	codeSequence;
-		private R		reference;
+		private NodeStore<C, R>	nodeStore;
+		private int				group;
+
+		private volatile List<C>			codeSequence;
+		private volatile Set<Node<C, R>>	nodes;
 
-		public CodeSequenceAndReference(List<C> codeSequence, R reference)
+		public StoredGroup(NodeStore<C, R> nodeStore, int group)
 		{
 			super();
-			this.codeSequence = codeSequence;
-			this.reference = reference;
+			this.nodeStore = nodeStore;
+			this.group = group;
 		}
 
-		public List<C> getCodeSequence()
+		public NodeStore<C, R> getNodeStore()
 		{
-			return this.codeSequence;
+			return this.nodeStore;
 		}
 
-		public R getReference()
+		public int getGroup()
 		{
-			return this.reference;
+			return this.group;
 		}
 
-	}
-
-	protected static interface Group<C, R>
-	{
-		Set<Node<C, R>> getNodes();
-
-		void addNode(Node<C, R> node);
-
-	}
-
-	protected static abstract class AbstractGroup<C, R> implements Group<C, R>
-	{
-		private Set<Node<C, R>> nodes = Collections.synchronizedSet(new HashSet<>());
-
 		@Override
-		public void addNode(Node<C, R> node)
+		public List<C> getCodeSequence()
 		{
-			this.nodes.add(node);
+			if (this.codeSequence == null)
+			{
+				this.codeSequence = this.nodeStore.getCodeSequence(this.group);
+			}
+			return this.codeSequence;
 		}
 
 		@Override
 		public Set<Node<C, R>> getNodes()
 		{
+			if (this.nodes == null)
+			{
+				Set<Node<C, R>> nodes = new LinkedHashSet<>();
+				for (int node : this.nodeStore.getNodes(this.group))
+				{
+					nodes.add(this.nodeStore.createNode(node));
+				}
+				this.nodes = Collections.unmodifiableSet(nodes);
+			}
 			return this.nodes;
 		}
-	}
-
-	protected static class CodeSequenceGroup<C, R> extends AbstractGroup<C, R>
-	{
-		private List<C> codeSequence;
 
-		public CodeSequenceGroup(List<C> codeSequence)
-		{
-			super();
-			this.codeSequence = codeSequence;
-		}
-
-		public List<C> getCodeSequence()
+		@Override
+		public int getNumberOfNodes()
 		{
-			return this.codeSequence;
+			return this.nodeStore.getNumberOfNodes(this.group);
 		}
 
 		@Override
 		public int hashCode()
 		{
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ((this.codeSequence == null) ? 0 : this.codeSequence.hashCode());
-			return result;
+			return this.nodeStore.getGroupHash(this.group);
 		}
 
 		@Override
@@ -285,106 +323,101 @@ public class AdaptionIndex<C, R>
 			{
 				return true;
 			}
-			if (obj == null)
+			if (obj == null || this.getClass() != obj.getClass())
 			{
 				return false;
 			}
-			if (this.getClass() != obj.getClass())
+			StoredGroup<?, ?> other = (StoredGroup<?, ?>) obj;
+			if (this.nodeStore == other.nodeStore)
 			{
-				return false;
+				return this.group == other.group;
 			}
-			CodeSequenceGroup<?, ?> other = (CodeSequenceGroup<?, ?>) obj;
-			if (this.codeSequence == null)
-			{
-				if (other.codeSequence != null)
-				{
-					return false;
-				}
-			}
-			else if (!this.codeSequence.equals(other.codeSequence))
-			{
-				return false;
-			}
-			return true;
+			return this.hashCode() == other.hashCode() && this	.getCodeSequence()
+																.equals(other.getCodeSequence());
 		}
 
 		@Override
 		public String toString()
 		{
-			return "CodeSequenceGroup [codeSequence=" + this.codeSequence + "]";
+			return "CodeSequenceGroup [codeSequence=" + this.getCodeSequence() + "]";
 		}
-
 	}
 
+	/**
+	 * Span of a start index and a size over an indexed {@link List} of {@link CodeAndPosition}s, which is shared by all spans of the same code sequence. The
+	 * left and right side expansions are determined in constant time, the code sequence is determined once and the hash code is cached.
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 */
 	protected static class LinkedCodeAndPositionSequence<C>
 	{
-		private LinkedCodeAndPosition<C>	startLinkedCodeAndPosition;
+		private List<CodeAndPosition<C>>	codeAndPositions;
+		private int							start;
 		private int							size;
 
-		public LinkedCodeAndPositionSequence(LinkedCodeAndPosition<C> startLinkedCodeAndPosition, int size)
+		private int					hash;
+		private volatile List<C>	codeSequence;
+
+		public LinkedCodeAndPositionSequence(List<CodeAndPosition<C>> codeAndPositions, int start, int size)
 		{
 			super();
-			this.startLinkedCodeAndPosition = startLinkedCodeAndPosition;
+			this.codeAndPositions = codeAndPositions;
+			this.start = start;
 			this.size = size;
+			this.hash = this.determineHashCode();
 		}
 
 		public List<C> getCodeSequence()
 		{
-			return this	.getCodeAndPositionSequence()
-						.stream()
-						.map(codeAndPositon -> codeAndPositon.getCode())
-						.collect(Collectors.toList());
+			if (this.codeSequence == null)
+			{
+				this.codeSequence = Collections.unmodifiableList(this	.getCodeAndPositionSequence()
+																		.stream()
+																		.map(codeAndPositon -> codeAndPositon.getCode())
+																		.collect(Collectors.toList()));
+			}
+			return this.codeSequence;
 		}
 
 		public LinkedCodeAndPositionSequence<C> getLeftSideExpansion()
 		{
-			LinkedCodeAndPosition<C> previous = this.startLinkedCodeAndPosition.getPrevious();
-			return previous != null ? new LinkedCodeAndPositionSequence<>(previous, this.size + 1) : null;
+			return this.start > 0 ? new LinkedCodeAndPositionSequence<>(this.codeAndPositions, this.start - 1, this.size + 1) : null;
 		}
 
 		public LinkedCodeAndPositionSequence<C> getRightSideExpansion()
 		{
-			LinkedCodeAndPosition<C> rightSideLinkedCodeAndPosition = this.getRightSideLinkedCodeAndPosition();
-			LinkedCodeAndPosition<C> next = rightSideLinkedCodeAndPosition != null ? rightSideLinkedCodeAndPosition.getNext() : null;
-			return next != null ? new LinkedCodeAndPositionSequence<>(this.startLinkedCodeAndPosition, this.size + 1) : null;
+			return this.start + this.size < this.codeAndPositions.size()
+					? new LinkedCodeAndPositionSequence<>(this.codeAndPositions, this.start, this.size + 1)
+					: null;
 		}
 
-		private LinkedCodeAndPosition<C> getRightSideLinkedCodeAndPosition()
+		public List<CodeAndPosition<C>> getCodeAndPositionSequence()
 		{
-			LinkedCodeAndPosition<C> retval = this.startLinkedCodeAndPosition;
-
-			for (int ii = 0; ii < this.size - 1; ii++)
-			{
-				retval = retval != null ? retval.getNext() : null;
-			}
-
-			return retval;
+			return Collections.unmodifiableList(this.codeAndPositions.subList(this.start, this.start + this.size));
 		}
 
-		public List<CodeAndPosition<C>> getCodeAndPositionSequence()
+		private CodeAndPosition<C> getStartCodeAndPosition()
 		{
-			List<CodeAndPosition<C>> retlist = new ArrayList<>();
-
-			LinkedCodeAndPosition<C> linkedCodeAndPosition = this.startLinkedCodeAndPosition;
-			for (int ii = 0; ii < this.size; ii++)
-			{
-				CodeAndPosition<C> codeAndPosition = linkedCodeAndPosition.getCodeAndPosition();
-				retlist.add(codeAndPosition);
-				linkedCodeAndPosition = linkedCodeAndPosition.getNext();
-			}
-			return retlist;
+			return this.size > 0 ? this.codeAndPositions.get(this.start) : null;
 		}
 
-		@Override
-		public int hashCode()
+		private int determineHashCode()
 		{
+			CodeAndPosition<C> startCodeAndPosition = this.getStartCodeAndPosition();
 			final int prime = 31;
 			int result = 1;
 			result = prime * result + this.size;
-			result = prime * result + ((this.startLinkedCodeAndPosition == null) ? 0 : this.startLinkedCodeAndPosition.hashCode());
+			result = prime * result + ((startCodeAndPosition == null) ? 0 : startCodeAndPosition.hashCode());
 			return result;
 		}
 
+		@Override
+		public int hashCode()
+		{
+			return this.hash;
+		}
+
 		@Override
 		public boolean equals(Object obj)
 		{
@@ -401,18 +434,19 @@ public class AdaptionIndex<C, R>
 				return false;
 			}
 			LinkedCodeAndPositionSequence<?> other = (LinkedCodeAndPositionSequence<?>) obj;
-			if (this.size != other.size)
+			if (this.size != other.size || this.hash != other.hash)
 			{
 				return false;
 			}
-			if (this.startLinkedCodeAndPosition == null)
+			CodeAndPosition<C> startCodeAndPosition = this.getStartCodeAndPosition();
+			if (startCodeAndPosition == null)
 			{
-				if (other.startLinkedCodeAndPosition != null)
+				if (other.getStartCodeAndPosition() != null)
 				{
 					return false;
 				}
 			}
-			else if (!this.startLinkedCodeAndPosition.equals(other.startLinkedCodeAndPosition))
+			else if (!startCodeAndPosition.equals(other.getStartCodeAndPosition()))
 			{
 				return false;
 			}
@@ -421,76 +455,49 @@ public class AdaptionIndex<C, R>
 
 	}
 
+	/**
+	 * View of a single occurrence of a code sequence within an analyzed code sequence. Views of different analyzed code sequences are never equal, even if
+	 * their positions are.
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
 	protected static class Node<C, R>
 	{
 		private LinkedCodeAndPositionSequence<C>	linkedCodeAndPositionSequence;
-		private Set<Group<C, R>>					groups		= Collections.synchronizedSet(new HashSet<>());
-		private List<Node<C, R>>					origins		= Collections.synchronizedList(new ArrayList<>());
-		private List<Node<C, R>>					descendants	= Collections.synchronizedList(new ArrayList<>());
-		private Set<R>								references	= Collections.synchronizedSet(new LinkedHashSet<>());
-
-		private AtomicBoolean exploded = new AtomicBoolean(false);
-
-		public static interface ExplodeOperation
-		{
-			void explode();
-		}
+		private int									sequence;
+		private R									reference;
 
-		public Node(LinkedCodeAndPositionSequence<C> linkedCodeAndPositionSequence)
+		/**
+		 * @param linkedCodeAndPositionSequence
+		 *            with positions relative to the analyzed code sequence
+		 * @param sequence
+		 *            number of the analyzed code sequence
+		 * @param reference
+		 *            of the analyzed code sequence
+		 */
+		public Node(LinkedCodeAndPositionSequence<C> linkedCodeAndPositionSequence, int sequence, R reference)
 		{
 			super();
 			this.linkedCodeAndPositionSequence = linkedCodeAndPositionSequence;
+			this.sequence = sequence;
+			this.reference = reference;
 		}
 
-		public boolean isExploded()
-		{
-			return this.exploded.get();
-		}
-
-		public void explodeAndExecuteIfNotExploded(ExplodeOperation operation)
-		{
-			if (!this.exploded.getAndSet(true))
-			{
-				operation.explode();
-			}
-		}
-
-		public Set<Group<C, R>> getGroups()
-		{
-			return this.groups;
-		}
-
-		public List<Node<C, R>> getOrigins()
+		public int getSequence()
 		{
-			return this.origins;
+			return this.sequence;
 		}
 
-		public List<Node<C, R>> getDescendants()
+		public R getReference()
 		{
-			return this.descendants;
+			return this.reference;
 		}
 
 		public Set<R> getReferences()
 		{
-			return this.references;
-		}
-
-		public Node<C, R> addReferences(Collection<R> references)
-		{
-			if (references != null)
-			{
-				for (R reference : references)
-				{
-					this.addReference(reference);
-				}
-			}
-			return this;
-		}
-
-		public Node<C, R> addReference(R reference)
-		{
-			this.references.add(reference);
-			return this;
+			return Collections.singleton(this.reference);
 		}
 
 		public LinkedCodeAndPositionSequence<C> getLinkedCodeAndPositionSequence()
@@ -498,23 +505,12 @@ public class AdaptionIndex<C, R>
 			return this.linkedCodeAndPositionSequence;
 		}
 
-		/**
-		 * Returns true, if the {@link Group} was not present already and was added, otherwise false
-		 *
-		 * @param group
-		 * @return
-		 */
-		public boolean addGroup(Group<C, R> group)
-		{
-			return this.groups.add(group);
-		}
-
 		@Override
 		public String toString()
 		{
 			return "Node [" + this	.getLinkedCodeAndPositionSequence()
 									.getCodeAndPositionSequence()
-					+ "," + this.references + "]";
+					+ "," + this.getReferences() + "]";
 		}
 
 		@Override
@@ -523,6 +519,7 @@ public class AdaptionIndex<C, R>
 			final int prime = 31;
 			int result = 1;
 			result = prime * result + ((this.linkedCodeAndPositionSequence == null) ? 0 : this.linkedCodeAndPositionSequence.hashCode());
+			result = prime * result + this.sequence;
 			return result;
 		}
 
@@ -542,6 +539,10 @@ public class AdaptionIndex<C, R>
 				return false;
 			}
 			Node<?, ?> other = (Node<?, ?>) obj;
+			if (this.sequence != other.sequence)
+			{
+				return false;
+			}
 			if (this.linkedCodeAndPositionSequence == null)
 			{
 				if (other.linkedCodeAndPositionSequence != null)
@@ -558,161 +559,333 @@ public class AdaptionIndex<C, R>
 
 	}
 
-	protected static interface NodeOperator<C, R>
-	{
-		int getOccurenceNumber();
-
-		boolean isExploded();
-
-		void explode();
-
-		boolean hasGroup();
-
-		void generateAndLinkToGroup();
-	}
-
+	/**
+	 * Analyzes the given code sequence of the given reference. This method is thread safe, so multiple code sequences can be analyzed concurrently by
+	 * calling it from multiple threads, e.g. from a parallel {@link Stream}. The {@link MatchGroup}s should be extracted after all calls are completed.
+	 */
+	@Override
 	public AdaptionIndex<C, R> analyze(Stream<C> codeSequence, R reference)
 	{
 		if (codeSequence != null)
 		{
-			CodeSequenceAndReference<C, R> codeSequenceAndReference = new CodeSequenceAndReference<>(codeSequence.collect(Collectors.toList()), reference);
-
-			AtomicInteger position = new AtomicInteger();
-			AtomicReference<LinkedCodeAndPosition<C>> previous = new AtomicReference<>();
-			this.analyze(codeSequenceAndReference	.getCodeSequence()
-													.stream()
-													.map(code -> new CodeAndPosition<>(code, position.getAndIncrement()))
-													.map(codeAndPosition -> new LinkedCodeAndPosition<>(codeAndPosition).setPreviousAndSetThisForItsNext(previous.get()))
-													.peek(linkedCodeAndPosition -> previous.set(linkedCodeAndPosition))
-													.map(linkedCodeAndPosition -> new LinkedCodeAndPositionSequence<>(linkedCodeAndPosition, 1))
-													.map(linkedCodeAndPositionSequence -> this.createOrGetSingletonNode(linkedCodeAndPositionSequence,
-																														codeSequenceAndReference.getReference())));
+			int[] codeIds = codeSequence.mapToInt(this.nodeStore::getOrCreateCodeId)
+										.toArray();
+			int start = this.nodeStore.addSequence(reference, codeIds, codeIds.length);
+			this.explode(IntStream	.range(start, start + codeIds.length)
+									.map(position -> this.nodeStore.getOrCreateNode(position, 1)));
 		}
 		return this;
 	}
 
-	private Node<C, R> createOrGetSingletonNode(LinkedCodeAndPositionSequence<C> linkedCodeAndPositionSequence, R reference)
-	{
-		return this.createOrGetSingletonNode(linkedCodeAndPositionSequence, Arrays.asList(reference));
-	}
-
-	private Node<C, R> createOrGetSingletonNode(LinkedCodeAndPositionSequence<C> linkedCodeAndPositionSequence, Collection<R> references)
+	/**
+	 * Analyzes the given code sequence of the given reference in chunks of the given size, so the code sequence is never materialized as a whole.
+	 * {@link MatchGroup}s are passed to the given listener as soon as they are confirmed as repeat.
+	 *
+	 * @see #openStreamingAnalysis(Object, int, Consumer)
+	 * @param codeSequence
+	 * @param reference
+	 * @param chunkSize
+	 * @param confirmedGroupListener
+	 * @return
+	 */
+	public AdaptionIndex<C, R> analyze(Stream<C> codeSequence, R reference, int chunkSize, Consumer<? super MatchGroup<C, R>> confirmedGroupListener)
 	{
-		return this.nodeSingletons.returnAsSingleton(new Node<C, R>(linkedCodeAndPositionSequence).addReferences(references));
-	}
-
-	protected void analyze(Stream<Node<C, R>> nodes)
-	{
-		if (nodes != null)
+		try (StreamingAnalysis streamingAnalysis = this.openStreamingAnalysis(reference, chunkSize, confirmedGroupListener))
 		{
-			nodes.forEach(this::analyze);
+			codeSequence.forEachOrdered(streamingAnalysis::add);
 		}
+		return this;
 	}
 
-	protected void analyze(Node<C, R> node)
+	/**
+	 * Opens a {@link StreamingAnalysis} of a code sequence of the given reference, whose codes are added incrementally. The codes are buffered and
+	 * analyzed in chunks of the given size. In contrast to {@link #analyze(Stream, Object)}, a {@link StreamingAnalysis} must not run concurrently with
+	 * the analysis of other code sequences of this {@link AdaptionIndex}.
+	 *
+	 * @param reference
+	 * @param chunkSize
+	 * @param confirmedGroupListener
+	 *            optional listener, which receives every {@link MatchGroup} once, as soon as it is confirmed as repeat
+	 * @return
+	 */
+	public StreamingAnalysis openStreamingAnalysis(R reference, int chunkSize, Consumer<? super MatchGroup<C, R>> confirmedGroupListener)
 	{
-		NodeOperator<C, R> nodeOperator = this.wrapNodeInOperator(node);
+		return new StreamingAnalysis(this.nodeStore.openSequence(reference), chunkSize, confirmedGroupListener);
+	}
 
-		if (!nodeOperator.hasGroup())
-		{
-			nodeOperator.generateAndLinkToGroup();
-		}
+	/**
+	 * Incremental analysis of a single code sequence, opened by {@link AdaptionIndex#openStreamingAnalysis(Object, int, Consumer)}.<br>
+	 * <br>
+	 * Every full chunk of codes is appended to the code sequence and exploded before further codes are buffered. The only state kept between chunks are
+	 * the exploded nodes at the end of the code sequence, whose right side expansions are exploded with the next chunk. The {@link MatchGroup}s passed
+	 * to the listener are views, whose occurrence number grows with further chunks.
+	 *
+	 * @author Omnaest
+	 */
+	public class StreamingAnalysis implements AutoCloseable
+	{
+		private int									sequence;
+		private int[]								codeIds;
+		private int									length			= 0;
+		private List<Integer>						boundaryNodes	= new ArrayList<>();
+		private Consumer<? super MatchGroup<C, R>>	confirmedGroupListener;
+		private boolean								closed			= false;
 
-		int occurences = nodeOperator.getOccurenceNumber();
-		if (occurences > 1)
+		protected StreamingAnalysis(int sequence, int chunkSize, Consumer<? super MatchGroup<C, R>> confirmedGroupListener)
 		{
-			boolean exploded = nodeOperator.isExploded();
-			if (!exploded)
+			super();
+			if (chunkSize < 1)
 			{
-				nodeOperator.explode();
+				throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
 			}
+			this.sequence = sequence;
+			this.codeIds = new int[chunkSize];
+			this.confirmedGroupListener = confirmedGroupListener;
 		}
-	}
 
-	private NodeOperator<C, R> wrapNodeInOperator(Node<C, R> node)
-	{
-		NodeOperator<C, R> nodeOperator = new NodeOperator<C, R>()
+		/**
+		 * Adds the given code, which analyzes the buffered chunk if it is full
+		 *
+		 * @param code
+		 * @return
+		 */
+		public StreamingAnalysis add(C code)
 		{
-			@Override
-			public int getOccurenceNumber()
+			if (this.closed)
 			{
-				return node	.getGroups()
-							.stream()
-							.map(group -> group	.getNodes()
-												.size())
-							.mapToInt(occurence -> occurence)
-							.max()
-							.orElseGet(() -> 0);
+				throw new IllegalStateException("Streaming analysis is closed");
 			}
-
-			@Override
-			public boolean isExploded()
+			this.codeIds[this.length++] = AdaptionIndex.this.nodeStore.getOrCreateCodeId(code);
+			if (this.length == this.codeIds.length)
 			{
-				return node.isExploded();
+				this.flush();
 			}
+			return this;
+		}
 
-			@Override
-			public void explode()
+		/**
+		 * Analyzes the buffered codes
+		 *
+		 * @return
+		 */
+		public StreamingAnalysis flush()
+		{
+			if (this.length > 0)
 			{
-				node.explodeAndExecuteIfNotExploded(() ->
+				NodeStore<C, R> nodeStore = AdaptionIndex.this.nodeStore;
+				int start = nodeStore.appendToSequence(this.sequence, this.codeIds, this.length);
+				IntStream rightSideExpansions = this.boundaryNodes	.stream()
+																	.mapToInt(nodeStore::getOrCreateRightSideExpansion)
+																	.filter(node -> node != NodeStore.NONE);
+				IntStream nodes = IntStream.concat(	IntStream	.range(start, start + this.length)
+																.map(position -> nodeStore.getOrCreateNode(position, 1)),
+													rightSideExpansions);
+
+				Collection<Integer> boundaryNodes = new ConcurrentLinkedQueue<>();
+				Collection<Integer> confirmedGroups = new ConcurrentLinkedQueue<>();
+				AdaptionIndex.this.explode(nodes, boundaryNodes, confirmedGroups);
+				this.boundaryNodes = new ArrayList<>(boundaryNodes);
+				this.length = 0;
+
+				if (this.confirmedGroupListener != null)
 				{
-					LinkedCodeAndPositionSequence<C> linkedCodeAndPositionSequence = node.getLinkedCodeAndPositionSequence();
-					LinkedCodeAndPositionSequence<C> leftSideExpansion = linkedCodeAndPositionSequence.getLeftSideExpansion();
-					LinkedCodeAndPositionSequence<C> rightSideExpansion = linkedCodeAndPositionSequence.getRightSideExpansion();
-
-					if (leftSideExpansion != null)
-					{
-						Node<C, R> leftSideNode = AdaptionIndex.this.createOrGetSingletonNode(leftSideExpansion, node.getReferences());
-						AdaptionIndex.this.analyze(leftSideNode);
-					}
-					if (rightSideExpansion != null)
+					for (int group : confirmedGroups)
 					{
-						Node<C, R> rightSideNode = rightSideExpansion != null
-								? AdaptionIndex.this.createOrGetSingletonNode(rightSideExpansion, node.getReferences()) : null;
-						AdaptionIndex.this.analyze(rightSideNode);
+						this.confirmedGroupListener.accept(new MatchGroupImpl<>(new StoredGroup<>(nodeStore, group)));
 					}
-
-					node.getGroups()
-						.stream()
-						.flatMap(group -> group	.getNodes()
-												.stream())
-						.map(node -> AdaptionIndex.this.wrapNodeInOperator(node))
-						.forEach(nodeOperator -> nodeOperator.explode());
-				});
+				}
 			}
+			return this;
+		}
 
-			@Override
-			public boolean hasGroup()
+		/**
+		 * Analyzes the remaining buffered codes and closes this {@link StreamingAnalysis}
+		 */
+		@Override
+		public void close()
+		{
+			if (!this.closed)
 			{
-				return !node.getGroups()
-							.isEmpty();
+				this.flush();
+				this.boundaryNodes.clear();
+				this.closed = true;
 			}
+		}
+	}
 
-			@Override
-			public void generateAndLinkToGroup()
+	/**
+	 * Sets the number of workers which explode the {@link Node}s of each analyzed code sequence. The current thread is one of the workers, the further
+	 * workers are started on the {@link ForkJoinPool#commonPool()}.
+	 *
+	 * @see #withExplodeWorkers(int, Executor)
+	 * @param workers
+	 * @return
+	 */
+	public AdaptionIndex<C, R> withExplodeWorkers(int workers)
+	{
+		return this.withExplodeWorkers(workers, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Sets the number of workers which explode the {@link Node}s of each analyzed code sequence. The current thread is one of the workers, the further
+	 * workers are started on the given {@link Executor}. The default is a single worker.
+	 *
+	 * @param workers
+	 * @param executor
+	 * @return
+	 */
+	public AdaptionIndex<C, R> withExplodeWorkers(int workers, Executor executor)
+	{
+		this.explodeWorkers = Math.max(1, workers);
+		this.explodeExecutor = executor;
+		return this;
+	}
+
+	/**
+	 * Sets the minimum number of occurrences a group needs, before its {@link Node}s are expanded further. Repeats with fewer occurrences are not grown
+	 * beyond their single codes. The default and minimum is 2.
+	 *
+	 * @param minOccurrences
+	 * @return
+	 */
+	public AdaptionIndex<C, R> withMinOccurrences(int minOccurrences)
+	{
+		this.minOccurrences = Math.max(2, minOccurrences);
+		return this;
+	}
+
+	/**
+	 * Sets the maximum length of the code sequences of the {@link Node}s, which are not expanded further once they reach it. The default is unlimited.
+	 *
+	 * @param maxLength
+	 * @return
+	 */
+	public AdaptionIndex<C, R> withMaxLength(int maxLength)
+	{
+		this.maxLength = Math.max(1, maxLength);
+		return this;
+	}
+
+	/**
+	 * If set to true, the extraction methods like {@link #extractGroups()} filter their output down to maximal repeats, which are repeats whose
+	 * occurrences can neither all be expanded by the same code to the left nor all be expanded by the same code to the right.<br>
+	 * <br>
+	 * This is only an output filter: the analysis still creates and keeps all groups including the non maximal ones, as further expansions build on them,
+	 * so it does not reduce the memory consumption or the analysis time. Use {@link #withMinOccurrences(int)} or {@link #withMaxLength(int)} for that.
+	 *
+	 * @param maximalRepeatsFilter
+	 * @return
+	 */
+	public AdaptionIndex<C, R> withMaximalRepeatsOutputFilter(boolean maximalRepeatsFilter)
+	{
+		this.maximalRepeatsFilter = maximalRepeatsFilter;
+		return this;
+	}
+
+	/**
+	 * Analyzes the given nodes of the {@link NodeStore} and drains all resulting node expansions through a {@link WorkQueue}, so the depth of the stack
+	 * does not depend on the length of the repeats
+	 *
+	 * @param nodes
+	 */
+	protected void explode(IntStream nodes)
+	{
+		this.explode(nodes, null, null);
+	}
+
+	/**
+	 * Similar to {@link #explode(IntStream)}, but collects the exploded nodes without a right side expansion and the newly confirmed groups
+	 *
+	 * @param nodes
+	 * @param boundaryNodes
+	 *            optional
+	 * @param confirmedGroups
+	 *            optional
+	 */
+	protected void explode(IntStream nodes, Collection<Integer> boundaryNodes, Collection<Integer> confirmedGroups)
+	{
+		WorkQueue<Integer> workQueue = new WorkQueue<>();
+		nodes.forEach(workQueue::add);
+		workQueue.drain(node -> this.analyze(node, workQueue, boundaryNodes, confirmedGroups), this.explodeWorkers, this.explodeExecutor);
+	}
+
+	/**
+	 * Links the given node to its group. If the group has at least the minimum number of occurrences and the node is not exploded yet, the left and
+	 * right side expansions of the node are added to the {@link WorkQueue}, unless it has the maximum length. The other nodes of the group are added
+	 * once, when the group reaches the minimum number of occurrences, and every node linked afterwards explodes itself, so each node of a group is only
+	 * added once.
+	 *
+	 * @param node
+	 * @param workQueue
+	 * @param boundaryNodes
+	 *            optional collection of the exploded nodes, which have no right side expansion yet
+	 * @param confirmedGroups
+	 *            optional collection of the groups, which are confirmed as repeat by the given node
+	 */
+	protected void analyze(int node, WorkQueue<Integer> workQueue, Collection<Integer> boundaryNodes, Collection<Integer> confirmedGroups)
+	{
+		NodeStore<C, R> nodeStore = this.nodeStore;
+		int group = nodeStore.linkToGroup(node);
+		if (confirmedGroups != null && nodeStore.markConfirmed(group))
+		{
+			confirmedGroups.add(group);
+		}
+		if (nodeStore.markGroupExploded(group, this.minOccurrences))
+		{
+			for (int groupNode : nodeStore.getNodes(group))
 			{
-				if (!this.hasGroup())
+				if (groupNode != node)
 				{
-					//
-					Group<C, R> group = new CodeSequenceGroup<>(node.getLinkedCodeAndPositionSequence()
-																	.getCodeSequence());
-					group = AdaptionIndex.this.groupSingletons.returnAsSingleton(group);
-
-					//
-					boolean added = node.addGroup(group);
-					if (added)
-					{
-						group.addNode(node);
-					}
+					workQueue.add(groupNode);
 				}
 			}
-		};
-		return nodeOperator;
+		}
+		if (nodeStore.getNumberOfNodes(group) >= this.minOccurrences && nodeStore.markExploded(node))
+		{
+			if (nodeStore.getLength(node) < this.maxLength)
+			{
+				int leftSideExpansion = nodeStore.getOrCreateLeftSideExpansion(node);
+				if (leftSideExpansion != NodeStore.NONE)
+				{
+					workQueue.add(leftSideExpansion);
+				}
+				int rightSideExpansion = nodeStore.getOrCreateRightSideExpansion(node);
+				if (rightSideExpansion != NodeStore.NONE)
+				{
+					workQueue.add(rightSideExpansion);
+				}
+				else if (boundaryNodes != null)
+				{
+					boundaryNodes.add(node);
+				}
+			}
+		}
 	}
 
+	/**
+	 * Returns a {@link SingletonContainer} with a view of every {@link Group}, which is created on every call
+	 *
+	 * @deprecated the views of all {@link Group}s are materialized on every call, use {@link #extractGroups()} instead
+	 * @return
+	 */
+	@Deprecated
 	public SingletonContainer<Group<C, R>> getGroupSingletons()
 	{
-		return this.groupSingletons;
+		SingletonContainer<Group<C, R>> retval = new SingletonContainer<>();
+		this.getGroups()
+			.forEach(retval::returnAsSingleton);
+		return retval;
+	}
+
+	/**
+	 * Returns a view of every {@link Group}
+	 *
+	 * @return
+	 */
+	protected Stream<Group<C, R>> getGroups()
+	{
+		return IntStream.range(0, this.nodeStore.getGroupCount())
+						.mapToObj(group -> new StoredGroup<>(this.nodeStore, group));
 	}
 
 	public static interface MatchGroup<C, R>
@@ -739,9 +912,9 @@ public class AdaptionIndex<C, R>
 
 		protected static class MatchGroupCodeSequenceImpl<C, R> implements MatchGroupCodeSequence<C, R>
 		{
-			private CodeSequenceGroup<C, R> group;
+			private CodeSequenceProvider<C> group;
 
-			public MatchGroupCodeSequenceImpl(CodeSequenceGroup<C, R> group)
+			public MatchGroupCodeSequenceImpl(CodeSequenceProvider<C> group)
 			{
 				super();
 				this.group = group;
@@ -783,20 +956,20 @@ public class AdaptionIndex<C, R>
 		@Override
 		public int getOccurrenceNumber()
 		{
-			return this.group	.getNodes()
-								.size();
+			return this.group.getNumberOfNodes();
 		}
 
 		@Override
 		public boolean isCodeSequenceGroup()
 		{
-			return this.group instanceof CodeSequenceGroup;
+			return this.group instanceof CodeSequenceProvider;
 		}
 
+		@SuppressWarnings("unchecked")
 		@Override
 		public MatchGroupCodeSequence<C, R> asCodeSequenceGroup()
 		{
-			return new MatchGroupCodeSequenceImpl<>((CodeSequenceGroup<C, R>) this.group);
+			return new MatchGroupCodeSequenceImpl<>((CodeSequenceProvider<C>) this.group);
 		}
 
 	}
@@ -832,6 +1005,7 @@ public class AdaptionIndex<C, R>
 
 	}
 
+	@Override
 	public Stream<? extends MatchGroup<C, R>> extractGroups()
 	{
 		return this.extractGroups(group -> new MatchGroupImpl<>(group));
@@ -839,81 +1013,343 @@ public class AdaptionIndex<C, R>
 
 	protected <MG extends MatchGroup<C, R>> Stream<MG> extractGroups(Function<Group<C, R>, MG> mapper)
 	{
-		return this.groupSingletons	.getElements()
-									.map(mapper);
+		return this.toMatchGroups(IntStream.range(0, this.nodeStore.getGroupCount()), mapper);
+	}
+
+	/**
+	 * Returns the {@link MatchGroup}s with at least the given number of occurrences, which must be at least 2, in descending order of their
+	 * occurrences. The groups are read from an index, which is updated incrementally while analyzing, so the groups with fewer occurrences are not
+	 * scanned.
+	 *
+	 * @param minOccurrences
+	 * @return
+	 */
+	public Stream<? extends MatchGroup<C, R>> extractGroups(int minOccurrences)
+	{
+		return this.extractGroups(minOccurrences, group -> new MatchGroupImpl<>(group));
+	}
+
+	protected <MG extends MatchGroup<C, R>> Stream<MG> extractGroups(int minOccurrences, Function<Group<C, R>, MG> mapper)
+	{
+		return this.toMatchGroups(this.nodeStore.getGroupsByOccurrences(minOccurrences), mapper);
+	}
+
+	/**
+	 * Returns the given number of most repeated {@link MatchGroup}s in descending order of their occurrences
+	 *
+	 * @see #extractGroups(int)
+	 * @param limit
+	 * @return
+	 */
+	public Stream<? extends MatchGroup<C, R>> extractMostRepeatedGroups(int limit)
+	{
+		return this	.extractGroups(2)
+					.limit(limit);
 	}
 
+	private <MG extends MatchGroup<C, R>> Stream<MG> toMatchGroups(IntStream groups, Function<Group<C, R>, MG> mapper)
+	{
+		NodeStore<C, R> nodeStore = this.nodeStore;
+		if (this.maximalRepeatsFilter)
+		{
+			groups = groups.filter(nodeStore::isMaximalRepeat);
+		}
+		return groups	.mapToObj(group -> new StoredGroup<>(nodeStore, group))
+						.map(mapper);
+	}
+
+	/**
+	 * Code and position sequences of the {@link Node}s of a left and a right {@link Group} with an equal code sequence. If created for a pair of
+	 * {@link Group}s, the sequences are only determined on first access.
+	 *
+	 * @author Omnaest
+	 * @param <C>
+	 * @param <R>
+	 */
 	public static class LeftAndRightReferences<C, R>
 	{
-		public Set<List<CodeAndPosition<C>>>	left;
-		public Set<List<CodeAndPosition<C>>>	right;
+		/**
+		 * Code and position sequences of the left {@link Group}. If created for a pair of {@link Group}s, this is null until {@link #getLeft()} has been
+		 * called.
+		 */
+		public volatile Set<List<CodeAndPosition<C>>>	left;
+		/**
+		 * Code and position sequences of the right {@link Group}. If created for a pair of {@link Group}s, this is null until {@link #getRight()} has been
+		 * called.
+		 */
+		public volatile Set<List<CodeAndPosition<C>>>	right;
+
+		private Group<C, R>	leftGroup;
+		private Group<C, R>	rightGroup;
 
 		public LeftAndRightReferences(Collection<List<CodeAndPosition<C>>> left, Collection<List<CodeAndPosition<C>>> right)
 		{
 			super();
-			this.left = left.stream()
-							.collect(Collectors.toSet());
-			this.right = right	.stream()
-								.collect(Collectors.toSet());
+			this.left = new LinkedHashSet<>(left);
+			this.right = new LinkedHashSet<>(right);
+		}
+
+		protected LeftAndRightReferences(Group<C, R> leftGroup, Group<C, R> rightGroup)
+		{
+			super();
+			this.leftGroup = leftGroup;
+			this.rightGroup = rightGroup;
 		}
 
 		public Set<List<CodeAndPosition<C>>> getLeft()
 		{
+			if (this.left == null)
+			{
+				this.left = determineCodeAndPositionSequences(this.leftGroup);
+			}
 			return this.left;
 		}
 
 		public Set<List<CodeAndPosition<C>>> getRight()
 		{
+			if (this.right == null)
+			{
+				this.right = determineCodeAndPositionSequences(this.rightGroup);
+			}
 			return this.right;
 		}
 
+		private static <C, R> Set<List<CodeAndPosition<C>>> determineCodeAndPositionSequences(Group<C, R> group)
+		{
+			Set<List<CodeAndPosition<C>>> retval = new LinkedHashSet<>();
+			for (Node<C, R> node : new ArrayList<>(group.getNodes()))
+			{
+				retval.add(node	.getLinkedCodeAndPositionSequence()
+								.getCodeAndPositionSequence());
+			}
+			return retval;
+		}
+
 		@Override
 		public String toString()
 		{
-			return "LeftAndRightReferences [left=" + this.left + ", right=" + this.right + "]";
+			return "LeftAndRightReferences [left=" + this.getLeft() + ", right=" + this.getRight() + "]";
 		}
 
 	}
 
-	public List<LeftAndRightReferences<C, R>> join(AdaptionIndex<C, R> adaptionIndex)
+	/**
+	 * Record of the sort-merge join, which references a {@link Group} of the left or right side by its id within the {@link NodeStore} of that side
+	 *
+	 * @author Omnaest
+	 */
+	protected static class JoinRecord
 	{
-		Function<MatchGroup<C, R>, String> function = group -> group.asCodeSequenceGroup()
-																	.getCodeSequence()
-																	.stream()
-																	.map(code -> code.toString())
-																	.collect(Collectors.joining());
-		Map<String, ? extends MatchGroup<C, R>> collectLeft = this	.extractGroups()
-																	.filter(group -> group.getOccurrenceNumber() == 1)
-																	.collect(Collectors.toMap(function, group -> group));
-		Map<String, ? extends MatchGroup<C, R>> collectRight = adaptionIndex.extractGroups()
-																			.filter(group -> group.getOccurrenceNumber() == 1)
-																			.collect(Collectors.toMap(function, group -> group));
-
-		collectLeft	.keySet()
-					.retainAll(collectRight.keySet());
-
-		Function<String, LeftAndRightReferences<C, R>> mapper = key ->
-		{
-			Collection<List<CodeAndPosition<C>>> left = collectLeft	.get(key)
-																	.getNodes()
-																	.map(node -> node	.getNode()
-																						.getLinkedCodeAndPositionSequence()
-																						.getCodeAndPositionSequence())
-																	.collect(Collectors.toList());
-			Collection<List<CodeAndPosition<C>>> right = collectRight	.get(key)
-																		.getNodes()
-																		.map(node -> node	.getNode()
-																							.getLinkedCodeAndPositionSequence()
-																							.getCodeAndPositionSequence())
-																		.collect(Collectors.toList());
-			return new LeftAndRightReferences<>(left, right);
+		public static final int	LEFT	= 0;
+		public static final int	RIGHT	= 1;
+
+		public static final Comparator<JoinRecord> COMPARATOR = Comparator	.comparingInt((JoinRecord record) -> record.getHash())
+																			.thenComparingInt(record -> record.getSide())
+																			.thenComparingInt(record -> record.getGroup());
+
+		public static final RecordCodec<JoinRecord> CODEC = new RecordCodec<JoinRecord>()
+		{
+			@Override
+			public void write(DataOutput output, JoinRecord record) throws IOException
+			{
+				output.writeInt(record.getHash());
+				output.writeByte(record.getSide());
+				output.writeInt(record.getGroup());
+			}
+
+			@Override
+			public JoinRecord read(DataInput input) throws IOException
+			{
+				int hash = input.readInt();
+				int side = input.readByte();
+				int group = input.readInt();
+				return new JoinRecord(hash, side, group);
+			}
 		};
-		List<LeftAndRightReferences<C, R>> retlist = collectLeft.keySet()
-																.stream()
-																.map(mapper)
-																.collect(Collectors.toList());
 
-		return retlist;
+		private int	hash;
+		private int	side;
+		private int	group;
+
+		public JoinRecord(int hash, int side, int group)
+		{
+			super();
+			this.hash = hash;
+			this.side = side;
+			this.group = group;
+		}
+
+		public int getHash()
+		{
+			return this.hash;
+		}
+
+		public int getSide()
+		{
+			return this.side;
+		}
+
+		public int getGroup()
+		{
+			return this.group;
+		}
+
+	}
+
+	/**
+	 * Similar to {@link #join(AdaptionIndex, boolean)} but collects all {@link LeftAndRightReferences} sequentially
+	 *
+	 * @param adaptionIndex
+	 * @return
+	 */
+	public List<LeftAndRightReferences<C, R>> join(AdaptionIndex<C, R> adaptionIndex)
+	{
+		return this	.join(adaptionIndex, false)
+					.collect(Collectors.toList());
+	}
+
+	/**
+	 * Hash join of the unique {@link Group}s of this {@link AdaptionIndex} as left side with the unique {@link Group}s of the given {@link AdaptionIndex} as
+	 * right side by their code sequence.<br>
+	 * <br>
+	 * The {@link Group}s of the side with fewer {@link Group}s are looked up within the {@link Group} singletons of the other side, which are hashed by the
+	 * hash of their code sequence computed once on creation and verified by the equality of the code sequences. So no keys are built and no side is
+	 * collected, and the {@link LeftAndRightReferences} are streamed lazily. If parallel is true, the lookups run on a parallel {@link Stream}.
+	 *
+	 * @param adaptionIndex
+	 * @param parallel
+	 * @return
+	 */
+	public Stream<LeftAndRightReferences<C, R>> join(AdaptionIndex<C, R> adaptionIndex, boolean parallel)
+	{
+		boolean probingLeft = this.nodeStore.getGroupCount() <= adaptionIndex.nodeStore.getGroupCount();
+		NodeStore<C, R> probingStore = probingLeft ? this.nodeStore : adaptionIndex.nodeStore;
+		NodeStore<C, R> buildStore = probingLeft ? adaptionIndex.nodeStore : this.nodeStore;
+
+		IntStream probingGroups = IntStream.range(0, probingStore.getGroupCount());
+		if (parallel)
+		{
+			probingGroups = probingGroups.parallel();
+		}
+		return probingGroups.filter(probingGroup -> probingStore.getNumberOfNodes(probingGroup) == 1)
+							.mapToObj(probingGroup ->
+							{
+								int buildGroup = probingStore.findGroup(buildStore, probingGroup);
+								if (buildGroup == NodeStore.NONE || buildStore.getNumberOfNodes(buildGroup) != 1)
+								{
+									return null;
+								}
+								Group<C, R> probing = new StoredGroup<>(probingStore, probingGroup);
+								Group<C, R> build = new StoredGroup<>(buildStore, buildGroup);
+								return probingLeft ? new LeftAndRightReferences<>(probing, build) : new LeftAndRightReferences<>(build, probing);
+							})
+							.filter(leftAndRightReferences -> leftAndRightReferences != null);
+	}
+
+	/**
+	 * Sort-merge join of the unique {@link Group}s of this {@link AdaptionIndex} as left side with the unique {@link Group}s of the given
+	 * {@link AdaptionIndex} as right side by their code sequence, which runs within a fixed memory budget.<br>
+	 * <br>
+	 * The hashes of the code sequences of both sides are sorted together with the group ids by a {@link SpillingSorter}, which keeps at most the given
+	 * number of records in memory and spills sorted runs of further records into temporary files. No {@link Group} objects are collected, the records are
+	 * read directly from the {@link NodeStore}s. The merged records are scanned lazily and {@link Group}s with an equal hash are verified by the equality
+	 * of their code sequences, so the {@link LeftAndRightReferences} are streamed one by one.<br>
+	 * <br>
+	 * The temporary files are deleted when the returned {@link Stream} is exhausted or closed, so a short-circuited {@link Stream} has to be closed.
+	 *
+	 * @param adaptionIndex
+	 * @param maxBufferedGroups
+	 *            maximum number of join records kept in memory
+	 * @return
+	 */
+	public Stream<LeftAndRightReferences<C, R>> join(AdaptionIndex<C, R> adaptionIndex, int maxBufferedGroups)
+	{
+		NodeStore<C, R> leftStore = this.nodeStore;
+		NodeStore<C, R> rightStore = adaptionIndex.nodeStore;
+
+		SpillingSorter<JoinRecord> sorter = new SpillingSorter<>(JoinRecord.COMPARATOR, JoinRecord.CODEC, maxBufferedGroups);
+		try
+		{
+			addUniqueGroups(sorter, leftStore, JoinRecord.LEFT);
+			addUniqueGroups(sorter, rightStore, JoinRecord.RIGHT);
+		} catch (RuntimeException e)
+		{
+			sorter.close();
+			throw e;
+		}
+
+		Stream<JoinRecord> records = sorter.stream();
+		Iterator<JoinRecord> iterator = records.iterator();
+		return StreamUtils	.generateStreamFromIterator(new Iterator<LeftAndRightReferences<C, R>>()
+							{
+								private JoinRecord								record	= iterator.hasNext() ? iterator.next() : null;
+								private Deque<LeftAndRightReferences<C, R>>	next	= new ArrayDeque<>();
+
+								@Override
+								public boolean hasNext()
+								{
+									while (this.next.isEmpty() && this.record != null)
+									{
+										int hash = this.record.getHash();
+										List<Group<C, R>> left = new ArrayList<>();
+										List<Group<C, R>> right = new ArrayList<>();
+										while (this.record != null && this.record.getHash() == hash)
+										{
+											if (this.record.getSide() == JoinRecord.LEFT)
+											{
+												left.add(new StoredGroup<>(leftStore, this.record.getGroup()));
+											}
+											else
+											{
+												right.add(new StoredGroup<>(rightStore, this.record.getGroup()));
+											}
+											this.record = iterator.hasNext() ? iterator.next() : null;
+										}
+
+										for (Group<C, R> leftGroup : left)
+										{
+											for (Group<C, R> rightGroup : right)
+											{
+												if (leftGroup.equals(rightGroup))
+												{
+													this.next.add(new LeftAndRightReferences<>(leftGroup, rightGroup));
+												}
+											}
+										}
+									}
+									return !this.next.isEmpty();
+								}
+
+								@Override
+								public LeftAndRightReferences<C, R> next()
+								{
+									if (!this.hasNext())
+									{
+										throw new NoSuchElementException();
+									}
+									return this.next.poll();
+								}
+							})
+							.onClose(records::close);
+	}
+
+	/**
+	 * Adds a {@link JoinRecord} of the given side for every group of the given {@link NodeStore} which has exactly one node
+	 *
+	 * @param sorter
+	 * @param nodeStore
+	 * @param side
+	 */
+	private static <C, R> void addUniqueGroups(SpillingSorter<JoinRecord> sorter, NodeStore<C, R> nodeStore, int side)
+	{
+		int groupCount = nodeStore.getGroupCount();
+		for (int group = 0; group < groupCount; group++)
+		{
+			if (nodeStore.getNumberOfNodes(group) == 1)
+			{
+				sorter.add(new JoinRecord(nodeStore.getGroupHash(group), side, group));
+			}
+		}
 	}
 
 }
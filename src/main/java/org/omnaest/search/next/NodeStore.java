@@ -0,0 +1,730 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.omnaest.search.next.AdaptionIndex.CodeAndPosition;
+import org.omnaest.search.next.AdaptionIndex.LinkedCodeAndPositionSequence;
+import org.omnaest.search.next.AdaptionIndex.Node;
+import org.omnaest.search.next.utils.ChunkedArray;
+import org.omnaest.search.next.utils.ChunkedIntArray;
+import org.omnaest.search.next.utils.LongIntHashMap;
+
+/**
+ * Struct of arrays store of the positions, {@link Node}s and {@link AdaptionIndex.Group}s of an {@link AdaptionIndex}.<br>
+ * <br>
+ * Codes are interned to int ids and every analyzed code gets a global position, so all positions of a code sequence are contiguous. A node is the span
+ * of a start position and a length and is identified by an int id, its group, the next node of the same group and its exploded flag are kept in primitive
+ * arrays. A group is identified by an int id and keyed by the hash of its code sequence, which is equal to {@link List#hashCode()} of the codes. Groups
+ * with an equal hash are chained and verified by comparing their codes.<br>
+ * <br>
+ * The hash of every node is cached and the hash of a left or right side expansion is derived from it in constant time. Two nodes whose prefix or
+ * suffix nodes are already linked to groups are verified by comparing these groups and a single code, so the cost of an expansion does not grow with
+ * the length of a repeat.<br>
+ * <br>
+ * The store is thread safe, so multiple code sequences can be added and exploded concurrently. Ids are allocated by atomic counters and the arrays grow
+ * in chunks, which are never copied. The node ids are guarded by lock stripes of their span, and a group, including the group links and exploded flags
+ * of its nodes, is guarded by the lock stripe of its hash. A group lock may acquire a node lock, but never the other way around. The group ids and
+ * their views should be read after all concurrent additions are completed.<br>
+ * <br>
+ * A sequence opened by {@link #openSequence(Object)} can be extended by {@link #appendToSequence(int, int[], int)}, as long as no other sequence is
+ * added in between, since the positions of a sequence have to be contiguous.<br>
+ * <br>
+ * Groups with more than one node are additionally indexed by their number of nodes, which is updated whenever a node is linked, so the repeated groups
+ * can be read in descending order of their occurrences without scanning all groups. While nodes are linked concurrently, a group may be missed or seen
+ * twice by a reader of this index.<br>
+ * <br>
+ * The {@link Node} objects of the public views are only created on demand by {@link #createNode(int)}.
+ *
+ * @author Omnaest
+ * @param <C>
+ * @param <R>
+ */
+public class NodeStore<C, R>
+{
+	public static final int		NONE		= -1;
+	private static final int	STRIPE_BITS	= 6;
+	private static final Object	NULL_CODE	= new Object();
+
+	private Map<Object, Integer>	codeToId	= new ConcurrentHashMap<>();
+	private ChunkedArray<C>			codes		= new ChunkedArray<>();
+	private ChunkedIntArray			codeHashes	= new ChunkedIntArray();
+	private AtomicInteger			codeCount	= new AtomicInteger();
+
+	private ChunkedIntArray	positionCodes		= new ChunkedIntArray();
+	private ChunkedIntArray	positionSequences	= new ChunkedIntArray();
+	private AtomicInteger	positionCount		= new AtomicInteger();
+
+	private ChunkedIntArray	sequenceStarts	= new ChunkedIntArray();
+	private ChunkedIntArray	sequenceLengths	= new ChunkedIntArray();
+	private ChunkedArray<R>	references		= new ChunkedArray<>();
+	private AtomicInteger	sequenceCount	= new AtomicInteger();
+
+	private ChunkedIntArray		nodeStarts		= new ChunkedIntArray();
+	private ChunkedIntArray		nodeLengths		= new ChunkedIntArray();
+	private ChunkedIntArray		nodeHashes		= new ChunkedIntArray();
+	private ChunkedIntArray		nodeGroups		= new ChunkedIntArray();
+	private ChunkedIntArray		nodeNextInGroup	= new ChunkedIntArray();
+	private ChunkedIntArray		nodeExploded	= new ChunkedIntArray();
+	private AtomicInteger		nodeCount		= new AtomicInteger();
+	private LongIntHashMap[]	nodeIds			= newStripes();
+
+	private ChunkedIntArray		groupFirstNodes			= new ChunkedIntArray();
+	private ChunkedIntArray		groupSizes				= new ChunkedIntArray();
+	private ChunkedIntArray		groupHashes				= new ChunkedIntArray();
+	private ChunkedIntArray		groupNextWithSameHash	= new ChunkedIntArray();
+	private ChunkedIntArray		groupConfirmed			= new ChunkedIntArray();
+	private ChunkedIntArray		groupExploded			= new ChunkedIntArray();
+	private AtomicInteger		groupCount				= new AtomicInteger();
+	private LongIntHashMap[]	groupIdsByHash			= newStripes();
+
+	private NavigableMap<Integer, Set<Integer>> groupsByOccurrences = new ConcurrentSkipListMap<>();
+
+	private volatile int[] powers = new int[] { 1 };
+
+	/**
+	 * Returns the id of the given code, which is created if the code is new
+	 *
+	 * @param code
+	 * @return
+	 */
+	public int getOrCreateCodeId(C code)
+	{
+		return this.codeToId.computeIfAbsent(code != null ? code : NULL_CODE, key ->
+		{
+			int id = this.codeCount.getAndIncrement();
+			this.codes.set(id, code);
+			this.codeHashes.set(id, code != null ? code.hashCode() : 0);
+			return id;
+		});
+	}
+
+	/**
+	 * Adds a code sequence of the given reference and returns the position of its first code
+	 *
+	 * @param reference
+	 * @param codeIds
+	 * @param length
+	 * @return
+	 */
+	public int addSequence(R reference, int[] codeIds, int length)
+	{
+		int sequence = this.sequenceCount.getAndIncrement();
+		int start = this.positionCount.getAndAdd(length);
+		for (int ii = 0; ii < length; ii++)
+		{
+			this.positionCodes.set(start + ii, codeIds[ii]);
+			this.positionSequences.set(start + ii, sequence);
+		}
+		this.references.set(sequence, reference);
+		this.sequenceStarts.set(sequence, start);
+		this.sequenceLengths.set(sequence, length);
+		return start;
+	}
+
+	/**
+	 * Opens an empty code sequence of the given reference and returns its id, the codes are added by {@link #appendToSequence(int, int[], int)}
+	 *
+	 * @param reference
+	 * @return
+	 */
+	public int openSequence(R reference)
+	{
+		int sequence = this.sequenceCount.getAndIncrement();
+		this.references.set(sequence, reference);
+		this.sequenceStarts.set(sequence, this.positionCount.get());
+		this.sequenceLengths.set(sequence, 0);
+		return sequence;
+	}
+
+	/**
+	 * Appends the given codes to the given sequence and returns the position of the first appended code. The sequence has to be the last sequence of
+	 * this {@link NodeStore}.
+	 *
+	 * @param sequence
+	 * @param codeIds
+	 * @param length
+	 * @return
+	 * @throws IllegalStateException
+	 *             if another sequence was added after the given sequence
+	 */
+	public int appendToSequence(int sequence, int[] codeIds, int length)
+	{
+		int sequenceLength = this.sequenceLengths.get(sequence);
+		int start = this.sequenceStarts.get(sequence) + sequenceLength;
+		if (!this.positionCount.compareAndSet(start, start + length))
+		{
+			throw new IllegalStateException("Codes can only be appended to the last sequence, but another sequence was added after sequence " + sequence);
+		}
+		for (int ii = 0; ii < length; ii++)
+		{
+			this.positionCodes.set(start + ii, codeIds[ii]);
+			this.positionSequences.set(start + ii, sequence);
+		}
+		this.sequenceLengths.set(sequence, sequenceLength + length);
+		return start;
+	}
+
+	/**
+	 * Returns the id of the node of the given start position and length, which is created if it is new
+	 *
+	 * @param start
+	 * @param length
+	 * @return
+	 */
+	public int getOrCreateNode(int start, int length)
+	{
+		return this.getOrCreateNode(start, length, this.determineHash(start, length));
+	}
+
+	private int getOrCreateNode(int start, int length, int hash)
+	{
+		long key = toNodeKey(start, length);
+		LongIntHashMap nodeIds = this.nodeIds[determineStripe(key)];
+		synchronized (nodeIds)
+		{
+			int retval = nodeIds.get(key);
+			if (retval == NONE)
+			{
+				retval = this.nodeCount.getAndIncrement();
+				this.nodeStarts.set(retval, start);
+				this.nodeLengths.set(retval, length);
+				this.nodeHashes.set(retval, hash);
+				this.nodeGroups.set(retval, toStoredGroup(NONE));
+				this.nodeNextInGroup.set(retval, NONE);
+				this.nodeExploded.set(retval, 0);
+				nodeIds.put(key, retval);
+			}
+			return retval;
+		}
+	}
+
+	/**
+	 * Returns the node which expands the given node by one code to the left, or {@link #NONE} if the node starts its code sequence
+	 *
+	 * @param node
+	 * @return
+	 */
+	public int getOrCreateLeftSideExpansion(int node)
+	{
+		int start = this.nodeStarts.get(node);
+		int length = this.nodeLengths.get(node);
+		if (start == this.sequenceStarts.get(this.positionSequences.get(start)))
+		{
+			return NONE;
+		}
+
+		// List.hashCode() starts with 1, which is shifted to 31^(length+1) by prepending a code
+		int code = this.codeHashes.get(this.positionCodes.get(start - 1));
+		int hash = this.nodeHashes.get(node) + this.getPower(length) * (30 + code);
+		return this.getOrCreateNode(start - 1, length + 1, hash);
+	}
+
+	/**
+	 * Returns the node which expands the given node by one code to the right, or {@link #NONE} if the node ends its code sequence
+	 *
+	 * @param node
+	 * @return
+	 */
+	public int getOrCreateRightSideExpansion(int node)
+	{
+		int start = this.nodeStarts.get(node);
+		int length = this.nodeLengths.get(node);
+		int end = start + length;
+		int sequence = this.positionSequences.get(start);
+		if (end >= this.sequenceStarts.get(sequence) + this.sequenceLengths.get(sequence))
+		{
+			return NONE;
+		}
+
+		int hash = 31 * this.nodeHashes.get(node) + this.codeHashes.get(this.positionCodes.get(end));
+		return this.getOrCreateNode(start, length + 1, hash);
+	}
+
+	/**
+	 * Links the given node to the group of its code sequence, if it is not linked already, and returns the group
+	 *
+	 * @param node
+	 * @return
+	 */
+	public int linkToGroup(int node)
+	{
+		int hash = this.nodeHashes.get(node);
+		LongIntHashMap groupIdsByHash = this.groupIdsByHash[determineStripe(toKey(hash))];
+		synchronized (groupIdsByHash)
+		{
+			int retval = this.getLinkedGroup(node);
+			if (retval == NONE)
+			{
+				int firstWithSameHash = groupIdsByHash.get(toKey(hash));
+				for (int group = firstWithSameHash; group != NONE && retval == NONE; group = this.groupNextWithSameHash.get(group))
+				{
+					if (this.equalNodes(this.groupFirstNodes.get(group), node))
+					{
+						retval = group;
+					}
+				}
+
+				if (retval == NONE)
+				{
+					retval = this.groupCount.getAndIncrement();
+					this.groupFirstNodes.set(retval, NONE);
+					this.groupSizes.set(retval, 0);
+					this.groupHashes.set(retval, hash);
+					this.groupNextWithSameHash.set(retval, firstWithSameHash);
+					this.groupConfirmed.set(retval, 0);
+					this.groupExploded.set(retval, 0);
+					groupIdsByHash.put(toKey(hash), retval);
+				}
+
+				this.nodeGroups.set(node, toStoredGroup(retval));
+				this.nodeNextInGroup.set(node, this.groupFirstNodes.get(retval));
+				this.groupFirstNodes.set(retval, node);
+				int size = this.groupSizes.get(retval) + 1;
+				this.groupSizes.set(retval, size);
+				this.updateGroupsByOccurrences(retval, size);
+			}
+			return retval;
+		}
+	}
+
+	private void updateGroupsByOccurrences(int group, int size)
+	{
+		if (size > 2)
+		{
+			this.groupsByOccurrences.get(size - 1)
+									.remove(group);
+		}
+		if (size > 1)
+		{
+			this.groupsByOccurrences.computeIfAbsent(size, key -> ConcurrentHashMap.newKeySet())
+									.add(group);
+		}
+	}
+
+	/**
+	 * Returns the groups with at least the given number of nodes in descending order of their number of nodes. Groups with a single node are not indexed,
+	 * so a minimum below 2 is treated as 2.
+	 *
+	 * @param minOccurrences
+	 * @return
+	 */
+	public IntStream getGroupsByOccurrences(int minOccurrences)
+	{
+		return this.groupsByOccurrences	.tailMap(Math.max(2, minOccurrences), true)
+										.descendingMap()
+										.values()
+										.stream()
+										.flatMap(groups -> groups.stream())
+										.mapToInt(group -> group);
+	}
+
+	/**
+	 * Marks the given node, which has to be linked to its group, as exploded and returns true, if it was not exploded already
+	 *
+	 * @param node
+	 * @return
+	 */
+	public boolean markExploded(int node)
+	{
+		synchronized (this.getGroupLock(this.getLinkedGroup(node)))
+		{
+			boolean retval = this.nodeExploded.get(node) == 0;
+			this.nodeExploded.set(node, 1);
+			return retval;
+		}
+	}
+
+	/**
+	 * Marks the given group as exploded and returns true, if it has at least the given number of nodes and was not exploded already. So only a single
+	 * caller observes that a group reaches the given number of nodes.
+	 *
+	 * @param group
+	 * @param minNodes
+	 * @return
+	 */
+	public boolean markGroupExploded(int group, int minNodes)
+	{
+		synchronized (this.getGroupLock(group))
+		{
+			boolean retval = this.groupSizes.get(group) >= minNodes && this.groupExploded.get(group) == 0;
+			if (retval)
+			{
+				this.groupExploded.set(group, 1);
+			}
+			return retval;
+		}
+	}
+
+	/**
+	 * Marks the given group as confirmed repeat and returns true, if it has more than one node and was not confirmed already
+	 *
+	 * @param group
+	 * @return
+	 */
+	public boolean markConfirmed(int group)
+	{
+		synchronized (this.getGroupLock(group))
+		{
+			boolean retval = this.groupSizes.get(group) > 1 && this.groupConfirmed.get(group) == 0;
+			if (retval)
+			{
+				this.groupConfirmed.set(group, 1);
+			}
+			return retval;
+		}
+	}
+
+	public int getLength(int node)
+	{
+		return this.nodeLengths.get(node);
+	}
+
+	/**
+	 * Returns true, if the given group has more than one {@link Node} and its occurrences are neither all preceded by the same code nor all followed by
+	 * the same code. A code sequence boundary counts as a distinct code. The {@link Node}s of the group are walked once in place, so no array of them
+	 * is created.
+	 *
+	 * @param group
+	 * @return
+	 */
+	public boolean isMaximalRepeat(int group)
+	{
+		synchronized (this.getGroupLock(group))
+		{
+			int firstNode = this.groupFirstNodes.get(group);
+			if (firstNode == NONE || this.nodeNextInGroup.get(firstNode) == NONE)
+			{
+				return false;
+			}
+
+			int length = this.nodeLengths.get(firstNode);
+			int leftCode = this.determineNeighborCode(firstNode, -1);
+			int rightCode = this.determineNeighborCode(firstNode, length);
+			for (int node = this.nodeNextInGroup.get(firstNode); node != NONE && (leftCode != NONE || rightCode != NONE); node = this.nodeNextInGroup.get(node))
+			{
+				if (leftCode != NONE && leftCode != this.determineNeighborCode(node, -1))
+				{
+					leftCode = NONE;
+				}
+				if (rightCode != NONE && rightCode != this.determineNeighborCode(node, length))
+				{
+					rightCode = NONE;
+				}
+			}
+			return leftCode == NONE && rightCode == NONE;
+		}
+	}
+
+	/**
+	 * Returns the code at the given offset relative to the start of the given node or {@link #NONE}, if the offset is outside of its code sequence
+	 *
+	 * @param node
+	 * @param offset
+	 * @return
+	 */
+	private int determineNeighborCode(int node, int offset)
+	{
+		int start = this.nodeStarts.get(node);
+		int sequence = this.positionSequences.get(start);
+		int position = start + offset;
+		int sequenceStart = this.sequenceStarts.get(sequence);
+		if (position < sequenceStart || position >= sequenceStart + this.sequenceLengths.get(sequence))
+		{
+			return NONE;
+		}
+		return this.positionCodes.get(position);
+	}
+
+	public int getNumberOfNodes(int group)
+	{
+		synchronized (this.getGroupLock(group))
+		{
+			return this.groupSizes.get(group);
+		}
+	}
+
+	public int getGroupCount()
+	{
+		return this.groupCount.get();
+	}
+
+	/**
+	 * Returns the hash of the code sequence of the given group, which is equal to {@link List#hashCode()} of its codes
+	 *
+	 * @param group
+	 * @return
+	 */
+	public int getGroupHash(int group)
+	{
+		return this.groupHashes.get(group);
+	}
+
+	/**
+	 * Returns the nodes of the given group
+	 *
+	 * @param group
+	 * @return
+	 */
+	public int[] getNodes(int group)
+	{
+		synchronized (this.getGroupLock(group))
+		{
+			int[] retval = new int[this.groupSizes.get(group)];
+			int size = 0;
+			for (int node = this.groupFirstNodes.get(group); node != NONE; node = this.nodeNextInGroup.get(node))
+			{
+				retval[size++] = node;
+			}
+			return retval;
+		}
+	}
+
+	/**
+	 * Returns the code sequence of the given group
+	 *
+	 * @param group
+	 * @return
+	 */
+	public List<C> getCodeSequence(int group)
+	{
+		int node;
+		synchronized (this.getGroupLock(group))
+		{
+			node = this.groupFirstNodes.get(group);
+		}
+		return this.getCodes(this.nodeStarts.get(node), this.nodeLengths.get(node));
+	}
+
+	/**
+	 * Returns the group of the given {@link NodeStore} with the same code sequence as the given group of this {@link NodeStore}, or {@link #NONE}
+	 *
+	 * @param nodeStore
+	 * @param group
+	 * @return
+	 */
+	public int findGroup(NodeStore<C, R> nodeStore, int group)
+	{
+		int hash = this.getGroupHash(group);
+		List<C> codeSequence = this.getCodeSequence(group);
+		LongIntHashMap groupIdsByHash = nodeStore.groupIdsByHash[determineStripe(toKey(hash))];
+		synchronized (groupIdsByHash)
+		{
+			for (int candidate = groupIdsByHash.get(toKey(hash)); candidate != NONE; candidate = nodeStore.groupNextWithSameHash.get(candidate))
+			{
+				int node = nodeStore.groupFirstNodes.get(candidate);
+				if (nodeStore	.getCodes(nodeStore.nodeStarts.get(node), nodeStore.nodeLengths.get(node))
+								.equals(codeSequence))
+				{
+					return candidate;
+				}
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Creates a {@link Node} view of the given node, whose positions are relative to its code sequence
+	 *
+	 * @param node
+	 * @return
+	 */
+	public Node<C, R> createNode(int node)
+	{
+		int start = this.nodeStarts.get(node);
+		int length = this.nodeLengths.get(node);
+		int sequence = this.positionSequences.get(start);
+		int offset = start - this.sequenceStarts.get(sequence);
+
+		List<CodeAndPosition<C>> codeAndPositions = new ArrayList<>(length);
+		for (int ii = 0; ii < length; ii++)
+		{
+			codeAndPositions.add(new CodeAndPosition<>(this.codes.get(this.positionCodes.get(start + ii)), offset + ii));
+		}
+		return new Node<C, R>(new LinkedCodeAndPositionSequence<>(codeAndPositions, 0, length), sequence, this.references.get(sequence));
+	}
+
+	private List<C> getCodes(int start, int length)
+	{
+		List<C> retlist = new ArrayList<>(length);
+		for (int ii = 0; ii < length; ii++)
+		{
+			retlist.add(this.codes.get(this.positionCodes.get(start + ii)));
+		}
+		return retlist;
+	}
+
+	private int determineHash(int start, int length)
+	{
+		int retval = 1;
+		for (int ii = 0; ii < length; ii++)
+		{
+			retval = 31 * retval + this.codeHashes.get(this.positionCodes.get(start + ii));
+		}
+		return retval;
+	}
+
+	/**
+	 * Returns true, if the given nodes have the same code sequence. If the prefix or suffix nodes of both nodes are linked to groups already, only these
+	 * groups and the remaining code are compared.
+	 *
+	 * @param node1
+	 * @param node2
+	 * @return
+	 */
+	private boolean equalNodes(int node1, int node2)
+	{
+		int length = this.nodeLengths.get(node1);
+		if (length != this.nodeLengths.get(node2))
+		{
+			return false;
+		}
+
+		int start1 = this.nodeStarts.get(node1);
+		int start2 = this.nodeStarts.get(node2);
+		if (length > 1)
+		{
+			int prefixGroup1 = this.getGroup(start1, length - 1);
+			int prefixGroup2 = this.getGroup(start2, length - 1);
+			if (prefixGroup1 != NONE && prefixGroup2 != NONE)
+			{
+				return prefixGroup1 == prefixGroup2 && this.positionCodes.get(start1 + length - 1) == this.positionCodes.get(start2 + length - 1);
+			}
+
+			int suffixGroup1 = this.getGroup(start1 + 1, length - 1);
+			int suffixGroup2 = this.getGroup(start2 + 1, length - 1);
+			if (suffixGroup1 != NONE && suffixGroup2 != NONE)
+			{
+				return suffixGroup1 == suffixGroup2 && this.positionCodes.get(start1) == this.positionCodes.get(start2);
+			}
+		}
+		return this.equalCodes(start1, start2, length);
+	}
+
+	/**
+	 * Returns the group of the node of the given span, or {@link #NONE} if the node does not exist or is not linked yet. The group link is read without
+	 * the lock of the group, so a concurrently linked node may still be reported as not linked.
+	 *
+	 * @param start
+	 * @param length
+	 * @return
+	 */
+	private int getGroup(int start, int length)
+	{
+		long key = toNodeKey(start, length);
+		LongIntHashMap nodeIds = this.nodeIds[determineStripe(key)];
+		int node;
+		synchronized (nodeIds)
+		{
+			node = nodeIds.get(key);
+		}
+		return node != NONE ? this.getLinkedGroup(node) : NONE;
+	}
+
+	private int getLinkedGroup(int node)
+	{
+		return this.nodeGroups.get(node) - 1;
+	}
+
+	private Object getGroupLock(int group)
+	{
+		return this.groupIdsByHash[determineStripe(toKey(this.groupHashes.get(group)))];
+	}
+
+	private int getPower(int exponent)
+	{
+		int[] powers = this.powers;
+		if (exponent >= powers.length)
+		{
+			synchronized (this)
+			{
+				powers = this.powers;
+				if (exponent >= powers.length)
+				{
+					int size = powers.length;
+					powers = Arrays.copyOf(powers, Math.max(exponent + 1, size * 2));
+					for (int ii = size; ii < powers.length; ii++)
+					{
+						powers[ii] = 31 * powers[ii - 1];
+					}
+					this.powers = powers;
+				}
+			}
+		}
+		return powers[exponent];
+	}
+
+	private boolean equalCodes(int start1, int start2, int length)
+	{
+		for (int ii = 0; ii < length; ii++)
+		{
+			if (this.positionCodes.get(start1 + ii) != this.positionCodes.get(start2 + ii))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Group links are stored incremented by one, so the zero of a not yet written element can not be read as the first group
+	 *
+	 * @param group
+	 * @return
+	 */
+	private static int toStoredGroup(int group)
+	{
+		return group + 1;
+	}
+
+	private static long toNodeKey(int start, int length)
+	{
+		return ((long) start << 32) | length;
+	}
+
+	private static long toKey(int hash)
+	{
+		return hash & 0xFFFFFFFFL;
+	}
+
+	private static int determineStripe(long key)
+	{
+		return (Long.hashCode(key) * 0x9E3779B9) >>> (32 - STRIPE_BITS);
+	}
+
+	private static LongIntHashMap[] newStripes()
+	{
+		LongIntHashMap[] retval = new LongIntHashMap[1 << STRIPE_BITS];
+		for (int ii = 0; ii < retval.length; ii++)
+		{
+			retval[ii] = new LongIntHashMap(NONE);
+		}
+		return retval;
+	}
+}
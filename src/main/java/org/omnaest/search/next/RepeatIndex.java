@@ -0,0 +1,52 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next;
+
+import java.util.stream.Stream;
+
+import org.omnaest.search.next.AdaptionIndex.MatchGroup;
+
+/**
+ * Index which discovers the repeated code sequences of all analyzed code sequences
+ *
+ * @see AdaptionIndex
+ * @see SuffixAutomatonAdaptionIndex
+ * @author Omnaest
+ * @param <C>
+ * @param <R>
+ */
+public interface RepeatIndex<C, R>
+{
+	/**
+	 * Analyzes the given code sequence of the given reference
+	 *
+	 * @param codeSequence
+	 * @param reference
+	 * @return
+	 */
+	RepeatIndex<C, R> analyze(Stream<C> codeSequence, R reference);
+
+	/**
+	 * Returns the {@link MatchGroup}s of the analyzed code sequences. {@link MatchGroup#getOccurrenceNumber()} is greater than one for repeated code
+	 * sequences.
+	 *
+	 * @return
+	 */
+	Stream<? extends MatchGroup<C, R>> extractGroups();
+}
@@ -0,0 +1,474 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.omnaest.search.next.AdaptionIndex.CodeAndPosition;
+import org.omnaest.search.next.AdaptionIndex.CodeSequenceGroup;
+import org.omnaest.search.next.AdaptionIndex.LinkedCodeAndPositionSequence;
+import org.omnaest.search.next.AdaptionIndex.MatchGroup;
+import org.omnaest.search.next.AdaptionIndex.MatchGroupCodeSequence;
+import org.omnaest.search.next.AdaptionIndex.MatchGroupImpl.MatchGroupCodeSequenceImpl;
+import org.omnaest.search.next.AdaptionIndex.MatchNode;
+import org.omnaest.search.next.AdaptionIndex.MatchNodeImpl;
+import org.omnaest.search.next.AdaptionIndex.Node;
+
+/**
+ * {@link RepeatIndex} backed by a generalized suffix automaton over all analyzed code sequences. Every code sequence is added starting from the initial
+ * state, so no code sequence spans two analyzed code sequences and no separators are needed.<br>
+ * <br>
+ * The automaton is built online in time and memory linear in the total number of codes. Every state represents all code sequences with the same set of
+ * end positions, so the code sequences of a state share their number of occurrences. {@link #extractGroups()} streams one {@link MatchGroup} per code
+ * sequence which occurs at least twice, and one per single code which occurs only once, in the same form as {@link AdaptionIndex#extractGroups()}. The
+ * code sequence and the {@link Node}s of a {@link MatchGroup} are only determined on access.<br>
+ * <br>
+ * {@link #analyze(Stream, Object)} is synchronized, but must not run concurrently with the consumption of extracted {@link MatchGroup}s.
+ *
+ * @author Omnaest
+ * @param <C>
+ * @param <R>
+ */
+public class SuffixAutomatonAdaptionIndex<C, R> implements RepeatIndex<C, R>
+{
+	private static final int	NO_STATE			= -1;
+	private static final int	NO_POSITION			= -1;
+	private static final int	ROOT				= 0;
+	private static final int	INITIAL_CAPACITY	= 16;
+
+	private Map<C, Integer>	codeToId	= new HashMap<>();
+	private List<C>			codes		= new ArrayList<>();
+
+	private int[]	text		= new int[INITIAL_CAPACITY];
+	private int		textLength	= 0;
+
+	/**
+	 * State reached by the code sequence which ends at a position of the text
+	 */
+	private int[] positionStates = new int[INITIAL_CAPACITY];
+
+	private int[]	sequenceStarts	= new int[INITIAL_CAPACITY];
+	private List<R>	references		= new ArrayList<>();
+
+	private int[]	length				= new int[INITIAL_CAPACITY];
+	private int[]	link				= new int[INITIAL_CAPACITY];
+	private int[]	firstEnd			= new int[INITIAL_CAPACITY];
+	private int[][]	transitionCodes		= new int[INITIAL_CAPACITY][];
+	private int[][]	transitionTargets	= new int[INITIAL_CAPACITY][];
+	private int[]	transitionCount		= new int[INITIAL_CAPACITY];
+	private int		size				= 0;
+	private int		last;
+
+	private boolean	dirty		= true;
+	private int[]	occurrences	= null;
+	private int[]	firstChild	= null;
+	private int[]	nextSibling	= null;
+	private int[]	firstOwnEnd	= null;
+	private int[]	nextOwnEnd	= null;
+
+	public SuffixAutomatonAdaptionIndex()
+	{
+		super();
+		this.addState(0, NO_STATE);
+		this.link[ROOT] = NO_STATE;
+	}
+
+	@Override
+	public synchronized SuffixAutomatonAdaptionIndex<C, R> analyze(Stream<C> codeSequence, R reference)
+	{
+		if (codeSequence != null)
+		{
+			int sequenceIndex = this.references.size();
+			this.references.add(reference);
+			if (sequenceIndex >= this.sequenceStarts.length)
+			{
+				this.sequenceStarts = Arrays.copyOf(this.sequenceStarts, sequenceIndex * 2);
+			}
+			this.sequenceStarts[sequenceIndex] = this.textLength;
+
+			this.last = ROOT;
+			codeSequence.forEach(code -> this.extend(this.codeToId.computeIfAbsent(code, key ->
+			{
+				this.codes.add(code);
+				return this.codes.size() - 1;
+			})));
+			this.dirty = true;
+		}
+		return this;
+	}
+
+	private void extend(int code)
+	{
+		int position = this.textLength;
+		if (position >= this.text.length)
+		{
+			this.text = Arrays.copyOf(this.text, this.text.length * 2);
+			this.positionStates = Arrays.copyOf(this.positionStates, this.positionStates.length * 2);
+		}
+		this.text[this.textLength++] = code;
+
+		//the extended code sequence exists already, if it has been analyzed before as part of another code sequence
+		int existing = this.getTransition(this.last, code);
+		if (existing != NO_STATE)
+		{
+			this.last = this.length[this.last] + 1 == this.length[existing] ? existing : this.split(this.last, code, existing);
+			this.positionStates[position] = this.last;
+			return;
+		}
+
+		int current = this.addState(this.length[this.last] + 1, position);
+		int state = this.last;
+		while (state != NO_STATE && this.getTransition(state, code) == NO_STATE)
+		{
+			this.setTransition(state, code, current);
+			state = this.link[state];
+		}
+
+		if (state == NO_STATE)
+		{
+			this.link[current] = ROOT;
+		}
+		else
+		{
+			int target = this.getTransition(state, code);
+			//splitting may enlarge the state arrays, so the link is assigned afterwards
+			int suffixLink = this.length[state] + 1 == this.length[target] ? target : this.split(state, code, target);
+			this.link[current] = suffixLink;
+		}
+		this.positionStates[position] = current;
+		this.last = current;
+	}
+
+	/**
+	 * Splits the shorter code sequences off the given target state into a cloned state, which the given state and its suffix links with a transition of
+	 * the given code to the target are redirected to
+	 *
+	 * @param state
+	 * @param code
+	 * @param target
+	 * @return the cloned state
+	 */
+	private int split(int state, int code, int target)
+	{
+		int cloned = this.addState(this.length[state] + 1, this.firstEnd[target]);
+		this.transitionCodes[cloned] = Arrays.copyOf(this.transitionCodes[target], this.transitionCodes[target].length);
+		this.transitionTargets[cloned] = Arrays.copyOf(this.transitionTargets[target], this.transitionTargets[target].length);
+		this.transitionCount[cloned] = this.transitionCount[target];
+		this.link[cloned] = this.link[target];
+		while (state != NO_STATE && this.getTransition(state, code) == target)
+		{
+			this.setTransition(state, code, cloned);
+			state = this.link[state];
+		}
+		this.link[target] = cloned;
+		return cloned;
+	}
+
+	private int addState(int length, int firstEnd)
+	{
+		if (this.size >= this.length.length)
+		{
+			int capacity = this.size * 2;
+			this.length = Arrays.copyOf(this.length, capacity);
+			this.link = Arrays.copyOf(this.link, capacity);
+			this.firstEnd = Arrays.copyOf(this.firstEnd, capacity);
+			this.transitionCodes = Arrays.copyOf(this.transitionCodes, capacity);
+			this.transitionTargets = Arrays.copyOf(this.transitionTargets, capacity);
+			this.transitionCount = Arrays.copyOf(this.transitionCount, capacity);
+		}
+		int state = this.size++;
+		this.length[state] = length;
+		this.firstEnd[state] = firstEnd;
+		this.transitionCodes[state] = new int[1];
+		this.transitionTargets[state] = new int[1];
+		this.transitionCount[state] = 0;
+		return state;
+	}
+
+	private int getTransition(int state, int code)
+	{
+		int[] codes = this.transitionCodes[state];
+		for (int ii = 0; ii < this.transitionCount[state]; ii++)
+		{
+			if (codes[ii] == code)
+			{
+				return this.transitionTargets[state][ii];
+			}
+		}
+		return NO_STATE;
+	}
+
+	private void setTransition(int state, int code, int target)
+	{
+		int[] codes = this.transitionCodes[state];
+		int count = this.transitionCount[state];
+		for (int ii = 0; ii < count; ii++)
+		{
+			if (codes[ii] == code)
+			{
+				this.transitionTargets[state][ii] = target;
+				return;
+			}
+		}
+		if (count >= codes.length)
+		{
+			this.transitionCodes[state] = codes = Arrays.copyOf(codes, count * 2);
+			this.transitionTargets[state] = Arrays.copyOf(this.transitionTargets[state], count * 2);
+		}
+		codes[count] = code;
+		this.transitionTargets[state][count] = target;
+		this.transitionCount[state] = count + 1;
+	}
+
+	/**
+	 * Determines the number of occurrences of every state and the children of every state within the tree of suffix links, if code sequences were
+	 * analyzed since the last call
+	 */
+	private synchronized void determineOccurrencesIfDirty()
+	{
+		if (this.dirty)
+		{
+			int[] occurrences = new int[this.size];
+			int[] firstChild = new int[this.size];
+			int[] nextSibling = new int[this.size];
+			int[] firstOwnEnd = new int[this.size];
+			int[] nextOwnEnd = new int[this.textLength];
+			Arrays.fill(firstChild, NO_STATE);
+			Arrays.fill(nextSibling, NO_STATE);
+			Arrays.fill(firstOwnEnd, NO_POSITION);
+
+			//every position is an end position of the state reached by the code sequence ending there
+			for (int position = 0; position < this.textLength; position++)
+			{
+				int state = this.positionStates[position];
+				occurrences[state]++;
+				nextOwnEnd[position] = firstOwnEnd[state];
+				firstOwnEnd[state] = position;
+			}
+
+			int maxLength = 0;
+			for (int state = 0; state < this.size; state++)
+			{
+				maxLength = Math.max(maxLength, this.length[state]);
+			}
+
+			int[] statesByLength = this.sortStatesByLength(maxLength);
+			for (int ii = statesByLength.length - 1; ii > 0; ii--)
+			{
+				int state = statesByLength[ii];
+				int parent = this.link[state];
+				occurrences[parent] += occurrences[state];
+				nextSibling[state] = firstChild[parent];
+				firstChild[parent] = state;
+			}
+
+			this.occurrences = occurrences;
+			this.firstChild = firstChild;
+			this.nextSibling = nextSibling;
+			this.firstOwnEnd = firstOwnEnd;
+			this.nextOwnEnd = nextOwnEnd;
+			this.dirty = false;
+		}
+	}
+
+	private int[] sortStatesByLength(int maxLength)
+	{
+		int[] counts = new int[maxLength + 2];
+		for (int state = 0; state < this.size; state++)
+		{
+			counts[this.length[state] + 1]++;
+		}
+		for (int ii = 1; ii < counts.length; ii++)
+		{
+			counts[ii] += counts[ii - 1];
+		}
+		int[] retval = new int[this.size];
+		for (int state = 0; state < this.size; state++)
+		{
+			retval[counts[this.length[state]]++] = state;
+		}
+		return retval;
+	}
+
+	@Override
+	public Stream<? extends MatchGroup<C, R>> extractGroups()
+	{
+		this.determineOccurrencesIfDirty();
+		int[] occurrences = this.occurrences;
+		return IntStream.range(1, occurrences.length)
+						.boxed()
+						.flatMap(state ->
+						{
+							int minimumLength = this.length[this.link[state]] + 1;
+							if (occurrences[state] > 1)
+							{
+								return IntStream.rangeClosed(minimumLength, this.length[state])
+												.mapToObj(length -> new SuffixAutomatonMatchGroup(state, length, occurrences[state]));
+							}
+							else if (minimumLength == 1)
+							{
+								return Stream.of(new SuffixAutomatonMatchGroup(state, 1, occurrences[state]));
+							}
+							else
+							{
+								return Stream.empty();
+							}
+						});
+	}
+
+	/**
+	 * {@link MatchGroup} of the code sequence with the given length of a state
+	 *
+	 * @author Omnaest
+	 */
+	protected class SuffixAutomatonMatchGroup implements MatchGroup<C, R>
+	{
+		private int	state;
+		private int	length;
+		private int	occurrenceNumber;
+
+		public SuffixAutomatonMatchGroup(int state, int length, int occurrenceNumber)
+		{
+			super();
+			this.state = state;
+			this.length = length;
+			this.occurrenceNumber = occurrenceNumber;
+		}
+
+		public List<C> getCodeSequence()
+		{
+			List<C> retlist = new ArrayList<>(this.length);
+			int end = SuffixAutomatonAdaptionIndex.this.firstEnd[this.state];
+			for (int position = end - this.length + 1; position <= end; position++)
+			{
+				retlist.add(SuffixAutomatonAdaptionIndex.this.codes.get(SuffixAutomatonAdaptionIndex.this.text[position]));
+			}
+			return retlist;
+		}
+
+		@Override
+		public Object getGroup()
+		{
+			return "" + new CodeSequenceGroup<C, R>(this.getCodeSequence());
+		}
+
+		/**
+		 * Returns one {@link MatchNode} per occurrence, whose {@link Node} covers the occurrence with positions relative to its analyzed code sequence
+		 */
+		@Override
+		public Stream<MatchNode<C, R>> getNodes()
+		{
+			return SuffixAutomatonAdaptionIndex.this.determineEndPositions(this.state)
+													.stream()
+													.map(end -> new MatchNodeImpl<>(SuffixAutomatonAdaptionIndex.this.createNode(end - this.length + 1,
+																																this.length)));
+		}
+
+		@Override
+		public int getOccurrenceNumber()
+		{
+			return this.occurrenceNumber;
+		}
+
+		@Override
+		public boolean isCodeSequenceGroup()
+		{
+			return true;
+		}
+
+		@Override
+		public MatchGroupCodeSequence<C, R> asCodeSequenceGroup()
+		{
+			return new MatchGroupCodeSequenceImpl<>(new CodeSequenceGroup<C, R>(this.getCodeSequence()));
+		}
+
+		@Override
+		public String toString()
+		{
+			return "[" + this.getGroup() + ", occurrences=" + this.getOccurrenceNumber() + "]";
+		}
+	}
+
+	/**
+	 * Returns the end positions of all occurrences of the given state, which are the own end positions of all states within its subtree of suffix links
+	 *
+	 * @param state
+	 * @return
+	 */
+	private List<Integer> determineEndPositions(int state)
+	{
+		List<Integer> retlist = new ArrayList<>();
+		int[] stack = new int[INITIAL_CAPACITY];
+		int stackSize = 0;
+		stack[stackSize++] = state;
+		while (stackSize > 0)
+		{
+			int current = stack[--stackSize];
+			for (int end = this.firstOwnEnd[current]; end != NO_POSITION; end = this.nextOwnEnd[end])
+			{
+				retlist.add(end);
+			}
+			for (int child = this.firstChild[current]; child != NO_STATE; child = this.nextSibling[child])
+			{
+				if (stackSize >= stack.length)
+				{
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[stackSize++] = child;
+			}
+		}
+		retlist.sort(null);
+		return retlist;
+	}
+
+	/**
+	 * Creates a {@link Node} for the given global start position and length
+	 *
+	 * @param start
+	 * @param length
+	 * @return
+	 */
+	private Node<C, R> createNode(int start, int length)
+	{
+		int sequenceIndex = Arrays.binarySearch(this.sequenceStarts, 0, this.references.size(), start);
+		if (sequenceIndex < 0)
+		{
+			sequenceIndex = -sequenceIndex - 2;
+		}
+		//empty code sequences share their start with the following code sequence
+		while (sequenceIndex + 1 < this.references.size() && this.sequenceStarts[sequenceIndex + 1] <= start)
+		{
+			sequenceIndex++;
+		}
+		int offset = start - this.sequenceStarts[sequenceIndex];
+
+		List<CodeAndPosition<C>> codeAndPositions = new ArrayList<>(length);
+		for (int ii = 0; ii < length; ii++)
+		{
+			codeAndPositions.add(new CodeAndPosition<>(this.codes.get(this.text[start + ii]), offset + ii));
+		}
+		return new Node<C, R>(new LinkedCodeAndPositionSequence<>(codeAndPositions, 0, length), sequenceIndex, this.references.get(sequenceIndex));
+	}
+}
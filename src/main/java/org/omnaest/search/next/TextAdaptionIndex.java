@@ -18,21 +18,55 @@
 */
 package org.omnaest.search.next;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.omnaest.search.next.AdaptionIndex.MatchGroupImpl.MatchGroupCodeSequenceImpl;
 
 public class TextAdaptionIndex<R> extends AdaptionIndex<Character, R>
 {
 	public void analyze(String text, R reference)
 	{
-		super.analyze(	Arrays.asList(ArrayUtils.toObject(text.toCharArray()))
-							.stream(),
+		super.analyze(	text.chars()
+							.mapToObj(c -> (char) c),
 						reference);
 	}
 
+	/**
+	 * Analyzes the text of the given {@link Reader} in chunks of the given size, so the text is never held in memory as a whole. {@link MatchGroup}s are
+	 * passed to the given listener as soon as they are confirmed as repeat. The {@link Reader} is not closed.
+	 *
+	 * @see #openStreamingAnalysis(Object, int, Consumer)
+	 * @param reader
+	 * @param reference
+	 * @param chunkSize
+	 * @param confirmedGroupListener
+	 *            optional
+	 * @throws UncheckedIOException
+	 *             if the {@link Reader} fails
+	 */
+	public void analyze(Reader reader, R reference, int chunkSize, Consumer<? super MatchGroup<Character, R>> confirmedGroupListener)
+	{
+		try (StreamingAnalysis streamingAnalysis = this.openStreamingAnalysis(reference, chunkSize, confirmedGroupListener))
+		{
+			char[] buffer = new char[chunkSize];
+			for (int length = reader.read(buffer); length >= 0; length = reader.read(buffer))
+			{
+				for (int ii = 0; ii < length; ii++)
+				{
+					streamingAnalysis.add(buffer[ii]);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	public static interface TextMatchGroup<C, R> extends MatchGroup<C, R>
 	{
 
@@ -62,7 +96,7 @@ public class TextAdaptionIndex<R> extends AdaptionIndex<Character, R>
 	protected static class TextMatchCodeSequenceGroupImpl<C, R> extends MatchGroupCodeSequenceImpl<C, R>
 	{
 
-		public TextMatchCodeSequenceGroupImpl(CodeSequenceGroup<C, R> group)
+		public TextMatchCodeSequenceGroupImpl(CodeSequenceProvider<C> group)
 		{
 			super(group);
 		}
@@ -75,4 +109,17 @@ public class TextAdaptionIndex<R> extends AdaptionIndex<Character, R>
 		return this.<TextMatchGroup<Character, R>>extractGroups(group -> new TextMatchGroupImpl<>(group));
 	}
 
+	@Override
+	public Stream<TextMatchGroup<Character, R>> extractGroups(int minOccurrences)
+	{
+		return this.<TextMatchGroup<Character, R>>extractGroups(minOccurrences, group -> new TextMatchGroupImpl<>(group));
+	}
+
+	@Override
+	public Stream<TextMatchGroup<Character, R>> extractMostRepeatedGroups(int limit)
+	{
+		return this	.extractGroups(2)
+					.limit(limit);
+	}
+
 }
@@ -0,0 +1,78 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next.utils;
+
+import java.util.Arrays;
+
+/**
+ * Object array which grows in fixed size chunks like the {@link ChunkedIntArray}
+ *
+ * @see ChunkedIntArray
+ * @author Omnaest
+ * @param <E>
+ */
+public class ChunkedArray<E>
+{
+	private static final int	CHUNK_BITS	= 10;
+	private static final int	CHUNK_SIZE	= 1 << CHUNK_BITS;
+	private static final int	CHUNK_MASK	= CHUNK_SIZE - 1;
+
+	private volatile Object[][] chunks = new Object[0][];
+
+	@SuppressWarnings("unchecked")
+	public E get(int index)
+	{
+		return (E) this.chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	/**
+	 * Sets the element at the given index and allocates the chunk of the index, if it is not present yet
+	 *
+	 * @param index
+	 * @param element
+	 */
+	public void set(int index, E element)
+	{
+		this.ensureCapacity(index)[index & CHUNK_MASK] = element;
+	}
+
+	private Object[] ensureCapacity(int index)
+	{
+		int chunk = index >>> CHUNK_BITS;
+		Object[][] chunks = this.chunks;
+		if (chunk >= chunks.length)
+		{
+			synchronized (this)
+			{
+				chunks = this.chunks;
+				if (chunk >= chunks.length)
+				{
+					int size = chunks.length;
+					chunks = Arrays.copyOf(chunks, Math.max(chunk + 1, size * 2));
+					for (int ii = size; ii < chunks.length; ii++)
+					{
+						chunks[ii] = new Object[CHUNK_SIZE];
+					}
+					this.chunks = chunks;
+				}
+			}
+		}
+		return chunks[chunk];
+	}
+}
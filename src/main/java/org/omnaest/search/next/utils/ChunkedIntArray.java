@@ -0,0 +1,83 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next.utils;
+
+import java.util.Arrays;
+
+/**
+ * Primitive int array which grows in fixed size chunks, so existing elements are never copied and can be read while other threads append further chunks.
+ * Only the directory of chunks is published safely, the visibility of the elements has to be ensured by the caller, e.g. by a lock guarding the writes
+ * and reads of an element.
+ *
+ * @author Omnaest
+ */
+public class ChunkedIntArray
+{
+	private static final int	CHUNK_BITS	= 12;
+	private static final int	CHUNK_SIZE	= 1 << CHUNK_BITS;
+	private static final int	CHUNK_MASK	= CHUNK_SIZE - 1;
+
+	private volatile int[][] chunks = new int[0][];
+
+	public int get(int index)
+	{
+		return this.chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	/**
+	 * Sets the value at the given index and allocates the chunk of the index, if it is not present yet
+	 *
+	 * @param index
+	 * @param value
+	 */
+	public void set(int index, int value)
+	{
+		this.ensureCapacity(index)[index & CHUNK_MASK] = value;
+	}
+
+	/**
+	 * Returns the chunk of the given index, which is allocated if necessary
+	 *
+	 * @param index
+	 * @return
+	 */
+	private int[] ensureCapacity(int index)
+	{
+		int chunk = index >>> CHUNK_BITS;
+		int[][] chunks = this.chunks;
+		if (chunk >= chunks.length)
+		{
+			synchronized (this)
+			{
+				chunks = this.chunks;
+				if (chunk >= chunks.length)
+				{
+					int size = chunks.length;
+					chunks = Arrays.copyOf(chunks, Math.max(chunk + 1, size * 2));
+					for (int ii = size; ii < chunks.length; ii++)
+					{
+						chunks[ii] = new int[CHUNK_SIZE];
+					}
+					this.chunks = chunks;
+				}
+			}
+		}
+		return chunks[chunk];
+	}
+}
@@ -0,0 +1,134 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map of non negative primitive long keys to primitive int values, which avoids an entry object and boxing per mapping. Not thread
+ * safe.
+ *
+ * @author Omnaest
+ */
+public class LongIntHashMap
+{
+	private static final long	EMPTY_KEY			= -1L;
+	private static final int	INITIAL_CAPACITY	= 16;
+
+	private long[]	keys;
+	private int[]	values;
+	private int		size	= 0;
+	private int		missingValue;
+
+	/**
+	 * @param missingValue
+	 *            value returned by {@link #get(long)} for absent keys
+	 */
+	public LongIntHashMap(int missingValue)
+	{
+		super();
+		this.missingValue = missingValue;
+		this.keys = new long[INITIAL_CAPACITY];
+		this.values = new int[INITIAL_CAPACITY];
+		Arrays.fill(this.keys, EMPTY_KEY);
+	}
+
+	/**
+	 * Returns the value of the given key, or the missing value if the key is absent
+	 *
+	 * @param key
+	 * @return
+	 */
+	public int get(long key)
+	{
+		int mask = this.keys.length - 1;
+		for (int slot = hash(key) & mask;; slot = (slot + 1) & mask)
+		{
+			long current = this.keys[slot];
+			if (current == key)
+			{
+				return this.values[slot];
+			}
+			else if (current == EMPTY_KEY)
+			{
+				return this.missingValue;
+			}
+		}
+	}
+
+	/**
+	 * Maps the given non negative key to the given value
+	 *
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public LongIntHashMap put(long key, int value)
+	{
+		if ((this.size + 1) * 2 > this.keys.length)
+		{
+			this.resize();
+		}
+		int mask = this.keys.length - 1;
+		for (int slot = hash(key) & mask;; slot = (slot + 1) & mask)
+		{
+			long current = this.keys[slot];
+			if (current == key)
+			{
+				this.values[slot] = value;
+				return this;
+			}
+			else if (current == EMPTY_KEY)
+			{
+				this.keys[slot] = key;
+				this.values[slot] = value;
+				this.size++;
+				return this;
+			}
+		}
+	}
+
+	public int size()
+	{
+		return this.size;
+	}
+
+	private void resize()
+	{
+		long[] keys = this.keys;
+		int[] values = this.values;
+		this.keys = new long[keys.length * 2];
+		this.values = new int[keys.length * 2];
+		Arrays.fill(this.keys, EMPTY_KEY);
+		this.size = 0;
+		for (int ii = 0; ii < keys.length; ii++)
+		{
+			if (keys[ii] != EMPTY_KEY)
+			{
+				this.put(keys[ii], values[ii]);
+			}
+		}
+	}
+
+	private static int hash(long key)
+	{
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+}
@@ -0,0 +1,327 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Queue of pending work elements, which is drained by one or more workers. Processing an element may add further elements to the same {@link WorkQueue},
+ * so recursive algorithms can be run with a constant stack depth.<br>
+ * <br>
+ * Every worker has its own deque. Elements added while processing go to the deque of the current worker, which takes its latest elements first.
+ * Elements added by other threads go to a shared inbox. A worker without elements of its own takes elements from the inbox or steals the oldest
+ * elements of the other workers, so workers only contend for a lock while they steal. Idle workers wait until further elements are added or all
+ * elements are processed.
+ *
+ * @author Omnaest
+ * @param <E>
+ */
+public class WorkQueue<E>
+{
+	private Deque<E>					inbox			= new ArrayDeque<>();
+	private ThreadLocal<WorkerDeque<E>>	currentWorker	= new ThreadLocal<>();
+	private AtomicInteger				pending			= new AtomicInteger();
+	private AtomicInteger				idleWorkers		= new AtomicInteger();
+	private Object						idleLock		= new Object();
+	private volatile Throwable			failure			= null;
+	private List<WorkerDeque<E>>		workerDeques	= new CopyOnWriteArrayList<>();
+
+	/**
+	 * Workers of a single {@link WorkQueue#drain(Consumer, int, Executor)} call
+	 */
+	private static class Workers
+	{
+		private int		running		= 0;
+		private boolean	finished	= false;
+	}
+
+	/**
+	 * Deque of the elements of a single worker. The owning worker adds and takes elements at the tail, other workers steal elements from the head.
+	 *
+	 * @param <E>
+	 */
+	private static class WorkerDeque<E>
+	{
+		private Deque<E> elements = new ArrayDeque<>();
+
+		public synchronized void push(E element)
+		{
+			this.elements.addLast(element);
+		}
+
+		public synchronized E pop()
+		{
+			return this.elements.pollLast();
+		}
+
+		public synchronized E steal()
+		{
+			return this.elements.pollFirst();
+		}
+	}
+
+	/**
+	 * Adds a pending element
+	 *
+	 * @param element
+	 * @return
+	 */
+	public WorkQueue<E> add(E element)
+	{
+		this.pending.incrementAndGet();
+		WorkerDeque<E> workerDeque = this.currentWorker.get();
+		if (workerDeque != null)
+		{
+			workerDeque.push(element);
+		}
+		else
+		{
+			synchronized (this.inbox)
+			{
+				this.inbox.add(element);
+			}
+		}
+
+		if (this.idleWorkers.get() > 0)
+		{
+			synchronized (this.idleLock)
+			{
+				this.idleLock.notify();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Processes all pending elements, including the elements added while processing, on the current thread
+	 *
+	 * @param processor
+	 */
+	public void drain(Consumer<E> processor)
+	{
+		this.drain(processor, 1, null);
+	}
+
+	/**
+	 * Processes all pending elements, including the elements added while processing, with the given number of workers. The current thread is one of the
+	 * workers, the further workers are started on the given {@link Executor}. Returns or throws only after all elements are processed and all started
+	 * workers have finished, so no processor runs anymore afterwards. Workers which the {@link Executor} starts afterwards return immediately.
+	 *
+	 * @param processor
+	 * @param workers
+	 * @param executor
+	 * @throws RuntimeException
+	 *             the first {@link RuntimeException} or {@link Error} thrown by the processor, after which no further elements are processed
+	 */
+	public void drain(Consumer<E> processor, int workers, Executor executor)
+	{
+		Workers startedWorkers = new Workers();
+		for (int ii = 1; ii < workers; ii++)
+		{
+			executor.execute(() -> this.work(processor, startedWorkers));
+		}
+		this.work(processor, startedWorkers);
+
+		boolean interrupted = false;
+		synchronized (startedWorkers)
+		{
+			startedWorkers.finished = true;
+			while (startedWorkers.running > 0)
+			{
+				try
+				{
+					startedWorkers.wait();
+				} catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+		this.workerDeques.clear();
+		if (interrupted)
+		{
+			Thread	.currentThread()
+					.interrupt();
+		}
+
+		Throwable throwable = this.failure;
+		if (throwable instanceof Error)
+		{
+			throw (Error) throwable;
+		}
+		else if (throwable != null)
+		{
+			throw (RuntimeException) throwable;
+		}
+	}
+
+	private void work(Consumer<E> processor, Workers workers)
+	{
+		synchronized (workers)
+		{
+			if (workers.finished)
+			{
+				return;
+			}
+			workers.running++;
+		}
+		WorkerDeque<E> workerDeque = new WorkerDeque<>();
+		this.workerDeques.add(workerDeque);
+		this.currentWorker.set(workerDeque);
+		try
+		{
+			E element;
+			while ((element = this.take(workerDeque)) != null)
+			{
+				try
+				{
+					processor.accept(element);
+				} catch (RuntimeException | Error e)
+				{
+					this.fail(e);
+				} finally
+				{
+					this.complete();
+				}
+			}
+		} finally
+		{
+			this.currentWorker.remove();
+			synchronized (workers)
+			{
+				workers.running--;
+				workers.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the next pending element, waiting while other workers may still add elements, or null if all elements are processed or a processor failed
+	 *
+	 * @param workerDeque
+	 * @return
+	 */
+	private E take(WorkerDeque<E> workerDeque)
+	{
+		while (this.failure == null)
+		{
+			E element = this.poll(workerDeque);
+			if (element != null)
+			{
+				return element;
+			}
+			if (this.pending.get() == 0)
+			{
+				return null;
+			}
+			this.awaitElements(workerDeque);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the latest element of the given {@link WorkerDeque}, otherwise the oldest element of the inbox or of any other {@link WorkerDeque}, or null
+	 *
+	 * @param workerDeque
+	 * @return
+	 */
+	private E poll(WorkerDeque<E> workerDeque)
+	{
+		E element = workerDeque.pop();
+		if (element == null)
+		{
+			synchronized (this.inbox)
+			{
+				element = this.inbox.poll();
+			}
+		}
+		for (int ii = 0; element == null && ii < this.workerDeques.size(); ii++)
+		{
+			WorkerDeque<E> otherWorkerDeque = this.workerDeques.get(ii);
+			if (otherWorkerDeque != workerDeque)
+			{
+				element = otherWorkerDeque.steal();
+			}
+		}
+		return element;
+	}
+
+	/**
+	 * Waits until an element is added, all elements are processed or a processor failed. The idle worker is counted before the elements are polled again,
+	 * so an element added concurrently is either polled or its addition notifies the waiting worker.
+	 *
+	 * @param workerDeque
+	 */
+	private void awaitElements(WorkerDeque<E> workerDeque)
+	{
+		this.idleWorkers.incrementAndGet();
+		try
+		{
+			synchronized (this.idleLock)
+			{
+				E element = this.poll(workerDeque);
+				if (element != null)
+				{
+					workerDeque.push(element);
+				}
+				else if (this.pending.get() > 0 && this.failure == null)
+				{
+					this.idleLock.wait();
+				}
+			}
+		} catch (InterruptedException e)
+		{
+			Thread	.currentThread()
+					.interrupt();
+			this.fail(new IllegalStateException("Interrupted while waiting for work", e));
+		} finally
+		{
+			this.idleWorkers.decrementAndGet();
+		}
+	}
+
+	private void complete()
+	{
+		if (this.pending.decrementAndGet() == 0)
+		{
+			synchronized (this.idleLock)
+			{
+				this.idleLock.notifyAll();
+			}
+		}
+	}
+
+	private void fail(Throwable throwable)
+	{
+		synchronized (this.idleLock)
+		{
+			if (this.failure == null)
+			{
+				this.failure = throwable;
+			}
+			this.idleLock.notifyAll();
+		}
+	}
+}
@@ -18,9 +18,22 @@
 */
 package org.omnaest.search.classic;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.junit.Test;
@@ -28,9 +41,19 @@ import org.omnaest.search.classic.analyzer.AnalysisTypeBasic;
 import org.omnaest.search.classic.analyzer.AnalyzerBackNGram;
 import org.omnaest.search.classic.analyzer.AnalyzerExact;
 import org.omnaest.search.classic.analyzer.AnalyzerFrontNGram;
+import org.omnaest.search.classic.GenericSearchIndex.JoinMatch;
 import org.omnaest.search.classic.analyzer.text.AnalyzerLowerCase;
 import org.omnaest.search.classic.domain.StringWord;
+import org.omnaest.search.classic.internal.BooleanQuery;
+import org.omnaest.search.classic.internal.CancellationToken;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchPage;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchResult;
 import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.MatchingTokenAndStatistics;
+import org.omnaest.search.classic.internal.KeyPattern;
+import org.omnaest.search.classic.internal.MinHashSimilarityJoin.SimilarityMatch;
+import org.omnaest.search.classic.internal.CodeSequenceStatisticsCollector.ReferenceMatch;
+import org.omnaest.search.classic.internal.QueryCache.QueryCacheStatistics;
+import org.omnaest.search.classic.internal.ScoringFunctionUtils;
 
 public class TextSearchIndexTest
 {
@@ -112,4 +135,672 @@ public class TextSearchIndexTest
 
 	}
 
+	@Test
+	public void testJoinStreamsSharedKeys() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndexLeft = new TextSearchIndex<Integer>().addAnalyzer(new AnalyzerExact<>());
+		TextSearchIndex<Integer> searchIndexRight = new TextSearchIndex<Integer>().addAnalyzer(new AnalyzerExact<>());
+
+		searchIndexLeft.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 1);
+		searchIndexRight.analyze(Stream.of(new StringWord("def"), new StringWord("xyz")), 2);
+		searchIndexRight.analyze(Stream.of(new StringWord("def")), 3);
+
+		List<String> joined = searchIndexLeft	.join(searchIndexRight, AnalysisTypeBasic.EXACT)
+												.map(joinMatch -> joinMatch	.getLeftMatchingTokenAndStatistics()
+																			.getReference()
+														+ ":" + joinMatch	.getRightMatchingTokenAndStatistics()
+																			.getReference()
+														+ ":" + String.valueOf(new StringWord(joinMatch	.getToken()
+																											.getCodeSequence())))
+												.sorted()
+												.collect(Collectors.toList());
+		assertEquals(Arrays.asList("1:2:def", "1:3:def"), joined);
+
+		assertEquals(0, searchIndexLeft	.join(searchIndexRight, AnalysisTypeBasic.INVERSE)
+										.count());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPartitionedJoin() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndexLeft = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																					.addAnalyzerChain(new AnalyzerBackNGram<>(), new AnalyzerFrontNGram<>());
+		TextSearchIndex<Integer> searchIndexRight = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																					.addAnalyzerChain(new AnalyzerBackNGram<>(), new AnalyzerFrontNGram<>());
+		for (int ii = 0; ii < 50; ii++)
+		{
+			searchIndexLeft.analyze(Stream.of(new StringWord("word" + ii), new StringWord("left" + ii)), ii);
+			searchIndexRight.analyze(Stream.of(new StringWord("word" + (ii * 2)), new StringWord("right" + ii)), ii);
+		}
+
+		List<String> expected = this.toJoinedReferences(searchIndexLeft.join(searchIndexRight, AnalysisTypeBasic.EXACT));
+		assertEquals(25, expected.size());
+		assertEquals(expected, this.toJoinedReferences(searchIndexLeft.join(searchIndexRight, AnalysisTypeBasic.EXACT, 4)));
+		assertEquals(expected, this.toJoinedReferences(searchIndexLeft.join(searchIndexRight, AnalysisTypeBasic.EXACT, 1)));
+		assertEquals(expected, this.toJoinedReferences(searchIndexLeft.join(searchIndexRight, AnalysisTypeBasic.EXACT, 4, ForkJoinPool.commonPool(), 2)));
+		assertEquals(0, searchIndexLeft	.join(searchIndexRight, AnalysisTypeBasic.INVERSE, 4)
+										.count());
+
+		//a shared word joins more postings than fit into a single batch
+		for (int ii = 0; ii < 50; ii++)
+		{
+			searchIndexLeft.analyze(Stream.of(new StringWord("shared")), 100 + ii);
+			searchIndexRight.analyze(Stream.of(new StringWord("shared")), 100 + ii);
+		}
+		List<String> expectedShared = this.toJoinedReferences(searchIndexLeft.join(searchIndexRight, AnalysisTypeBasic.EXACT));
+		assertEquals(25 + 50 * 50, expectedShared.size());
+		assertEquals(expectedShared, this.toJoinedReferences(searchIndexLeft.join(searchIndexRight, AnalysisTypeBasic.EXACT, 4, ForkJoinPool.commonPool(), 2)));
+
+		//a closed short-circuited join stops its partitions, even if they wait for the consumer
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try (Stream<JoinMatch<Character, Integer>> joinMatches = searchIndexLeft.join(searchIndexRight, AnalysisTypeBasic.EXACT, 4, pool, 1))
+		{
+			assertTrue(joinMatches	.findFirst()
+									.isPresent());
+		}
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testJoinSimilar() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndexLeft = new TextSearchIndex<Integer>().addAnalyzer(new AnalyzerExact<>());
+		TextSearchIndex<Integer> searchIndexRight = new TextSearchIndex<Integer>().addAnalyzer(new AnalyzerExact<>());
+
+		searchIndexLeft.analyze(this.toWords("a b c d e f g h i j"), 1);
+		searchIndexLeft.analyze(this.toWords("k l m n o p q r s t"), 2);
+		searchIndexRight.analyze(this.toWords("a b c d e f g h i x"), 3);
+		searchIndexRight.analyze(this.toWords("u v w y z"), 4);
+
+		List<SimilarityMatch<Integer>> matches = searchIndexLeft	.joinSimilar(searchIndexRight, AnalysisTypeBasic.EXACT, 0.7)
+																	.collect(Collectors.toList());
+		assertEquals(1, matches.size());
+		assertEquals(1, matches	.get(0)
+								.getLeftReference()
+								.intValue());
+		assertEquals(3, matches	.get(0)
+								.getRightReference()
+								.intValue());
+		assertEquals(9 / 11.0, matches	.get(0)
+										.getSimilarity(),
+						0.0001);
+
+		assertEquals(0, searchIndexLeft	.joinSimilar(searchIndexRight, AnalysisTypeBasic.EXACT, 0.9)
+										.count());
+	}
+
+	private List<String> toJoinedReferences(Stream<JoinMatch<Character, Integer>> joinMatches)
+	{
+		return joinMatches	.map(joinMatch -> joinMatch	.getLeftMatchingTokenAndStatistics()
+														.getReference()
+								+ ":" + joinMatch	.getRightMatchingTokenAndStatistics()
+													.getReference())
+							.sorted()
+							.collect(Collectors.toList());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testQueryCache() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.addAnalyzerChain(new AnalyzerBackNGram<>(), new AnalyzerFrontNGram<>())
+																				.withQueryCache(10);
+
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 1);
+
+		assertEquals(2, searchIndex	.matcher()
+									.match(new StringWord("def"))
+									.count());
+		assertEquals(2, searchIndex	.matcher()
+									.match(new StringWord("def"))
+									.count());
+
+		QueryCacheStatistics statistics = searchIndex	.getQueryCacheStatistics()
+														.get();
+		assertEquals(1, statistics.getHitCount());
+		assertEquals(1, statistics.getMissCount());
+
+		searchIndex.analyze(Stream.of(new StringWord("def")), 2);
+
+		assertEquals(4, searchIndex	.matcher()
+									.match(new StringWord("def"))
+									.count());
+		assertEquals(1, statistics.getHitCount());
+		assertEquals(2, statistics.getMissCount());
+		assertEquals(1, statistics.getInvalidationCount());
+	}
+
+	@Test
+	public void testQueryCacheInvalidatesPrimitiveScoresOnUnrelatedPostings() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.withQueryCache(10);
+		TextSearchIndex<Integer> uncachedSearchIndex = new TextSearchIndex<Integer>().addAnalyzer(new AnalyzerExact<>());
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 1);
+		uncachedSearchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 1);
+		double cachedScore = this.matchBM25Score(searchIndex, "abc");
+
+		for (int reference = 2; reference < 50; reference++)
+		{
+			searchIndex.analyze(Stream.of(new StringWord("def")), reference);
+			uncachedSearchIndex.analyze(Stream.of(new StringWord("def")), reference);
+		}
+
+		double score = this.matchBM25Score(searchIndex, "abc");
+		assertEquals(this.matchBM25Score(uncachedSearchIndex, "abc"), score, 0.0001);
+		assertTrue(score > cachedScore);
+	}
+
+	private double matchBM25Score(TextSearchIndex<Integer> searchIndex, String word)
+	{
+		return searchIndex	.matcher()
+							.withPrimitiveScoringFunction(ScoringFunctionUtils.bm25())
+							.match(new StringWord(word))
+							.findFirst()
+							.get()
+							.getScore();
+	}
+
+	@Test
+	public void testPrimitiveScoringFunction() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>().addAnalyzer(new AnalyzerExact<>());
+
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 1);
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("abc")), 2);
+		searchIndex.analyze(Stream.of(new StringWord("klm")), 3);
+
+		List<MatchingTokenAndStatistics<Character, Integer>> matches = searchIndex	.matcher()
+																					.withPrimitiveScoringFunction(ScoringFunctionUtils.bm25())
+																					.match(new StringWord("abc"))
+																					.collect(Collectors.toList());
+
+		assertEquals(3, matches.size());
+		assertEquals(2, matches	.get(0)
+								.getReference()
+								.intValue());
+		assertTrue(matches	.get(0)
+							.getScore() > matches	.get(2)
+													.getScore());
+		assertTrue(searchIndex	.matcher()
+								.withPrimitiveScoringFunction(ScoringFunctionUtils.tfIdf())
+								.match(new StringWord("def"))
+								.allMatch(match -> match.getScore() > 0.0));
+	}
+
+	@Test
+	public void testMatchReferences() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.addAnalyzer(new AnalyzerFrontNGram<>());
+
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 1);
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("abc")), 2);
+		searchIndex.analyze(Stream.of(new StringWord("klm")), 3);
+
+		List<ReferenceMatch<Integer>> referenceMatches = searchIndex.matcher()
+																	.matchReferences(new StringWord("abc"), 10);
+
+		assertEquals(2, referenceMatches.size());
+		assertEquals(2, referenceMatches.get(0)
+										.getReference()
+										.intValue());
+		assertEquals(1, referenceMatches.get(1)
+										.getReference()
+										.intValue());
+		assertTrue(referenceMatches	.get(0)
+									.getScore() > referenceMatches	.get(1)
+																	.getScore());
+
+		ReferenceMatch<Integer> referenceMatch = referenceMatches.get(0);
+		assertEquals(referenceMatch.getScore(), referenceMatch	.getScoreByAnalysisType()
+																.values()
+																.stream()
+																.mapToDouble(score -> score)
+																.sum(),
+						0.0001);
+		assertTrue(referenceMatch	.getScoreByAnalysisType()
+									.containsKey(AnalysisTypeBasic.EXACT));
+
+		double tokenScoreSum = searchIndex	.matcher()
+											.match(new StringWord("abc"))
+											.filter(match -> match	.getReference()
+																	.intValue() == 2)
+											.mapToDouble(match -> match.getScore())
+											.sum();
+		assertEquals(tokenScoreSum, referenceMatch.getScore(), 0.0001);
+
+		assertEquals(1, searchIndex	.matcher()
+									.matchReferences(new StringWord("abc"), 1)
+									.size());
+	}
+
+	@Test
+	public void testMatchReferencesScoresTermFrequencyOnce() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>().addAnalyzer(new AnalyzerExact<>());
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 1);
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("abc"), new StringWord("abc"), new StringWord("abc")), 2);
+		searchIndex.analyze(Stream.of(new StringWord("klm")), 3);
+
+		List<ReferenceMatch<Integer>> referenceMatches = searchIndex.matcher()
+																	.withPrimitiveScoringFunction(ScoringFunctionUtils.tfIdf())
+																	.matchReferences(new StringWord("abc"), 10);
+
+		assertEquals(2, referenceMatches.size());
+		assertEquals(4.0, referenceMatches	.get(0)
+											.getScore()
+				/ referenceMatches	.get(1)
+									.getScore(),
+						0.0001);
+	}
+
+	@Test
+	public void testParallelMatch() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.addAnalyzer(new AnalyzerFrontNGram<>())
+																				.addAnalyzer(new AnalyzerBackNGram<>());
+		for (int reference = 0; reference < 20; reference++)
+		{
+			searchIndex.analyze(Stream.of(new StringWord("abc" + reference), new StringWord("abc")), reference);
+		}
+
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		try
+		{
+			List<Double> sequentialScores = searchIndex	.matcher()
+														.withPrimitiveScoringFunction(ScoringFunctionUtils.bm25())
+														.match(new StringWord("abc"))
+														.limit(15)
+														.map(match -> match.getScore())
+														.collect(Collectors.toList());
+			List<Double> parallelScores = searchIndex	.matcher()
+														.withPrimitiveScoringFunction(ScoringFunctionUtils.bm25())
+														.withExecutor(executorService)
+														.match(new StringWord("abc"))
+														.limit(15)
+														.map(match -> match.getScore())
+														.collect(Collectors.toList());
+			assertEquals(sequentialScores, parallelScores);
+
+			List<ReferenceMatch<Integer>> sequentialReferenceMatches = searchIndex	.matcher()
+																					.matchReferences(new StringWord("abc1"), 5);
+			List<ReferenceMatch<Integer>> parallelReferenceMatches = searchIndex.matcher()
+																				.withExecutor(executorService)
+																				.matchReferences(new StringWord("abc1"), 5);
+			assertEquals(sequentialReferenceMatches.toString(), parallelReferenceMatches.toString());
+		}
+		finally
+		{
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testMatchBounded() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>().addAnalyzer(new AnalyzerExact<>());
+		for (int reference = 0; reference < 1000; reference++)
+		{
+			searchIndex.analyze(Stream.of(new StringWord("abc")), reference);
+		}
+
+		MatchResult<Character, Integer> matchResult = searchIndex	.matcher()
+																	.withPostingBudget(100)
+																	.matchBounded(new StringWord("abc"));
+		assertTrue(matchResult.isTruncated());
+		assertEquals(100, matchResult	.getMatches()
+										.size());
+
+		matchResult = searchIndex	.matcher()
+									.withPostingBudget(1000)
+									.withTimeout(1, TimeUnit.MINUTES)
+									.matchBounded(new StringWord("abc"));
+		assertTrue(!matchResult.isTruncated());
+		assertEquals(1000, matchResult	.getMatches()
+										.size());
+
+		CancellationToken cancellationToken = new CancellationToken().cancel();
+		matchResult = searchIndex	.matcher()
+									.withCancellationToken(cancellationToken)
+									.matchBounded(new StringWord("abc"));
+		assertTrue(matchResult.isTruncated());
+		assertTrue(matchResult	.getMatches()
+								.isEmpty());
+
+		matchResult = searchIndex	.matcher()
+									.withTimeout(0, TimeUnit.MILLISECONDS)
+									.matchBounded(new StringWord("abc"));
+		assertTrue(matchResult.isTruncated());
+	}
+
+	@Test
+	public void testCountAndExists() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.addAnalyzer(new AnalyzerFrontNGram<>());
+
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("abc")), 1);
+		searchIndex.analyze(Stream.of(new StringWord("abc")), 2);
+		searchIndex.analyze(Stream.of(new StringWord("klm")), 3);
+
+		long expectedCount = searchIndex.matcher()
+										.match(new StringWord("abc"))
+										.map(match -> match.getReference())
+										.distinct()
+										.count();
+		assertEquals(expectedCount, searchIndex	.matcher()
+												.count(new StringWord("abc")));
+		assertEquals(2, searchIndex	.matcher()
+									.withAnalysisType(AnalysisTypeBasic.EXACT)
+									.count(new StringWord("abc")));
+		assertEquals(0, searchIndex	.matcher()
+									.count(new StringWord("xyz")));
+
+		assertTrue(searchIndex	.matcher()
+								.exists(new StringWord("klm")));
+		assertTrue(!searchIndex	.matcher()
+								.exists(new StringWord("xyz")));
+	}
+
+	@Test
+	public void testMatchBoolean() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.addAnalyzer(new AnalyzerFrontNGram<>());
+
+		searchIndex.analyze(Stream.of(new StringWord("alpha"), new StringWord("beta")), 1);
+		searchIndex.analyze(Stream.of(new StringWord("alpha"), new StringWord("beta"), new StringWord("gamma")), 2);
+		searchIndex.analyze(Stream.of(new StringWord("alpha"), new StringWord("delta")), 3);
+		searchIndex.analyze(Stream.of(new StringWord("beta")), 4);
+
+		BooleanQuery<Character> booleanQuery = new BooleanQuery<Character>()	.must(new StringWord("alpha").getCodeSequence(), AnalysisTypeBasic.EXACT)
+																				.must(new StringWord("beta").getCodeSequence(), AnalysisTypeBasic.EXACT)
+																				.mustNot(new StringWord("gamma").getCodeSequence());
+		assertEquals(Arrays.asList(1), this.toReferences(searchIndex	.matcher()
+																		.matchBoolean(booleanQuery, 10)));
+
+		booleanQuery = new BooleanQuery<Character>()	.must(new StringWord("alpha").getCodeSequence(), AnalysisTypeBasic.EXACT)
+														.should(new StringWord("delta").getCodeSequence(), AnalysisTypeBasic.EXACT);
+		List<ReferenceMatch<Integer>> referenceMatches = searchIndex.matcher()
+																	.matchBoolean(booleanQuery, 10);
+		assertEquals(Arrays.asList(3, 1, 2), this.toReferences(referenceMatches));
+		assertEquals(2.0, referenceMatches	.get(0)
+											.getScore(),
+						0.0001);
+
+		booleanQuery = new BooleanQuery<Character>()	.should(new StringWord("gamma").getCodeSequence(), AnalysisTypeBasic.EXACT)
+														.should(new StringWord("delta").getCodeSequence(), AnalysisTypeBasic.EXACT);
+		//the shorter reference 3 ranks higher
+		assertEquals(Arrays.asList(3, 2), this.toReferences(searchIndex	.matcher()
+																		.withPrimitiveScoringFunction(ScoringFunctionUtils.bm25())
+																		.matchBoolean(booleanQuery, 10)));
+		assertEquals(1, searchIndex	.matcher()
+									.matchBoolean(booleanQuery, 1)
+									.size());
+	}
+
+	@Test
+	public void testMatchBooleanScoresTermFrequencyOnce() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>().addAnalyzer(new AnalyzerExact<>());
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 1);
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("abc"), new StringWord("abc"), new StringWord("abc"), new StringWord("def")), 2);
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 3);
+		searchIndex.analyze(Stream.of(new StringWord("klm")), 4);
+
+		BooleanQuery<Character> booleanQuery = new BooleanQuery<Character>()	.must(new StringWord("abc").getCodeSequence(), AnalysisTypeBasic.EXACT)
+																				.must(new StringWord("def").getCodeSequence(), AnalysisTypeBasic.EXACT)
+																				.mustNot(new StringWord("xyz").getCodeSequence());
+		List<ReferenceMatch<Integer>> referenceMatches = searchIndex.matcher()
+																	.withPrimitiveScoringFunction(ScoringFunctionUtils.tfIdf())
+																	.matchBoolean(booleanQuery, 10);
+
+		//both words have the same document frequency, so the score of reference 2 is four times the word score plus one word score
+		assertEquals(Arrays.asList(2, 1, 3), this.toReferences(referenceMatches));
+		double abcScore = referenceMatches	.get(1)
+											.getScore()
+				/ 2;
+		assertEquals(4 * abcScore + abcScore, referenceMatches	.get(0)
+																.getScore(),
+						0.0001);
+	}
+
+	private List<Integer> toReferences(List<ReferenceMatch<Integer>> referenceMatches)
+	{
+		return referenceMatches	.stream()
+								.map(referenceMatch -> referenceMatch.getReference())
+								.collect(Collectors.toList());
+	}
+
+	@Test
+	public void testMatchPhraseAndWithin() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.addAnalyzer(new AnalyzerFrontNGram<>());
+
+		searchIndex.analyze(this.toWords("the quick brown fox"), 1);
+		searchIndex.analyze(this.toWords("quick brown fox quick brown"), 2);
+		//word positions continue over multiple analyze calls of the same reference
+		searchIndex.analyze(this.toWords("red quick"), 3);
+		searchIndex.analyze(this.toWords("brown"), 3);
+
+		assertEquals(Arrays.asList(2, 1, 3), this.toReferences(searchIndex	.matcher()
+																			.matchPhrase(this	.toWords("quick brown")
+																								.collect(Collectors.toList()),
+																							10)));
+		assertEquals(Arrays.asList(1, 2), this.toReferences(searchIndex	.matcher()
+																		.matchPhrase(this	.toWords("quick brown fox")
+																						.collect(Collectors.toList()),
+																					10)));
+
+		List<ReferenceMatch<Integer>> referenceMatches = searchIndex.matcher()
+																	.matchWithin(this	.toWords("fox quick")
+																						.collect(Collectors.toList()),
+																					2, 10);
+		assertEquals(new HashSet<>(Arrays.asList(1, 2)), new HashSet<>(this.toReferences(referenceMatches)));
+		assertEquals(Arrays.asList(2), this.toReferences(searchIndex.matcher()
+																	.matchWithin(this	.toWords("fox quick")
+																						.collect(Collectors.toList()),
+																					1, 10)));
+		assertEquals(1.0, referenceMatches	.get(0)
+											.getScore(),
+						0.0001);
+
+		//repeated words require distinct positions
+		assertEquals(Arrays.asList(2), this.toReferences(searchIndex.matcher()
+																	.matchWithin(this	.toWords("quick quick")
+																						.collect(Collectors.toList()),
+																					3, 10)));
+		assertEquals(0, searchIndex	.matcher()
+									.matchWithin(this	.toWords("quick quick")
+														.collect(Collectors.toList()),
+												2, 10)
+									.size());
+	}
+
+	private Stream<StringWord> toWords(String text)
+	{
+		return Arrays	.asList(text.split(" "))
+						.stream()
+						.map(word -> new StringWord(word));
+	}
+
+	@Test
+	public void testMatchAsync() throws Exception
+	{
+		List<Runnable> submittedTasks = new ArrayList<>();
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.withAsyncExecutor(submittedTasks::add, 1, 1);
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("def")), 1);
+		searchIndex.analyze(Stream.of(new StringWord("abc")), 2);
+
+		CompletableFuture<MatchResult<Character, Integer>> future1 = searchIndex.matcher()
+																				.matchAsync(new StringWord("abc"), 10);
+		CompletableFuture<MatchResult<Character, Integer>> future2 = searchIndex.matcher()
+																				.matchAsync(new StringWord("abc"), 10);
+		CompletableFuture<MatchResult<Character, Integer>> future3 = searchIndex.matcher()
+																				.matchAsync(new StringWord("def"), 10);
+		CompletableFuture<MatchResult<Character, Integer>> future4 = searchIndex.matcher()
+																				.matchAsync(new StringWord("xyz"), 10);
+
+		//equal queries are coalesced, the second distinct query is queued and the third one is rejected
+		assertEquals(1, submittedTasks.size());
+		assertTrue(future4.isCompletedExceptionally());
+		try
+		{
+			future4.join();
+			assertTrue(false);
+		}
+		catch (CompletionException e)
+		{
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+
+		submittedTasks	.remove(0)
+						.run();
+		assertEquals(2, future1	.join()
+								.getMatches()
+								.size());
+		assertEquals(2, future2	.join()
+								.getMatches()
+								.size());
+		assertTrue(!future3.isDone());
+
+		submittedTasks	.remove(0)
+						.run();
+		assertEquals(1, future3	.join()
+								.getMatches()
+								.size());
+		assertTrue(submittedTasks.isEmpty());
+	}
+
+	@Test
+	public void testMatchPage() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.addAnalyzer(new AnalyzerFrontNGram<>());
+		for (int reference = 0; reference < 25; reference++)
+		{
+			searchIndex.analyze(Stream.of(new StringWord("abc")), reference);
+		}
+		searchIndex.analyze(Stream.of(new StringWord("abc"), new StringWord("abc")), 30);
+
+		List<String> pagedMatches = new ArrayList<>();
+		int pages = 0;
+		String cursor = null;
+		do
+		{
+			MatchPage<Character, Integer> matchPage = searchIndex	.matcher()
+																	.withPrimitiveScoringFunction(ScoringFunctionUtils.bm25())
+																	.matchPage(new StringWord("abc"), cursor, 10);
+			assertTrue(matchPage.getMatches()
+								.size() <= 10);
+			matchPage	.getMatches()
+						.forEach(match -> pagedMatches.add(match.getReference() + ":" + match.getScore()));
+			cursor = matchPage.getNextCursor();
+			pages++;
+		} while (cursor != null);
+
+		List<String> allMatches = searchIndex	.matcher()
+												.withPrimitiveScoringFunction(ScoringFunctionUtils.bm25())
+												.match(new StringWord("abc"))
+												.map(match -> match.getReference() + ":" + match.getScore())
+												.collect(Collectors.toList());
+		assertEquals(allMatches.size(), pagedMatches.size());
+		assertEquals(new HashSet<>(allMatches), new HashSet<>(pagedMatches));
+		assertEquals(allMatches	.get(0)
+								.split(":")[0],
+						pagedMatches.get(0)
+									.split(":")[0]);
+		assertEquals((allMatches.size() + 9) / 10, pages);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMatchPageInvalidCursor() throws Exception
+	{
+		new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+										.matcher()
+										.matchPage(new StringWord("abc"), "invalid", 10);
+	}
+
+	@Test
+	public void testMatchPattern() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.addAnalyzer(new AnalyzerFrontNGram<>());
+
+		searchIndex.analyze(Stream.of(new StringWord("abcd"), new StringWord("abxd")), 1);
+		searchIndex.analyze(Stream.of(new StringWord("abd"), new StringWord("abzzx")), 2);
+		searchIndex.analyze(Stream.of(new StringWord("xyz")), 3);
+
+		assertEquals(new HashSet<>(Arrays.asList("abcd", "abxd")), this.matchPattern(searchIndex, KeyPattern.wildcard("ab?d")));
+		assertEquals(new HashSet<>(Arrays.asList("abcd", "abxd", "abd")), this.matchPattern(searchIndex, KeyPattern.wildcard("ab*d")));
+		assertEquals(new HashSet<>(Arrays.asList("abxd", "abzzx")), this.matchPattern(searchIndex, KeyPattern.regex("ab.*x.*")));
+		assertEquals(new HashSet<>(Arrays.asList("abcd", "abd", "xyz")), this.matchPattern(searchIndex, KeyPattern.regex("ab(c)?d|[w-y]+z")));
+		assertEquals(new HashSet<>(Arrays.asList("abxd")), this.matchPattern(searchIndex, KeyPattern.regex("ab[^c]d")));
+		assertTrue(this	.matchPattern(searchIndex, KeyPattern.regex("ab\\.d"))
+						.isEmpty());
+	}
+
+	private Set<String> matchPattern(TextSearchIndex<Integer> searchIndex, KeyPattern<Character> keyPattern)
+	{
+		return searchIndex	.matcher()
+							.matchPattern(keyPattern)
+							.map(match -> new StringWord(match	.getToken()
+																.getCodeSequence()).toString())
+							.collect(Collectors.toSet());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMatchPatternMalformed() throws Exception
+	{
+		KeyPattern.regex("ab(c");
+	}
+
+	@Test
+	public void testMatchFuzzy() throws Exception
+	{
+		TextSearchIndex<Integer> searchIndex = new TextSearchIndex<Integer>()	.addAnalyzer(new AnalyzerExact<>())
+																				.addAnalyzer(new AnalyzerFrontNGram<>());
+
+		searchIndex.analyze(Stream.of(new StringWord("hello"), new StringWord("world")), 1);
+
+		//the key trie is built lazily on the first fuzzy query and has to pick up keys added afterwards
+		assertEquals(0, searchIndex	.matcher()
+									.matchFuzzy(new StringWord("helpx"), 1)
+									.count());
+
+		searchIndex.analyze(Stream.of(new StringWord("help")), 2);
+		searchIndex.analyze(Stream.of(new StringWord("helo")), 3);
+
+		List<MatchingTokenAndStatistics<Character, Integer>> matches = searchIndex	.matcher()
+																					.matchFuzzy(new StringWord("helo"), 1)
+																					.collect(Collectors.toList());
+
+		assertEquals(3, matches.size());
+		assertEquals(3, matches	.get(0)
+								.getReference()
+								.intValue());
+		assertEquals(new HashSet<>(Arrays.asList(1, 2)), matches.stream()
+																.skip(1)
+																.map(match -> match.getReference())
+																.collect(Collectors.toSet()));
+		assertTrue(matches	.get(0)
+							.getScore() > matches	.get(1)
+													.getScore());
+		assertTrue(matches	.stream()
+							.allMatch(match -> match.hasAnalysisType(AnalysisTypeBasic.EXACT)));
+		assertEquals(1, searchIndex	.matcher()
+									.matchFuzzy(new StringWord("wrld"), 1)
+									.count());
+		assertEquals(0, searchIndex	.matcher()
+									.matchFuzzy(new StringWord("wrd"), 1)
+									.count());
+	}
+
 }
@@ -0,0 +1,105 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Manual benchmark of the concurrent ingestion of an {@link AdaptionIndex}, which prints the analyzed codes per second for a growing number of threads.
+ * It is not part of the unit tests and is run by its {@link #main(String[])} method.
+ *
+ * @author Omnaest
+ */
+public class AdaptionIndexIngestionBenchmark
+{
+	private static final int	NUMBER_OF_DOCUMENTS	= 64;
+	private static final int	DOCUMENT_LENGTH		= 2000;
+	private static final int	WARMUP_ROUNDS		= 3;
+
+	public static void main(String[] args) throws Exception
+	{
+		List<String> documents = generateDocuments(NUMBER_OF_DOCUMENTS, DOCUMENT_LENGTH);
+		int processors = Runtime.getRuntime()
+								.availableProcessors();
+		for (int round = 0; round < WARMUP_ROUNDS; round++)
+		{
+			analyze(documents, processors);
+		}
+
+		for (int threads = 1; threads <= processors; threads *= 2)
+		{
+			long start = System.nanoTime();
+			analyze(documents, threads);
+			long duration = Math.max(1, System.nanoTime() - start);
+			System.out.println("threads=" + threads + " codes/s=" + (documents.size() * (long) DOCUMENT_LENGTH * 1000000000L / duration));
+		}
+	}
+
+	/**
+	 * Returns the given number of random documents of the given length with a small alphabet, so they share many repeats
+	 *
+	 * @param numberOfDocuments
+	 * @param length
+	 * @return
+	 */
+	public static List<String> generateDocuments(int numberOfDocuments, int length)
+	{
+		Random random = new Random(7);
+		return IntStream.range(0, numberOfDocuments)
+						.mapToObj(document -> random.ints(length, 'a', 'i')
+													.mapToObj(c -> String.valueOf((char) c))
+													.collect(Collectors.joining()))
+						.collect(Collectors.toList());
+	}
+
+	/**
+	 * Analyzes the given documents concurrently on a {@link ForkJoinPool} with the given number of threads
+	 *
+	 * @param documents
+	 * @param threads
+	 * @return
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public static AdaptionIndex<Character, Integer> analyze(List<String> documents, int threads) throws InterruptedException, ExecutionException
+	{
+		AdaptionIndex<Character, Integer> adaptionIndex = new AdaptionIndex<>();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			pool.submit(() -> IntStream	.range(0, documents.size())
+										.parallel()
+										.forEach(document -> adaptionIndex.analyze(	documents	.get(document)
+																								.chars()
+																								.mapToObj(c -> (char) c),
+																					document)))
+				.get();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		return adaptionIndex;
+	}
+}
@@ -18,7 +18,21 @@
 */
 package org.omnaest.search.next;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import org.junit.Test;
+import org.omnaest.search.next.AdaptionIndex.CodeSequenceProvider;
+import org.omnaest.search.next.AdaptionIndex.LeftAndRightReferences;
+import org.omnaest.search.next.AdaptionIndex.MatchGroup;
 
 public class AdaptionIndexTest
 {
@@ -29,4 +43,207 @@ public class AdaptionIndexTest
 
 	}
 
+	@Test
+	public void testRepeats() throws Exception
+	{
+		assertEquals(Arrays.asList("a=2", "ab=2", "abc=2", "b=2", "bc=2", "c=2"), RepeatIndexTestUtils.extractRepeats(this.analyze("abcdefgabcijk", 1)));
+		assertEquals(Arrays.asList(	"a=3", "ab=3", "abc=3", "abca=2", "abcab=2", "abcabc=2", "b=3", "bc=3", "bca=2", "bcab=2", "bcabc=2", "c=3", "ca=2", "cab=2",
+									"cabc=2"),
+						RepeatIndexTestUtils.extractRepeats(this.analyze("abcabcabc", 1)));
+		assertEquals(Arrays.asList("a=4", "ab=4", "aba=3", "abab=3", "ababa=2", "ababab=2", "b=4", "ba=3", "bab=3", "baba=2", "babab=2"),
+						RepeatIndexTestUtils.extractRepeats(this.analyze("abababab", 1)));
+	}
+
+	@Test
+	public void testDeepRepeatWithSmallStack() throws Exception
+	{
+		String text = this.generateRandomText(300);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicReference<List<String>> repeats = new AtomicReference<>();
+		Thread thread = new Thread(null, () ->
+		{
+			try
+			{
+				repeats.set(RepeatIndexTestUtils.extractRepeats(this.analyze(text + "#" + text, 1)));
+			} catch (Throwable e)
+			{
+				failure.set(e);
+			}
+		}, "deepRepeat", 256 * 1024);
+		thread.start();
+		thread.join();
+
+		assertEquals(null, failure.get());
+		assertTrue(repeats	.get()
+							.contains(text + "=2"));
+	}
+
+	@Test
+	public void testExplodeWorkers() throws Exception
+	{
+		String text = this.generateRandomText(100);
+		List<String> expected = RepeatIndexTestUtils.extractRepeats(this.analyze(text + text, 1));
+
+		AdaptionIndex<Character, Integer> adaptionIndex = new AdaptionIndex<Character, Integer>().withExplodeWorkers(4);
+		adaptionIndex.analyze((text + text)	.chars()
+											.mapToObj(code -> (char) code),
+								1);
+		assertEquals(expected, RepeatIndexTestUtils.extractRepeats(adaptionIndex));
+	}
+
+	@Test
+	public void testRepeatsAcrossSequences() throws Exception
+	{
+		AdaptionIndex<Character, Integer> adaptionIndex = this.analyze("abc", 1);
+		adaptionIndex.analyze(	"xabc"	.chars()
+										.mapToObj(c -> (char) c),
+								2);
+		assertEquals(Arrays.asList("a=2", "ab=2", "abc=2", "b=2", "bc=2", "c=2"), RepeatIndexTestUtils.extractRepeats(adaptionIndex));
+	}
+
+	@Test
+	public void testNodesOfEqualSequences() throws Exception
+	{
+		AdaptionIndex<Character, Integer> adaptionIndex = this.analyze("abc", 1);
+		adaptionIndex.analyze(this.toCodes("abc"), 2);
+		adaptionIndex.analyze(this.toCodes("abc"), 2);
+
+		MatchGroup<Character, Integer> group = adaptionIndex.extractGroups()
+															.filter(matchGroup -> RepeatIndexTestUtils	.toText(matchGroup)
+																										.equals("abc"))
+															.findFirst()
+															.get();
+		assertEquals(3, group.getOccurrenceNumber());
+		assertEquals(Arrays.asList(1, 2, 2), group	.getNodes()
+													.map(node -> node	.getNode()
+																		.getReference())
+													.sorted()
+													.collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testRollingGroupHashes() throws Exception
+	{
+		AdaptionIndex<Character, Integer> adaptionIndex = this.analyze(this.generateRandomText(300)
+																			.replaceAll("[d-z]", "a"),
+																		1);
+		assertTrue(adaptionIndex.getGroups()
+								.allMatch(group -> group.hashCode() == ((CodeSequenceProvider<Character>) group)	.getCodeSequence()
+																													.hashCode()));
+	}
+
+	@Test
+	public void testConcurrentIngestion() throws Exception
+	{
+		List<String> documents = AdaptionIndexIngestionBenchmark.generateDocuments(16, 500);
+
+		List<String> expected = RepeatIndexTestUtils.extractRepeats(AdaptionIndexIngestionBenchmark.analyze(documents, 1));
+		for (int threads : Arrays.asList(2, 4))
+		{
+			assertEquals(expected, RepeatIndexTestUtils.extractRepeats(AdaptionIndexIngestionBenchmark.analyze(documents, threads)));
+		}
+	}
+
+	@Test
+	public void testPruningThresholds() throws Exception
+	{
+		String text = this	.generateRandomText(300)
+							.replaceAll("[e-z]", "a");
+		List<String> repeats = RepeatIndexTestUtils.extractRepeats(this.analyze(text, 1));
+
+		List<String> maxLengthRepeats = RepeatIndexTestUtils.extractRepeats(new AdaptionIndex<Character, Integer>()	.withMaxLength(3)
+																													.analyze(this.toCodes(text), 1));
+		assertEquals(repeats.stream()
+							.filter(repeat -> repeat.indexOf('=') <= 3)
+							.collect(Collectors.toList()),
+						maxLengthRepeats);
+
+		List<String> minOccurrencesRepeats = RepeatIndexTestUtils.extractRepeats(new AdaptionIndex<Character, Integer>()	.withMinOccurrences(3)
+																															.analyze(this.toCodes(text), 1));
+		assertTrue(repeats.containsAll(minOccurrencesRepeats));
+		assertTrue(minOccurrencesRepeats.size() < repeats.size());
+		assertTrue(minOccurrencesRepeats.containsAll(repeats.stream()
+															.filter(repeat -> Integer.valueOf(repeat.substring(repeat.indexOf('=') + 1)) >= 3)
+															.collect(Collectors.toList())));
+
+		assertEquals(Arrays.asList("abc=2"), RepeatIndexTestUtils.extractRepeats(new AdaptionIndex<Character, Integer>()	.withMaximalRepeatsOutputFilter(true)
+																															.analyze(this.toCodes("abcdefgabcijk"), 1)));
+	}
+
+	@Test
+	public void testExtractGroupsByOccurrences() throws Exception
+	{
+		AdaptionIndex<Character, Integer> adaptionIndex = this.analyze(	this.generateRandomText(300)
+																			.replaceAll("[e-z]", "a"),
+																		1);
+		List<Integer> occurrences = adaptionIndex	.extractGroups()
+													.map(group -> group.getOccurrenceNumber())
+													.filter(occurrence -> occurrence >= 3)
+													.sorted(Comparator.reverseOrder())
+													.collect(Collectors.toList());
+
+		assertEquals(occurrences, adaptionIndex	.extractGroups(3)
+												.map(group -> group.getOccurrenceNumber())
+												.collect(Collectors.toList()));
+		assertEquals(occurrences.subList(0, 5), adaptionIndex	.extractMostRepeatedGroups(5)
+																.map(group -> group.getOccurrenceNumber())
+																.collect(Collectors.toList()));
+		assertEquals(RepeatIndexTestUtils	.extractRepeats(adaptionIndex)
+											.size(),
+						adaptionIndex	.extractGroups(2)
+										.count());
+	}
+
+	@Test
+	public void testJoinVerifiesHashCollisions() throws Exception
+	{
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+
+		AdaptionIndex<String, Integer> left = new AdaptionIndex<String, Integer>().analyze(Stream.of("Aa", "x"), 1);
+		AdaptionIndex<String, Integer> right = new AdaptionIndex<String, Integer>().analyze(Stream.of("BB", "x"), 2);
+
+		assertEquals(1, left.join(right)
+							.size());
+		assertEquals(1, left.join(right, true)
+							.count());
+		try (Stream<LeftAndRightReferences<String, Integer>> joined = left.join(right, 1))
+		{
+			assertEquals(1, joined.count());
+		}
+		try (Stream<LeftAndRightReferences<String, Integer>> joined = left.join(right, 1))
+		{
+			assertEquals("x", joined.findFirst()
+									.get()
+									.getRight()
+									.iterator()
+									.next()
+									.get(0)
+									.getCode());
+		}
+	}
+
+	private Stream<Character> toCodes(String text)
+	{
+		return text	.chars()
+					.mapToObj(c -> (char) c);
+	}
+
+	private AdaptionIndex<Character, Integer> analyze(String text, int reference)
+	{
+		return new AdaptionIndex<Character, Integer>().analyze(	text.chars()
+																	.mapToObj(code -> (char) code),
+																reference);
+	}
+
+	private String generateRandomText(int length)
+	{
+		Random random = new Random(42);
+		StringBuilder retval = new StringBuilder();
+		for (int ii = 0; ii < length; ii++)
+		{
+			retval.append((char) ('a' + random.nextInt(26)));
+		}
+		return retval.toString();
+	}
+
 }
@@ -0,0 +1,62 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.omnaest.search.next.AdaptionIndex.MatchGroup;
+
+/**
+ * Helper for the tests of {@link RepeatIndex} implementations
+ *
+ * @author Omnaest
+ */
+public class RepeatIndexTestUtils
+{
+	/**
+	 * Returns the sorted repeats of the given {@link RepeatIndex} as text and occurrence number, e.g. "abc=2"
+	 *
+	 * @param index
+	 * @return
+	 */
+	public static List<String> extractRepeats(RepeatIndex<Character, ?> index)
+	{
+		return index.extractGroups()
+					.filter(group -> group.getOccurrenceNumber() > 1)
+					.map(group -> toText(group) + "=" + group.getOccurrenceNumber())
+					.sorted()
+					.collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns the code sequence of the given {@link MatchGroup} as text
+	 *
+	 * @param group
+	 * @return
+	 */
+	public static String toText(MatchGroup<Character, ?> group)
+	{
+		return group.asCodeSequenceGroup()
+					.getCodeSequence()
+					.stream()
+					.map(String::valueOf)
+					.collect(Collectors.joining());
+	}
+}
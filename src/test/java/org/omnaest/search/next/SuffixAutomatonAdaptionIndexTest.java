@@ -0,0 +1,117 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.omnaest.search.next.AdaptionIndex.CodeAndPosition;
+import org.omnaest.search.next.AdaptionIndex.MatchGroup;
+
+public class SuffixAutomatonAdaptionIndexTest
+{
+	@Test
+	public void testRepeatsEqualAdaptionIndex() throws Exception
+	{
+		Random random = new Random(42);
+		StringBuilder randomText = new StringBuilder();
+		for (int ii = 0; ii < 60; ii++)
+		{
+			randomText.append((char) ('a' + random.nextInt(4)));
+		}
+
+		for (String text : Arrays.asList("abcdefgabcijk", "abcabcabc", "abababab", randomText.toString()))
+		{
+			RepeatIndex<Character, Integer> adaptionIndex = this.analyze(new AdaptionIndex<>(), text);
+			RepeatIndex<Character, Integer> suffixAutomatonIndex = this.analyze(new SuffixAutomatonAdaptionIndex<>(), text);
+			assertEquals(RepeatIndexTestUtils.extractRepeats(adaptionIndex), RepeatIndexTestUtils.extractRepeats(suffixAutomatonIndex));
+		}
+	}
+
+	@Test
+	public void testGroupsAcrossSequences() throws Exception
+	{
+		SuffixAutomatonAdaptionIndex<Character, Integer> index = new SuffixAutomatonAdaptionIndex<>();
+		this.analyze(index, "abc", 1);
+		this.analyze(index, "xabc", 2);
+
+		assertEquals(Arrays.asList("a=2", "ab=2", "abc=2", "b=2", "bc=2", "c=2"), RepeatIndexTestUtils.extractRepeats(index));
+		assertEquals(7, index	.extractGroups()
+								.count());
+
+		MatchGroup<Character, Integer> group = index.extractGroups()
+													.filter(matchGroup -> matchGroup.getOccurrenceNumber() == 2)
+													.filter(matchGroup -> matchGroup.asCodeSequenceGroup()
+																					.getCodeSequence()
+																					.size() == 3)
+													.findFirst()
+													.get();
+		List<String> nodes = group	.getNodes()
+									.map(node -> node	.getNode()
+														.getReferences()
+											+ ":" + node.getNode()
+														.getLinkedCodeAndPositionSequence()
+														.getCodeAndPositionSequence()
+														.stream()
+														.map(CodeAndPosition::getPosition)
+														.collect(Collectors.toList()))
+									.sorted()
+									.collect(Collectors.toList());
+		assertEquals(Arrays.asList("[1]:[0, 1, 2]", "[2]:[1, 2, 3]"), nodes);
+	}
+
+	@Test(timeout = 10000)
+	public void testManyShortSequences() throws Exception
+	{
+		//the build time has to be independent of the number of sequences, which took quadratic time with a separator per sequence
+		int numberOfSequences = 200000;
+		SuffixAutomatonAdaptionIndex<Character, Integer> index = new SuffixAutomatonAdaptionIndex<>();
+		for (int reference = 0; reference < numberOfSequences; reference++)
+		{
+			this.analyze(index, Integer.toString(reference % 1000), reference);
+		}
+
+		MatchGroup<Character, Integer> group = index.extractGroups()
+													.filter(matchGroup -> RepeatIndexTestUtils	.toText(matchGroup)
+																								.equals("123"))
+													.findFirst()
+													.get();
+		assertEquals(numberOfSequences / 1000, group.getOccurrenceNumber());
+		assertEquals(numberOfSequences / 1000, group.getNodes()
+													.count());
+	}
+
+	private RepeatIndex<Character, Integer> analyze(RepeatIndex<Character, Integer> index, String text)
+	{
+		return this.analyze(index, text, 1);
+	}
+
+	private RepeatIndex<Character, Integer> analyze(RepeatIndex<Character, Integer> index, String text, int reference)
+	{
+		return index.analyze(	text.chars()
+									.mapToObj(code -> (char) code),
+								reference);
+	}
+
+}
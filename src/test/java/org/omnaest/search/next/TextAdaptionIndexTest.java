@@ -18,7 +18,17 @@
 */
 package org.omnaest.search.next;
 
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
 import org.junit.Test;
+import org.omnaest.search.next.AdaptionIndex.LeftAndRightReferences;
 
 public class TextAdaptionIndexTest
 {
@@ -29,11 +39,75 @@ public class TextAdaptionIndexTest
 	{
 		this.textAdaptionIndex.analyze("abcdefgabcijk", 1);
 
-		this.textAdaptionIndex	.extractGroups()
-								.filter(group -> group.getOccurrenceNumber() > 1)
+		this.textAdaptionIndex	.extractGroups(2)
 								.peek(System.out::println)
 								.flatMap(group -> group.getNodes())
 								.forEach(node -> System.out.println("  " + node));
 	}
 
+	@Test
+	public void testJoin() throws Exception
+	{
+		TextAdaptionIndex<Integer> left = new TextAdaptionIndex<>();
+		left.analyze("abcd", 1);
+		TextAdaptionIndex<Integer> right = new TextAdaptionIndex<>();
+		right.analyze("bcxy", 2);
+
+		List<String> expected = Arrays.asList("b:1:0", "c:2:1");
+		assertEquals(expected, this.toCodesAndPositions(left.join(right)));
+		assertEquals(expected, this.toCodesAndPositions(left	.join(right, 1)
+																.collect(Collectors.toList())));
+		assertEquals(expected, this.toCodesAndPositions(left	.join(right, true)
+																.collect(Collectors.toList())));
+		assertEquals(expected, this.toCodesAndPositions(right	.join(left, false)
+																.map(references -> new LeftAndRightReferences<Character, Integer>(references.getRight(), references.getLeft()))
+																.collect(Collectors.toList())));
+	}
+
+	@Test
+	public void testAnalyzeReader() throws Exception
+	{
+		Random random = new Random(3);
+		String text = random.ints(400, 'a', 'e')
+							.mapToObj(c -> String.valueOf((char) c))
+							.collect(Collectors.joining());
+		TextAdaptionIndex<Integer> expected = new TextAdaptionIndex<>();
+		expected.analyze(text, 1);
+
+		for (int chunkSize : Arrays.asList(1, 7, 64, 1000))
+		{
+			TextAdaptionIndex<Integer> streamed = new TextAdaptionIndex<>();
+			List<String> confirmed = new ArrayList<>();
+			streamed.analyze(new StringReader(text), 1, chunkSize, group -> confirmed.add(RepeatIndexTestUtils.toText(group)));
+
+			assertEquals(RepeatIndexTestUtils.extractRepeats(expected), RepeatIndexTestUtils.extractRepeats(streamed));
+			assertEquals(RepeatIndexTestUtils	.extractRepeats(streamed)
+												.stream()
+												.map(repeat -> repeat.substring(0, repeat.indexOf('=')))
+												.collect(Collectors.toList()),
+							confirmed	.stream()
+										.sorted()
+										.collect(Collectors.toList()));
+		}
+	}
+
+	private List<String> toCodesAndPositions(List<LeftAndRightReferences<Character, Integer>> leftAndRightReferences)
+	{
+		return leftAndRightReferences	.stream()
+										.map(references ->
+										{
+											AdaptionIndex.CodeAndPosition<Character> left = references	.getLeft()
+																										.iterator()
+																										.next()
+																										.get(0);
+											AdaptionIndex.CodeAndPosition<Character> right = references	.getRight()
+																										.iterator()
+																										.next()
+																										.get(0);
+											return left.getCode() + ":" + left.getPosition() + ":" + right.getPosition();
+										})
+										.sorted()
+										.collect(Collectors.toList());
+	}
+
 }
@@ -0,0 +1,105 @@
+/*
+
+	Copyright 2017 Danny Kunz
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+
+
+*/
+package org.omnaest.search.next.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WorkQueueTest
+{
+
+	@Test
+	public void testDrainWithWorkers() throws Exception
+	{
+		ExecutorService executorService = Executors.newFixedThreadPool(3);
+		try
+		{
+			AtomicInteger processed = new AtomicInteger();
+			WorkQueue<Integer> workQueue = new WorkQueue<Integer>().add(10);
+			workQueue.drain(element ->
+			{
+				processed.incrementAndGet();
+				if (element > 0)
+				{
+					workQueue	.add(element - 1)
+								.add(element - 1);
+				}
+			}, 4, executorService);
+			assertEquals(2047, processed.get());
+		} finally
+		{
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testDrainWaitsForStartedWorkersOnFailure() throws Exception
+	{
+		ExecutorService executorService = Executors.newFixedThreadPool(1);
+		try
+		{
+			CountDownLatch slowElementStarted = new CountDownLatch(1);
+			AtomicBoolean slowElementFinished = new AtomicBoolean(false);
+			WorkQueue<String> workQueue = new WorkQueue<String>()	.add("slow")
+																	.add("failing");
+			try
+			{
+				workQueue.drain(element ->
+				{
+					try
+					{
+						if (element.equals("slow"))
+						{
+							slowElementStarted.countDown();
+							Thread.sleep(200);
+							slowElementFinished.set(true);
+						}
+						else
+						{
+							assertTrue(slowElementStarted.await(10, TimeUnit.SECONDS));
+							throw new IllegalStateException(element);
+						}
+					} catch (InterruptedException e)
+					{
+						throw new RuntimeException(e);
+					}
+				}, 2, executorService);
+				fail("Expected the failure of the processor");
+			} catch (IllegalStateException e)
+			{
+				assertEquals("failing", e.getMessage());
+			}
+			assertTrue(slowElementFinished.get());
+		} finally
+		{
+			executorService.shutdown();
+		}
+	}
+
+}